@@ -0,0 +1,423 @@
+package com.chrissyx.jfix.bench;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.modules.ConfigController;
+import com.chrissyx.jfix.modules.FtpController;
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+import com.chrissyx.jfix.modules.ftp.FtpEvent;
+import com.chrissyx.jfix.modules.ftp.FtpEventBus;
+import com.chrissyx.jfix.modules.util.CryptUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of {@link FtpController} against a {@link StubFtpServer} with injected latency. A local tree is
+ * generated, served by the stub server and fixed in one or more runs; each run reports files per second, the p50 and p99
+ * command latencies and the peak heap usage. Without injected faults, the listing and filetime commands received by the
+ * server are checked against the expected numbers and the load test exits with status 1 on a mismatch. Run it with the
+ * {@code load-test} target of the Ant build, e.g.
+ * {@code ant load-test -Dload.args="--files 200 --latency 20 --pool-size 4 --pipeline 8"}.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class LoadTest
+{
+    /**
+     * Pairs sent commands with their replies per connection to record the command latencies.
+     */
+    private static final class LatencyRecorder implements FtpEventBus.Subscriber
+    {
+        /**
+         * Send times of commands still waiting for their replies by connection ID.
+         */
+        private final Map<String, ArrayDeque<Long>> pending = new HashMap<String, ArrayDeque<Long>>();
+
+        /**
+         * Recorded latencies in nanoseconds.
+         */
+        private long[] latencies = new long[1024];
+
+        /**
+         * Number of recorded latencies.
+         */
+        private int size;
+
+        /**
+         * Number of events dropped by the event bus.
+         */
+        private long dropped;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized void eventReceived(final FtpEvent event)
+        {
+            switch(event.getType())
+            {
+                case COMMAND_SENT:
+                    ArrayDeque<Long> sendTimes = this.pending.get(event.getConnId());
+                    if(sendTimes == null)
+                        this.pending.put(event.getConnId(), sendTimes = new ArrayDeque<Long>());
+                    sendTimes.add(event.getNanoTime());
+                    break;
+                case REPLY_RECEIVED:
+                    final ArrayDeque<Long> curSendTimes = this.pending.get(event.getConnId());
+                    if(curSendTimes == null || curSendTimes.isEmpty())
+                        //Greeting or unsolicited reply
+                        break;
+                    if(this.size == this.latencies.length)
+                        this.latencies = Arrays.copyOf(this.latencies, this.size * 2);
+                    this.latencies[this.size++] = event.getNanoTime() - curSendTimes.poll();
+                    break;
+                case EVENTS_DROPPED:
+                    this.dropped += event.getCount();
+                    break;
+                default:
+            }
+        }
+
+        /**
+         * Returns the sorted latencies recorded since the last reset.
+         *
+         * @return Latencies in nanoseconds
+         */
+        private synchronized long[] getSortedLatencies()
+        {
+            final long[] sorted = Arrays.copyOf(this.latencies, this.size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        /**
+         * Returns the number of events dropped since the last reset.
+         *
+         * @return Dropped events
+         */
+        private synchronized long getDropped()
+        {
+            return this.dropped;
+        }
+
+        /**
+         * Forgets all recorded latencies and pending commands.
+         */
+        private synchronized void reset()
+        {
+            this.pending.clear();
+            this.size = 0;
+            this.dropped = 0;
+        }
+    }
+
+    /**
+     * Hidden constructor to prevent instances of this class.
+     */
+    private LoadTest()
+    {
+    }
+
+    /**
+     * Generates the tree, starts the stub server and performs the runs.
+     *
+     * @param args Options of load test, see {@link #printUsage()}
+     * @throws Exception If the load test can't be performed
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final Map<String, String> options = new HashMap<String, String>();
+        options.put("--dirs", "10");
+        options.put("--files", "100");
+        options.put("--runs", "3");
+        options.put("--plugin", "Auto");
+        options.put("--pool-size", "1");
+        options.put("--pipeline", "1");
+        options.put("--latency", "5");
+        options.put("--jitter", "0");
+        options.put("--error-rate", "0");
+        options.put("--max-connections", "64");
+        options.put("--skip-unchanged", "false");
+        options.put("--stat-listing", "false");
+        options.put("--adaptive", "false");
+        options.put("--adaptive-max", "16");
+        options.put("--max-rate", "0");
+        options.put("--throttle-rate", "0");
+        options.put("--drop-interval", "0");
+        options.put("--retries", "3");
+        for(int i = 0; i < args.length; i++)
+            if(args[i].equals("--skip-unchanged") || args[i].equals("--stat-listing") || args[i].equals("--adaptive"))
+                options.put(args[i], "true");
+            else if(options.containsKey(args[i]) && i + 1 < args.length)
+                options.put(args[i], args[++i]);
+            else
+            {
+                LoadTest.printUsage();
+                System.exit(64);
+            }
+        //Never show dialogs for errors
+        System.setProperty("java.awt.headless", "true");
+        final File root = Files.createTempDirectory("jfix-load").toFile();
+        final File configFile = new File(root, "jfix-config.xml");
+        final FileOutputStream configOut = new FileOutputStream(configFile);
+        try
+        {
+            new Properties().storeToXML(configOut, null);
+        }
+        finally
+        {
+            configOut.close();
+        }
+        System.setProperty("jfix.config", configFile.getPath());
+        final File tree = new File(root, "tree");
+        final int dirs = Integer.parseInt(options.get("--dirs"));
+        final int files = Integer.parseInt(options.get("--files"));
+        final int dayPrecisionFiles = LoadTest.generateTree(tree, dirs, files);
+        final StubFtpServer server = new StubFtpServer(tree, Long.parseLong(options.get("--latency")), Long.parseLong(options.get("--jitter")),
+                Double.parseDouble(options.get("--error-rate")), Integer.parseInt(options.get("--max-connections")));
+        server.setThrottleRate(Integer.parseInt(options.get("--throttle-rate")));
+        server.setDropInterval(Integer.parseInt(options.get("--drop-interval")));
+        ConfigController.getInstance().setCfgVal("host", "127.0.0.1");
+        ConfigController.getInstance().setCfgVal("port", String.valueOf(server.getPort()));
+        ConfigController.getInstance().setCfgVal("user", "jfix");
+        ConfigController.getInstance().setCfgVal("pass", CryptUtils.encode("jfix"));
+        ConfigController.getInstance().setCfgVal("plugIn", options.get("--plugin"));
+        ConfigController.getInstance().setCfgVal("recursive", "true");
+        ConfigController.getInstance().setCfgVal("poolSize", options.get("--pool-size"));
+        ConfigController.getInstance().setCfgVal("pipelineWindow", options.get("--pipeline"));
+        ConfigController.getInstance().setCfgVal("skipUnchanged", options.get("--skip-unchanged"));
+        ConfigController.getInstance().setCfgVal("statListing", options.get("--stat-listing"));
+        ConfigController.getInstance().setCfgVal("adaptiveConcurrency", options.get("--adaptive"));
+        ConfigController.getInstance().setCfgVal("adaptiveMaxInFlight", options.get("--adaptive-max"));
+        ConfigController.getInstance().setCfgVal("maxCommandRate", options.get("--max-rate"));
+        ConfigController.getInstance().setCfgVal("retryAttempts", options.get("--retries"));
+        ConfigController.getInstance().setCfgVal("retryDelay", "100");
+        ConfigController.getInstance().setCfgVal("eventQueueSize", "1000000");
+        ConfigController.getInstance().setCfgVal("eventOverflow", "drop");
+        final LatencyRecorder latencyRecorder = new LatencyRecorder();
+        FtpController.getInstance().getEventBus().subscribe(latencyRecorder);
+        System.out.println("Load test with " + dirs + " directories of " + files + " files, options " + options);
+        //Counts are only predictable without injected faults
+        final boolean checked = Double.parseDouble(options.get("--error-rate")) == 0 && server.getThrottleRate() == 0 && options.get("--drop-interval").equals("0")
+                && Integer.parseInt(options.get("--max-connections")) >= Integer.parseInt(options.get("--pool-size"));
+        final boolean skipUnchanged = Boolean.parseBoolean(options.get("--skip-unchanged"));
+        final boolean statListing = Boolean.parseBoolean(options.get("--stat-listing"));
+        int mismatches = 0;
+        System.out.println("run     files   elapsed ms    files/s  commands  failed  p50 ms  p99 ms  peak heap MB   LIST   STAT  filetime");
+        try
+        {
+            for(int curRun = 1; curRun <= Integer.parseInt(options.get("--runs")); curRun++)
+            {
+                final long[] received = LoadTest.run(curRun, tree, latencyRecorder, server);
+                if(!checked)
+                    continue;
+                final int listed = skipUnchanged ? dirs + 1 : 0;
+                mismatches += LoadTest.check(curRun, "LIST", statListing ? 0 : listed, received[0]);
+                mismatches += LoadTest.check(curRun, "STAT", statListing ? listed : 0, received[1]);
+                mismatches += LoadTest.check(curRun, "filetime", skipUnchanged && curRun > 1 ? dayPrecisionFiles : (dirs + 1) * files, received[2]);
+            }
+        }
+        finally
+        {
+            server.close();
+            LoadTest.delete(root);
+        }
+        System.out.println("Metrics of all runs: " + FtpController.getInstance().getFixMetrics().getJson());
+        System.out.println("Problems of last run: " + FtpController.getInstance().getErrorReport().getTotal() + " " + FtpController.getInstance().getErrorReport().getCounts());
+        System.out.println("Server received " + server.getCommands() + " commands, set " + server.getFixed() + " filetimes, throttled "
+                + server.getThrottled() + " commands, dropped " + server.getDropped() + " and rejected " + server.getRejected() + " connections");
+        if(mismatches > 0)
+        {
+            System.out.println(mismatches + " command count(s) differ from the expected ones");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares the received number of commands of a run with the expected one.
+     *
+     * @param run Number of run
+     * @param commands Checked commands
+     * @param expected Expected number of commands
+     * @param actual Number of commands received by the server
+     * @return 1 on mismatch, otherwise 0
+     */
+    private static int check(final int run, final String commands, final long expected, final long actual)
+    {
+        if(expected == actual)
+            return 0;
+        System.out.println("    run " + run + " sent " + actual + " " + commands + " commands, expected " + expected);
+        return 1;
+    }
+
+    /**
+     * Performs a single run and prints its results.
+     *
+     * @param run Number of run
+     * @param tree Local root directory
+     * @param latencyRecorder Recorder of command latencies
+     * @param server Server to count the received commands of
+     * @return Received {@code LIST}, {@code STAT} and filetime commands of the run
+     * @throws JFixError If the run fails
+     * @throws InterruptedException If interrupted while waiting for the event bus
+     */
+    private static long[] run(final int run, final File tree, final LatencyRecorder latencyRecorder, final StubFtpServer server) throws JFixError, InterruptedException
+    {
+        final long[] received =
+        {
+            -server.getListings(), -server.getStatListings(), -server.getFiletimeCommands()
+        };
+        System.gc();
+        for(final MemoryPoolMXBean curPool : ManagementFactory.getMemoryPoolMXBeans())
+            if(curPool.getType() == MemoryType.HEAP)
+                curPool.resetPeakUsage();
+        latencyRecorder.reset();
+        final FixProgress fixProgress = new FixProgress();
+        final long start = System.nanoTime();
+        FtpController.getInstance().connect();
+        try
+        {
+            FtpController.getInstance().changeDir("/");
+            FtpController.getInstance().fixFiletimes(tree, false, fixProgress);
+        }
+        finally
+        {
+            FtpController.getInstance().disconnect();
+        }
+        final long elapsed = System.nanoTime() - start;
+        received[0] += server.getListings();
+        received[1] += server.getStatListings();
+        received[2] += server.getFiletimeCommands();
+        while(FtpController.getInstance().getEventBus().getQueued() > 0)
+            Thread.sleep(10);
+        long peakHeap = 0;
+        for(final MemoryPoolMXBean curPool : ManagementFactory.getMemoryPoolMXBeans())
+            if(curPool.getType() == MemoryType.HEAP)
+                peakHeap += curPool.getPeakUsage().getUsed();
+        final long[] latencies = latencyRecorder.getSortedLatencies();
+        System.out.println(String.format("%3d %9d %12d %10.1f %9d %7d %7.2f %7.2f %13.1f %6d %6d %9d", run, fixProgress.getFilesDone(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                fixProgress.getFilesDone() * 1e9 / elapsed, fixProgress.getCommands(), fixProgress.getFailed(),
+                LoadTest.getPercentile(latencies, 0.5) / 1e6, LoadTest.getPercentile(latencies, 0.99) / 1e6, peakHeap / 1048576.0, received[0], received[1], received[2]));
+        if(latencyRecorder.getDropped() > 0)
+            System.out.println("    " + latencyRecorder.getDropped() + " events dropped, latencies are incomplete");
+        return received;
+    }
+
+    /**
+     * Returns a percentile of sorted values by the nearest rank.
+     *
+     * @param sorted Sorted values
+     * @param percentile Percentile from 0 to 1
+     * @return Value at percentile or 0 if no values
+     */
+    private static long getPercentile(final long[] sorted, final double percentile)
+    {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    /**
+     * Creates a tree of empty files with random filetimes in the last ten years.
+     *
+     * @param tree Root directory to create
+     * @param dirs Number of subdirectories besides the root directory
+     * @param files Number of files per directory
+     * @return Number of files too old to be listed to the minute
+     * @throws IOException If a file can't be created
+     */
+    private static int generateTree(final File tree, final int dirs, final int files) throws IOException
+    {
+        int dayPrecisionFiles = 0;
+        final Random random = new Random(42);
+        final long now = System.currentTimeMillis();
+        for(int i = 0; i <= dirs; i++)
+        {
+            final File curDir = i == 0 ? tree : new File(tree, "dir" + i);
+            if(!curDir.mkdirs())
+                throw new IOException("Can't create " + curDir);
+            for(int j = 0; j < files; j++)
+            {
+                final File curFile = new File(curDir, "file" + j + ".txt");
+                new FileOutputStream(curFile).close();
+                long age;
+                do
+                    age = (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(3650)) / 1000L * 1000L;
+                while(!LoadTest.isPredictable(now - age, age));
+                curFile.setLastModified(now - age);
+                if(age > StubFtpServer.MINUTE_PRECISION_AGE)
+                    dayPrecisionFiles++;
+            }
+        }
+        return dayPrecisionFiles;
+    }
+
+    /**
+     * Returns if a generated filetime is skipped or fixed by all runs with skipped unchanged files. Filetimes close to
+     * the age where the listing precision changes could switch precision between runs, filetimes listed to the day
+     * are skipped if within the skip tolerance after midnight, as the listing shows midnight.
+     *
+     * @param filetime Filetime in milliseconds
+     * @param age Age of filetime in milliseconds
+     * @return Filetime gives the same result in each run
+     */
+    private static boolean isPredictable(final long filetime, final long age)
+    {
+        if(Math.abs(age - StubFtpServer.MINUTE_PRECISION_AGE) < TimeUnit.DAYS.toMillis(1))
+            return false;
+        final long localTime = filetime + TimeZone.getDefault().getOffset(filetime);
+        return age < StubFtpServer.MINUTE_PRECISION_AGE || (localTime % TimeUnit.DAYS.toMillis(1) + TimeUnit.DAYS.toMillis(1)) % TimeUnit.DAYS.toMillis(1) >= TimeUnit.MINUTES.toMillis(10);
+    }
+
+    /**
+     * Deletes a file or directory recursively.
+     *
+     * @param file File or directory to delete
+     */
+    private static void delete(final File file)
+    {
+        final File[] children = file.listFiles();
+        if(children != null)
+            for(final File curChild : children)
+                LoadTest.delete(curChild);
+        file.delete();
+    }
+
+    /**
+     * Prints the available options.
+     */
+    private static void printUsage()
+    {
+        System.err.println("Usage: LoadTest [options]");
+        System.err.println("  --dirs <n>             Number of generated subdirectories");
+        System.err.println("  --files <n>            Number of generated files per directory");
+        System.err.println("  --runs <n>             Number of runs over the tree");
+        System.err.println("  --plugin <name>        Plug-in to set filetimes with");
+        System.err.println("  --pool-size <n>        Number of parallel FTP sessions");
+        System.err.println("  --pipeline <n>         Number of commands sent ahead of their replies");
+        System.err.println("  --skip-unchanged       Skip files with matching remote filetimes");
+        System.err.println("  --stat-listing         List directories over the control connection");
+        System.err.println("  --adaptive             Adapt commands in flight to the server");
+        System.err.println("  --adaptive-max <n>     Most commands in flight when adapting");
+        System.err.println("  --max-rate <n>         Maximum commands per second sent by JFix");
+        System.err.println("  --throttle-rate <n>    Filetime commands per second before the server replies 450");
+        System.err.println("  --drop-interval <n>    Commands per connection before the server drops it");
+        System.err.println("  --retries <n>          Reconnects and resends per batch after a lost connection");
+        System.err.println("  --latency <ms>         Delay of each server reply");
+        System.err.println("  --jitter <ms>          Maximum random delay added to each reply");
+        System.err.println("  --error-rate <0..1>    Probability of failed filetime commands");
+        System.err.println("  --max-connections <n>  Connection limit of the server");
+    }
+}
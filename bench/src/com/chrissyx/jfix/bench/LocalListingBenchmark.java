@@ -0,0 +1,95 @@
+package com.chrissyx.jfix.bench;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.modules.util.FileUtils;
+import com.chrissyx.jfix.modules.util.LocalListing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures listing and sorting a synthetic local directory, every tenth entry being a subdirectory.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class LocalListingBenchmark
+{
+    /**
+     * Number of entries in the directory.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    /**
+     * Synthetic directory.
+     */
+    private File directory;
+
+    /**
+     * Creates the synthetic directory.
+     *
+     * @throws IOException If an entry can't be created
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        this.directory = File.createTempFile("jfix-bench-", "");
+        if(!this.directory.delete() || !this.directory.mkdir())
+            throw new IOException("Can't create " + this.directory);
+        for(int i = 0; i < this.entries; i++)
+        {
+            final File curEntry = new File(this.directory, "entry-" + i);
+            if(i % 10 == 0 ? !curEntry.mkdir() : !curEntry.createNewFile())
+                throw new IOException("Can't create " + curEntry);
+        }
+    }
+
+    /**
+     * Deletes the synthetic directory.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        for(final File curEntry : this.directory.listFiles())
+            curEntry.delete();
+        this.directory.delete();
+    }
+
+    /**
+     * Lists the directory for the GUI, directories first.
+     *
+     * @return Sorted names
+     */
+    @Benchmark
+    public String[] getFileListing()
+    {
+        return FileUtils.getFileListing(this.directory, true);
+    }
+
+    /**
+     * Reads the directory in file system order, as done by fix runs.
+     *
+     * @return Listing
+     * @throws JFixError If directory can't be read
+     */
+    @Benchmark
+    public LocalListing readListing() throws JFixError
+    {
+        return LocalListing.read(this.directory, false);
+    }
+}
@@ -0,0 +1,81 @@
+package com.chrissyx.jfix.bench;
+
+import com.chrissyx.jfix.modules.util.ServiceRegistry;
+import com.chrissyx.jfix.plugins.FiletimeFixer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures encoding the filetime fixing command of each bundled plug-in.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PlugInBenchmark
+{
+    /**
+     * Class name of plug-in to measure.
+     */
+    @Param({"SiteUtime", "Mfmt", "Mdtm"})
+    public String plugInName;
+
+    /**
+     * Plug-in to measure.
+     */
+    private FiletimeFixer plugIn;
+
+    /**
+     * Reused command buffer.
+     */
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    /**
+     * Varying timestamp, so no result can be cached.
+     */
+    private long timestamp = 1300000000000L;
+
+    /**
+     * Looks up the plug-in.
+     */
+    @Setup
+    public void setUp()
+    {
+        this.plugIn = ServiceRegistry.getPlugIn(this.plugInName);
+    }
+
+    /**
+     * Encodes a command into the reused buffer, as done by fix runs.
+     *
+     * @return Encoded command
+     */
+    @Benchmark
+    public String encodeCommand()
+    {
+        this.buffer.setLength(0);
+        this.plugIn.encodeCommand(this.buffer, "/htdocs/images/", "picture.jpg", this.timestamp += 1000);
+        return this.buffer.toString();
+    }
+
+    /**
+     * Returns a command through the compatibility bridge.
+     *
+     * @return Command
+     */
+    @Benchmark
+    public String getCommand()
+    {
+        return this.plugIn.getCommand("/htdocs/images/picture.jpg", this.timestamp += 1000);
+    }
+}
@@ -0,0 +1,93 @@
+package com.chrissyx.jfix.bench;
+
+import com.chrissyx.jfix.modules.ftp.RemoteListing;
+import com.enterprisedt.net.ftp.FTPException;
+import com.enterprisedt.net.ftp.FTPFileFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures parsing a large fake UNIX listing, as received for remote browsing and fix runs, and looking up its entries.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class RemoteListingBenchmark
+{
+    /**
+     * Number of entries in the listing.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    /**
+     * Fake listing lines.
+     */
+    private String[] lines;
+
+    /**
+     * Names to look up.
+     */
+    private String[] names;
+
+    /**
+     * Parsed listing to look up names in.
+     */
+    private RemoteListing listing;
+
+    /**
+     * Creates the fake listing, every tenth entry being a directory.
+     *
+     * @throws FTPException If parser can't be created
+     */
+    @Setup
+    public void setUp() throws FTPException
+    {
+        this.lines = new String[this.entries];
+        this.names = new String[this.entries];
+        for(int i = 0; i < this.entries; i++)
+        {
+            this.names[i] = "entry-" + i;
+            this.lines[i] = (i % 10 == 0 ? "drwxr-xr-x" : "-rw-r--r--") + "    1 jfix     jfix         " + i + " Mar 17  2011 " + this.names[i];
+        }
+        this.listing = this.parse();
+    }
+
+    /**
+     * Parses the listing with directories first.
+     *
+     * @return Parsed listing
+     * @throws FTPException If parser can't be created
+     */
+    @Benchmark
+    public RemoteListing parse() throws FTPException
+    {
+        return RemoteListing.parse(this.lines, new FTPFileFactory("UNIX"), true);
+    }
+
+    /**
+     * Looks up all names of the parsed listing.
+     *
+     * @return Sum of indices
+     */
+    @Benchmark
+    public long indexOf()
+    {
+        long sum = 0;
+        for(final String curName : this.names)
+            sum += this.listing.indexOf(curName);
+        return sum;
+    }
+}
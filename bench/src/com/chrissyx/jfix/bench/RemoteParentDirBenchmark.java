@@ -0,0 +1,60 @@
+package com.chrissyx.jfix.bench;
+
+import com.chrissyx.jfix.modules.util.FileUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures determining the parent remote directory when browsing up.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RemoteParentDirBenchmark
+{
+    /**
+     * Depth of remote directory.
+     */
+    @Param({"1", "5", "20"})
+    public int depth;
+
+    /**
+     * Remote directory to get parent of.
+     */
+    private String remoteDir;
+
+    /**
+     * Builds the remote directory.
+     */
+    @Setup
+    public void setUp()
+    {
+        final StringBuilder path = new StringBuilder("/");
+        for(int i = 0; i < this.depth; i++)
+            path.append("directory").append(i).append('/');
+        this.remoteDir = path.toString();
+    }
+
+    /**
+     * Returns the parent directory.
+     *
+     * @return Parent directory
+     */
+    @Benchmark
+    public String getRemoteParentDir()
+    {
+        return FileUtils.getRemoteParentDir(this.remoteDir);
+    }
+}
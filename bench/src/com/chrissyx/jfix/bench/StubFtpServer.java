@@ -0,0 +1,741 @@
+package com.chrissyx.jfix.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process FTP server for load tests. It serves a local directory tree read-only and only records the
+ * filetimes set with {@code SITE UTIME}, {@code MFMT} or two-argument {@code MDTM}, so the tree stays unchanged. Every
+ * reply can be delayed by a fixed latency with random jitter, filetime commands fail at a configurable rate and the
+ * number of connections can be limited. Filetime commands beyond a rate per second are answered with {@code 450} like
+ * throttling hosts do. Commands are answered strictly in order, so pipelined clients work. Data connections are
+ * opened in passive as well as active mode.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class StubFtpServer
+{
+    /**
+     * Age in milliseconds up to which filetimes are listed to the minute, older ones only to the day.
+     */
+    public static final long MINUTE_PRECISION_AGE = 15552000000L;
+
+    /**
+     * Root directory of the served tree.
+     */
+    private final File root;
+
+    /**
+     * Listening socket for control connections.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Fixed delay of each reply in milliseconds.
+     */
+    private final long latency;
+
+    /**
+     * Maximum random delay added to each reply in milliseconds.
+     */
+    private final long jitter;
+
+    /**
+     * Probability of a filetime command to fail, from 0 to 1.
+     */
+    private final double errorRate;
+
+    /**
+     * Maximum number of concurrent connections.
+     */
+    private final int maxConnections;
+
+    /**
+     * Filetimes set by clients in milliseconds by absolute remote path.
+     */
+    private final Map<String, Long> filetimes = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Number of open connections.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Number of received commands.
+     */
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * Number of listing commands over data connections.
+     */
+    private final AtomicLong listings = new AtomicLong();
+
+    /**
+     * Number of listing commands over the control connection.
+     */
+    private final AtomicLong statListings = new AtomicLong();
+
+    /**
+     * Number of received filetime commands, including failed ones.
+     */
+    private final AtomicLong filetimeCommands = new AtomicLong();
+
+    /**
+     * Number of rejected connections.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Time of start, reported as modification time of entries without set filetime.
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Maximum filetime commands per second before throttling or 0 for no throttling.
+     */
+    private volatile int throttleRate;
+
+    /**
+     * Start of current throttling second in milliseconds.
+     */
+    private long throttleSecond;
+
+    /**
+     * Filetime commands in current throttling second.
+     */
+    private int throttleCount;
+
+    /**
+     * Number of throttled commands.
+     */
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * Number of commands after which a control connection is dropped without reply or 0 to keep connections.
+     */
+    private volatile int dropInterval;
+
+    /**
+     * Number of dropped connections.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Number of filetimes set again for files fixed before.
+     */
+    private final AtomicLong refixed = new AtomicLong();
+
+    /**
+     * State if logins are rejected.
+     */
+    private volatile boolean rejectLogins;
+
+    /**
+     * Number of rejected logins.
+     */
+    private final AtomicLong loginsRejected = new AtomicLong();
+
+    /**
+     * Starts serving stated directory on a free local port.
+     *
+     * @param root Root directory of the served tree
+     * @param latency Fixed delay of each reply in milliseconds
+     * @param jitter Maximum random delay added to each reply in milliseconds
+     * @param errorRate Probability of a filetime command to fail, from 0 to 1
+     * @param maxConnections Maximum number of concurrent connections
+     * @throws IOException If server socket can't be opened
+     */
+    public StubFtpServer(final File root, final long latency, final long jitter, final double errorRate, final int maxConnections) throws IOException
+    {
+        this.root = root;
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        this.maxConnections = maxConnections;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread("StubFtp-Accept")
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                StubFtpServer.this.accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port to connect to.
+     *
+     * @return Local port
+     */
+    public int getPort()
+    {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of received commands.
+     *
+     * @return Commands
+     */
+    public long getCommands()
+    {
+        return this.commands.get();
+    }
+
+    /**
+     * Returns the number of listing commands over data connections.
+     *
+     * @return {@code LIST} and {@code NLST} commands
+     */
+    public long getListings()
+    {
+        return this.listings.get();
+    }
+
+    /**
+     * Returns the number of listing commands over the control connection.
+     *
+     * @return {@code STAT} commands with path
+     */
+    public long getStatListings()
+    {
+        return this.statListings.get();
+    }
+
+    /**
+     * Returns the number of received filetime commands, including failed and throttled ones.
+     *
+     * @return Filetime commands
+     */
+    public long getFiletimeCommands()
+    {
+        return this.filetimeCommands.get();
+    }
+
+    /**
+     * Sets the maximum filetime commands per second, further ones are rejected with {@code 450}.
+     *
+     * @param throttleRate Commands per second or 0 for no throttling
+     */
+    public void setThrottleRate(final int throttleRate)
+    {
+        this.throttleRate = throttleRate;
+    }
+
+    /**
+     * Returns the maximum filetime commands per second.
+     *
+     * @return Commands per second or 0 for no throttling
+     */
+    public int getThrottleRate()
+    {
+        return this.throttleRate;
+    }
+
+    /**
+     * Returns the number of throttled filetime commands.
+     *
+     * @return Throttled commands
+     */
+    public long getThrottled()
+    {
+        return this.throttled.get();
+    }
+
+    /**
+     * Sets the number of commands after which each control connection is dropped without reply, to simulate lost
+     * connections. Logins are never dropped.
+     *
+     * @param dropInterval Commands per connection or 0 to keep connections
+     */
+    public void setDropInterval(final int dropInterval)
+    {
+        this.dropInterval = dropInterval;
+    }
+
+    /**
+     * Returns the number of dropped connections.
+     *
+     * @return Dropped connections
+     */
+    public long getDropped()
+    {
+        return this.dropped.get();
+    }
+
+    /**
+     * Sets if logins are rejected, to simulate changed or locked credentials.
+     *
+     * @param rejectLogins Reject logins
+     */
+    public void setRejectLogins(final boolean rejectLogins)
+    {
+        this.rejectLogins = rejectLogins;
+    }
+
+    /**
+     * Returns the number of rejected logins.
+     *
+     * @return Rejected logins
+     */
+    public long getLoginsRejected()
+    {
+        return this.loginsRejected.get();
+    }
+
+    /**
+     * Returns the number of connections rejected due to the connection limit.
+     *
+     * @return Rejected connections
+     */
+    public long getRejected()
+    {
+        return this.rejected.get();
+    }
+
+    /**
+     * Returns the number of filetimes set by clients.
+     *
+     * @return Fixed files
+     */
+    public int getFixed()
+    {
+        return this.filetimes.size();
+    }
+
+    /**
+     * Returns the number of filetimes set again for files fixed before.
+     *
+     * @return Files fixed more than once
+     */
+    public long getRefixed()
+    {
+        return this.refixed.get();
+    }
+
+    /**
+     * Stops accepting connections.
+     */
+    public void close()
+    {
+        try
+        {
+            this.serverSocket.close();
+        }
+        catch(final IOException e)
+        {
+            //Closing anyway
+        }
+    }
+
+    /**
+     * Accepts control connections until closed.
+     */
+    private void accept()
+    {
+        while(!this.serverSocket.isClosed())
+            try
+            {
+                final Socket socket = this.serverSocket.accept();
+                final Thread session = new Thread("StubFtp-" + socket.getPort())
+                {
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void run()
+                    {
+                        StubFtpServer.this.serve(socket);
+                    }
+                };
+                session.setDaemon(true);
+                session.start();
+            }
+            catch(final IOException e)
+            {
+                //Closed
+            }
+    }
+
+    /**
+     * Serves a control connection.
+     *
+     * @param socket Control connection
+     */
+    private void serve(final Socket socket)
+    {
+        final Random random = new Random();
+        final SimpleDateFormat[] listDateFormats =
+        {
+            new SimpleDateFormat("MMM dd HH:mm", Locale.US), new SimpleDateFormat("MMM dd  yyyy", Locale.US)
+        };
+        final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+        timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String cwd = "/";
+        int connectionCommands = 0;
+        ServerSocket passiveSocket = null;
+        InetSocketAddress activeAddress = null;
+        try
+        {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            final Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            if(this.connections.incrementAndGet() > this.maxConnections)
+            {
+                this.rejected.incrementAndGet();
+                this.reply(out, "421 Too many connections");
+                return;
+            }
+            this.reply(out, "220 JFix stub FTP server ready");
+            String curLine;
+            while((curLine = in.readLine()) != null)
+            {
+                this.commands.incrementAndGet();
+                final int space = curLine.indexOf(' ');
+                final String command = (space == -1 ? curLine : curLine.substring(0, space)).toUpperCase(Locale.US);
+                final String argument = space == -1 ? "" : curLine.substring(space + 1);
+                if(this.dropInterval > 0 && ++connectionCommands > this.dropInterval && !command.equals("USER") && !command.equals("PASS"))
+                {
+                    this.dropped.incrementAndGet();
+                    return;
+                }
+                if(this.latency > 0 || this.jitter > 0)
+                    Thread.sleep(this.latency + (this.jitter > 0 ? (long) (random.nextDouble() * this.jitter) : 0));
+                if(command.equals("USER"))
+                    this.reply(out, "331 Password required");
+                else if(command.equals("PASS") && this.rejectLogins)
+                {
+                    this.loginsRejected.incrementAndGet();
+                    this.reply(out, "530 Login incorrect");
+                }
+                else if(command.equals("PASS"))
+                    this.reply(out, "230 Logged in");
+                else if(command.equals("SYST"))
+                    this.reply(out, "215 UNIX Type: L8");
+                else if(command.equals("TYPE") || command.equals("NOOP") || command.equals("OPTS") || command.equals("MODE") || command.equals("STRU"))
+                    this.reply(out, "200 OK");
+                else if(command.equals("FEAT"))
+                    this.reply(out, "211-Features:\r\n MFMT\r\n MDTM\r\n SIZE\r\n211 End");
+                else if(command.equals("PWD") || command.equals("XPWD"))
+                    this.reply(out, "257 \"" + cwd + "\" is current directory");
+                else if(command.equals("CWD"))
+                {
+                    final String newCwd = this.resolve(cwd, argument);
+                    if(this.getFile(newCwd).isDirectory())
+                    {
+                        cwd = newCwd.endsWith("/") ? newCwd : newCwd + "/";
+                        this.reply(out, "250 Directory changed to " + cwd);
+                    }
+                    else
+                        this.reply(out, "550 " + argument + ": No such directory");
+                }
+                else if(command.equals("CDUP"))
+                {
+                    cwd = cwd.length() == 1 ? cwd : cwd.substring(0, cwd.lastIndexOf('/', cwd.length() - 2) + 1);
+                    this.reply(out, "250 Directory changed to " + cwd);
+                }
+                else if(command.equals("PORT") || command.equals("EPRT"))
+                {
+                    //PORT h1,h2,h3,h4,p1,p2 or EPRT |1|host|port|
+                    final String[] parts = command.equals("PORT") ? argument.split(",") : argument.split("\\|");
+                    try
+                    {
+                        activeAddress = command.equals("PORT") ? new InetSocketAddress(parts[0] + "." + parts[1] + "." + parts[2] + "." + parts[3],
+                                Integer.parseInt(parts[4].trim()) << 8 | Integer.parseInt(parts[5].trim())) : new InetSocketAddress(parts[2], Integer.parseInt(parts[3]));
+                        if(passiveSocket != null)
+                            passiveSocket.close();
+                        passiveSocket = null;
+                        this.reply(out, "200 " + command + " command successful");
+                    }
+                    catch(final RuntimeException e)
+                    {
+                        activeAddress = null;
+                        this.reply(out, "501 Syntax error in " + command);
+                    }
+                }
+                else if(command.equals("PASV"))
+                {
+                    activeAddress = null;
+                    if(passiveSocket != null)
+                        passiveSocket.close();
+                    passiveSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                    this.reply(out, "227 Entering Passive Mode (127,0,0,1," + (passiveSocket.getLocalPort() >> 8) + "," + (passiveSocket.getLocalPort() & 0xFF) + ")");
+                }
+                else if(command.equals("EPSV"))
+                {
+                    activeAddress = null;
+                    if(passiveSocket != null)
+                        passiveSocket.close();
+                    passiveSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                    this.reply(out, "229 Entering Extended Passive Mode (|||" + passiveSocket.getLocalPort() + "|)");
+                }
+                else if(command.equals("LIST") || command.equals("NLST"))
+                {
+                    if(passiveSocket == null && activeAddress == null)
+                    {
+                        this.reply(out, "425 Use PORT or PASV first");
+                        continue;
+                    }
+                    this.listings.incrementAndGet();
+                    final String path = this.resolve(cwd, this.stripOptions(argument));
+                    this.reply(out, "150 Opening data connection");
+                    final Socket dataSocket;
+                    if(passiveSocket != null)
+                    {
+                        dataSocket = passiveSocket.accept();
+                        passiveSocket.close();
+                        passiveSocket = null;
+                    }
+                    else
+                    {
+                        dataSocket = new Socket(activeAddress.getAddress(), activeAddress.getPort());
+                        activeAddress = null;
+                    }
+                    final OutputStream dataOut = dataSocket.getOutputStream();
+                    dataOut.write(this.list(path, command.equals("NLST"), listDateFormats).getBytes("UTF-8"));
+                    dataSocket.close();
+                    this.reply(out, "226 Transfer complete");
+                }
+                else if(command.equals("STAT"))
+                {
+                    if(argument.isEmpty())
+                        this.reply(out, "211 JFix stub FTP server status OK");
+                    else
+                    {
+                        this.statListings.incrementAndGet();
+                        this.reply(out, "213-Status of " + argument + ":\r\n" + this.list(this.resolve(cwd, this.stripOptions(argument)), false, listDateFormats) + "213 End of status");
+                    }
+                }
+                else if(command.equals("SITE") && argument.toUpperCase(Locale.US).startsWith("HELP"))
+                    this.reply(out, "214-The following SITE commands are recognized:\r\n UTIME HELP\r\n214 Help OK");
+                else if(command.equals("SITE") && argument.toUpperCase(Locale.US).startsWith("UTIME "))
+                {
+                    //SITE UTIME <path> <atime> <mtime> <ctime> UTC, the path may contain spaces
+                    final String[] parts = argument.substring(6).split(" ");
+                    if(parts.length < 5)
+                        this.reply(out, "501 Syntax error");
+                    else
+                    {
+                        final StringBuilder path = new StringBuilder(parts[0]);
+                        for(int i = 1; i < parts.length - 4; i++)
+                            path.append(' ').append(parts[i]);
+                        this.setFiletime(out, cwd, path.toString(), parts[parts.length - 3], timestampFormat, random);
+                    }
+                }
+                else if((command.equals("MFMT") || command.equals("MDTM")) && argument.matches("\\d{14} .+"))
+                    this.setFiletime(out, cwd, argument.substring(15), argument.substring(0, 14), timestampFormat, random);
+                else if(command.equals("MDTM"))
+                {
+                    final String path = this.resolve(cwd, argument);
+                    if(this.getFile(path).exists())
+                        this.reply(out, "213 " + timestampFormat.format(new Date(this.getFiletime(path))));
+                    else
+                        this.reply(out, "550 " + argument + ": No such file");
+                }
+                else if(command.equals("QUIT"))
+                {
+                    this.reply(out, "221 Goodbye");
+                    return;
+                }
+                else
+                    this.reply(out, "502 " + command + " not implemented");
+            }
+        }
+        catch(final IOException e)
+        {
+            //Connection closed by client
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            this.connections.decrementAndGet();
+            try
+            {
+                if(passiveSocket != null)
+                    passiveSocket.close();
+                socket.close();
+            }
+            catch(final IOException e)
+            {
+                //Closing anyway
+            }
+        }
+    }
+
+    /**
+     * Records a filetime or replies with an injected failure.
+     *
+     * @param out Control connection
+     * @param cwd Current remote directory
+     * @param filename Remote file
+     * @param timestamp Filetime with pattern {@code yyyyMMddHHmmss} in UTC
+     * @param timestampFormat Parser for the filetime
+     * @param random Random generator of connection
+     * @throws IOException If reply can't be sent
+     */
+    private void setFiletime(final Writer out, final String cwd, final String filename, final String timestamp, final SimpleDateFormat timestampFormat, final Random random) throws IOException
+    {
+        final String path = this.resolve(cwd, filename);
+        this.filetimeCommands.incrementAndGet();
+        if(this.isThrottled())
+        {
+            this.throttled.incrementAndGet();
+            this.reply(out, "450 Too many commands, slow down");
+        }
+        else if(random.nextDouble() < this.errorRate)
+            this.reply(out, "550 Injected failure for " + filename);
+        else if(!this.getFile(path).exists())
+            this.reply(out, "550 " + filename + ": No such file");
+        else
+            try
+            {
+                if(this.filetimes.put(path, timestampFormat.parse(timestamp).getTime()) != null)
+                    this.refixed.incrementAndGet();
+                this.reply(out, "213 Modify=" + timestamp + "; " + filename);
+            }
+            catch(final java.text.ParseException e)
+            {
+                this.reply(out, "501 Invalid time " + timestamp);
+            }
+    }
+
+    /**
+     * Counts a filetime command for throttling.
+     *
+     * @return Command exceeds the rate of the current second
+     */
+    private synchronized boolean isThrottled()
+    {
+        if(this.throttleRate <= 0)
+            return false;
+        final long now = System.currentTimeMillis();
+        if(now - this.throttleSecond >= 1000)
+        {
+            this.throttleSecond = now;
+            this.throttleCount = 0;
+        }
+        return ++this.throttleCount > this.throttleRate;
+    }
+
+    /**
+     * Returns the lines of a UNIX style listing. Like {@code ls}, modification times of the last six months are listed
+     * to the minute and older ones to the day with their year.
+     *
+     * @param path Absolute remote directory
+     * @param namesOnly List names only
+     * @param listDateFormats Formatters for recent and older modification times
+     * @return Listing lines, each ending with CRLF
+     */
+    private String list(final String path, final boolean namesOnly, final SimpleDateFormat[] listDateFormats)
+    {
+        final long now = System.currentTimeMillis();
+        final StringBuilder listing = new StringBuilder();
+        final File[] entries = this.getFile(path).listFiles();
+        if(entries != null)
+            for(final File curEntry : entries)
+            {
+                if(!namesOnly)
+                {
+                    final long filetime = this.getFiletime((path.endsWith("/") ? path : path + "/") + curEntry.getName());
+                    listing.append(curEntry.isDirectory() ? "drwxr-xr-x" : "-rw-r--r--").append("    1 jfix     jfix     ")
+                            .append(String.format("%8d ", curEntry.length()))
+                            .append(listDateFormats[filetime > now || now - filetime > StubFtpServer.MINUTE_PRECISION_AGE ? 1 : 0].format(new Date(filetime))).append(' ');
+                }
+                listing.append(curEntry.getName()).append("\r\n");
+            }
+        return listing.toString();
+    }
+
+    /**
+     * Returns the filetime of a remote entry, the start time of the server if not set by a client.
+     *
+     * @param path Absolute remote path
+     * @return Filetime in milliseconds
+     */
+    private long getFiletime(final String path)
+    {
+        final Long filetime = this.filetimes.get(path);
+        return filetime == null ? this.startTime : filetime;
+    }
+
+    /**
+     * Removes listing options like {@code -l} or {@code -a} from an argument.
+     *
+     * @param argument Argument of listing command
+     * @return Path of argument
+     */
+    private String stripOptions(final String argument)
+    {
+        String path = argument.trim();
+        while(path.startsWith("-"))
+            path = path.indexOf(' ') == -1 ? "" : path.substring(path.indexOf(' ') + 1).trim();
+        return path;
+    }
+
+    /**
+     * Resolves a remote path against the current directory.
+     *
+     * @param cwd Current remote directory with trailing slash
+     * @param path Absolute or relative remote path
+     * @return Absolute remote path
+     */
+    private String resolve(final String cwd, final String path)
+    {
+        if(path.isEmpty() || path.equals("."))
+            return cwd;
+        final String absolute = path.startsWith("/") ? path : cwd + path;
+        return absolute.length() > 1 && absolute.endsWith("/") ? absolute.substring(0, absolute.length() - 1) : absolute;
+    }
+
+    /**
+     * Returns the local file of a remote path.
+     *
+     * @param path Absolute remote path
+     * @return Local file in served tree
+     */
+    private File getFile(final String path)
+    {
+        return new File(this.root, path);
+    }
+
+    /**
+     * Sends a reply.
+     *
+     * @param out Control connection
+     * @param reply Reply without trailing line break
+     * @throws IOException If reply can't be sent
+     */
+    private void reply(final Writer out, final String reply) throws IOException
+    {
+        out.write(reply);
+        out.write("\r\n");
+        out.flush();
+    }
+}
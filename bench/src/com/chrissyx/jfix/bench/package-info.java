@@ -0,0 +1,8 @@
+/**
+ * JMH benchmarks of the hot paths, run with the {@code bench} target of the Ant build. Results are saved as JSON to
+ * track regressions between versions. The {@code load-test} target runs {@link com.chrissyx.jfix.bench.LoadTest} end to
+ * end against an in-process {@link com.chrissyx.jfix.bench.StubFtpServer}.
+ *
+ * @author Chrissyx
+ */
+package com.chrissyx.jfix.bench;
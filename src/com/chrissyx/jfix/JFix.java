@@ -1,7 +1,16 @@
 package com.chrissyx.jfix;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.ConsoleAppender;
+import com.chrissyx.jfix.modules.CliController;
 import com.chrissyx.jfix.modules.GuiController;
 
+import java.util.Arrays;
+
 import javax.swing.SwingUtilities;
 
 import org.slf4j.LoggerFactory;
@@ -22,6 +31,11 @@ public class JFix
      */
     public static final String VERSION = "1.0";
 
+    /**
+     * State if running without GUI.
+     */
+    private static boolean headless;
+
     /**
      * Hidden constructor to prevent instances of this class.
      */
@@ -30,12 +44,23 @@ public class JFix
     }
 
     /**
-     * Starts application with GUI by calling {@link GuiController}.
+     * Starts application with GUI by calling {@link GuiController} or, if arguments are given, without GUI by calling
+     * {@link CliController} and exits with its status code. Without GUI, only warnings and errors are logged to
+     * standard error unless {@code --verbose} is given.
      *
-     * @param args Unused arguments
+     * @param args Command line options for running without GUI
      */
     public static void main(final String[] args)
     {
+        if(args.length > 0)
+        {
+            JFix.headless = true;
+            System.setProperty("java.awt.headless", "true");
+            //Standard output is kept for the summary, so log to standard error before the first message
+            if(System.getProperty("logback.configurationFile") == null)
+                JFix.configureCliLogging(Arrays.asList(args).contains("--verbose"));
+            System.exit(CliController.getInstance().run(args));
+        }
         LoggerFactory.getLogger(JFix.class).info("Starting JFix {}...", JFix.VERSION);
         LoggerFactory.getLogger(JFix.class).info("Running on {} {} with Java {}", new Object[]
                 {
@@ -43,6 +68,52 @@ public class JFix
                     System.getProperty("os.version"),
                     System.getProperty("java.version")
                 });
+        JFix.startGui();
+    }
+
+    /**
+     * Returns if JFix is running without GUI, so no dialogs may be shown. This is also the case if embedded with system
+     * property {@code java.awt.headless} set, e.g. by the load test.
+     *
+     * @return Headless state
+     */
+    public static boolean isHeadless()
+    {
+        return JFix.headless || Boolean.getBoolean("java.awt.headless");
+    }
+
+    /**
+     * Logs to standard error, only warnings and errors unless verbose. Logback is configured in code, as its XML
+     * configuration introspects with the java.beans classes of the desktop module.
+     *
+     * @param verbose Log debug messages, too
+     */
+    private static void configureCliLogging(final boolean verbose)
+    {
+        if(!(LoggerFactory.getILoggerFactory() instanceof LoggerContext))
+            return;
+        final LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+        final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{HH:mm:ss.SSS} %-5level %logger{36} - %msg%n");
+        encoder.start();
+        final ConsoleAppender<ILoggingEvent> appender = new ConsoleAppender<ILoggingEvent>();
+        appender.setContext(loggerContext);
+        appender.setName("STDERR");
+        appender.setTarget("System.err");
+        appender.setEncoder(encoder);
+        appender.start();
+        final Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        rootLogger.setLevel(verbose ? Level.DEBUG : Level.WARN);
+        rootLogger.addAppender(appender);
+    }
+
+    /**
+     * Creates the GUI on the event dispatch thread. Kept separate, so Swing classes are only loaded with GUI.
+     */
+    private static void startGui()
+    {
         SwingUtilities.invokeLater(new Runnable()
         {
             /**
@@ -1,5 +1,6 @@
 package com.chrissyx.jfix.common.error;
 
+import com.chrissyx.jfix.JFix;
 import com.chrissyx.jfix.modules.GuiController;
 
 import org.slf4j.LoggerFactory;
@@ -78,7 +79,8 @@ public class JFixError extends Exception
     {
         final String curLogMessage = this.logMessage == null ? super.getMessage() : this.logMessage;
         LoggerFactory.getLogger(clazz).error(curLogMessage, super.getCause());
-        GuiController.getInstance().showErrorDialog(curLogMessage);
+        if(!JFix.isHeadless())
+            GuiController.getInstance().showErrorDialog(curLogMessage);
     }
 
     /**
@@ -91,7 +93,7 @@ public class JFixError extends Exception
     {
         final String curLogMessage = this.logMessage == null ? super.getMessage() : this.logMessage;
         LoggerFactory.getLogger(clazz).warn(curLogMessage, super.getCause());
-        if(showDialog)
+        if(showDialog && !JFix.isHeadless())
             GuiController.getInstance().showWarningDialog(curLogMessage);
     }
 }
@@ -8,14 +8,14 @@ package com.chrissyx.jfix.gui;
 public interface MainView extends BaseView
 {
     /**
-     * Appends a log entry to text area console.
+     * Appends a batch of log entries to the console, which keeps only the latest ones.
      *
-     * @param logMessage Log entry to append
+     * @param logMessages Log entries to append
      */
-    void appendLogEntry(final String logMessage);
+    void appendLogEntries(final String[] logMessages);
 
     /**
-     * Clears all log entries from text area console.
+     * Clears all log entries from console.
      */
     void clearLogConsole();
 
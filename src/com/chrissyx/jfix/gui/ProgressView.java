@@ -0,0 +1,26 @@
+package com.chrissyx.jfix.gui;
+
+/**
+ * The progress frame of a fix run.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public interface ProgressView extends BaseView
+{
+    /**
+     * Sets the current progress of the run.
+     *
+     * @param filesDone Number of fixed or skipped files
+     * @param filesTotal Number of files to process or -1 if not counted yet
+     * @param commandsPerSecond Current throughput of commands
+     * @param rtt Current average round-trip time of commands in milliseconds
+     * @param eta Estimated seconds until the run is done or -1 if unknown
+     */
+    void setProgress(final long filesDone, final long filesTotal, final double commandsPerSecond, final double rtt, final long eta);
+
+    /**
+     * Shows that the run is being cancelled.
+     */
+    void setCancelling();
+}
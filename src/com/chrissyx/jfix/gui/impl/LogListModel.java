@@ -0,0 +1,79 @@
+package com.chrissyx.jfix.gui.impl;
+
+import com.chrissyx.jfix.modules.util.LogRingBuffer;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * List model of the log console, backed by a ring buffer so only the latest lines are kept. Must only be used on the
+ * event dispatch thread.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class LogListModel extends AbstractListModel<String>
+{
+    /**
+     * Buffered log lines.
+     */
+    private final LogRingBuffer logLines;
+
+    /**
+     * Creates an empty log model.
+     *
+     * @param capacity Maximum number of lines to keep
+     */
+    public LogListModel(final int capacity)
+    {
+        this.logLines = new LogRingBuffer(capacity);
+    }
+
+    /**
+     * Appends a batch of lines, dropping the oldest ones beyond the capacity.
+     *
+     * @param lines Lines to append
+     */
+    public void appendLines(final String[] lines)
+    {
+        if(lines.length == 0)
+            return;
+        final int oldSize = this.logLines.size();
+        this.logLines.addAll(lines);
+        final int newSize = this.logLines.size();
+        final int removed = Math.min(oldSize, this.logLines.takeDropped());
+        if(removed > 0)
+            this.fireIntervalRemoved(this, 0, removed - 1);
+        final int added = newSize - (oldSize - removed);
+        if(added > 0)
+            this.fireIntervalAdded(this, newSize - added, newSize - 1);
+    }
+
+    /**
+     * Removes all lines.
+     */
+    public void clear()
+    {
+        final int oldSize = this.logLines.size();
+        this.logLines.clear();
+        if(oldSize > 0)
+            this.fireIntervalRemoved(this, 0, oldSize - 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getElementAt(final int index)
+    {
+        return this.logLines.get(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize()
+    {
+        return this.logLines.size();
+    }
+}
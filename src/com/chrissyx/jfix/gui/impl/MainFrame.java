@@ -1,6 +1,7 @@
 package com.chrissyx.jfix.gui.impl;
 
 import com.chrissyx.jfix.gui.MainView;
+import com.chrissyx.jfix.modules.ConfigController;
 import com.chrissyx.jfix.modules.GuiController;
 import com.chrissyx.jfix.modules.LangController;
 import com.chrissyx.jfix.modules.util.ResourceUtils;
@@ -12,12 +13,21 @@ import com.chrissyx.jfix.modules.util.ResourceUtils;
  */
 public class MainFrame extends javax.swing.JFrame implements MainView
 {
+    /**
+     * Latest log lines shown in the console.
+     */
+    private final LogListModel logListModel = new LogListModel(Integer.parseInt(ConfigController.getInstance().getCfgVal("logLines")));
+
     /**
      * Creates new main frame.
      */
     public MainFrame()
     {
         this.initComponents();
+        //Fixed cell sizes let the console lay out only visible lines
+        final java.awt.FontMetrics fontMetrics = this.lstLog.getFontMetrics(this.lstLog.getFont());
+        this.lstLog.setFixedCellHeight(fontMetrics.getHeight());
+        this.lstLog.setFixedCellWidth(fontMetrics.charWidth('m') * 160);
     }
 
     /**
@@ -33,7 +43,7 @@ public class MainFrame extends javax.swing.JFrame implements MainView
         jScrollPane2 = new javax.swing.JScrollPane();
         lstRemoteFiles = new javax.swing.JList();
         jScrollPane3 = new javax.swing.JScrollPane();
-        txtAreaLog = new javax.swing.JTextArea();
+        lstLog = new javax.swing.JList();
         btnConnect = new javax.swing.JToggleButton();
         btnOptions = new javax.swing.JButton();
         btnExit = new javax.swing.JButton();
@@ -66,10 +76,10 @@ public class MainFrame extends javax.swing.JFrame implements MainView
         });
         jScrollPane2.setViewportView(lstRemoteFiles);
 
-        txtAreaLog.setColumns(20);
-        txtAreaLog.setFont(new java.awt.Font("Monospaced", 0, 10));
-        txtAreaLog.setRows(5);
-        jScrollPane3.setViewportView(txtAreaLog);
+        lstLog.setFont(new java.awt.Font("Monospaced", 0, 10));
+        lstLog.setModel(this.logListModel);
+        lstLog.setVisibleRowCount(5);
+        jScrollPane3.setViewportView(lstLog);
 
         btnConnect.setText(LangController.getInstance().getString("connect"));
         btnConnect.addActionListener(new java.awt.event.ActionListener() {
@@ -189,8 +199,8 @@ private void lstRemoteFilesMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FI
     private javax.swing.JScrollPane jScrollPane2;
     private javax.swing.JScrollPane jScrollPane3;
     private javax.swing.JList lstLocalFiles;
+    private javax.swing.JList lstLog;
     private javax.swing.JList lstRemoteFiles;
-    private javax.swing.JTextArea txtAreaLog;
     // End of variables declaration//GEN-END:variables
 
     /**
@@ -215,9 +225,10 @@ private void lstRemoteFilesMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FI
      * {@inheritDoc}
      */
     @Override
-    public void appendLogEntry(final String logMessage)
+    public void appendLogEntries(final String[] logMessages)
     {
-        this.txtAreaLog.append(logMessage + "\n");
+        this.logListModel.appendLines(logMessages);
+        this.lstLog.ensureIndexIsVisible(this.logListModel.getSize() - 1);
     }
 
     /**
@@ -226,7 +237,7 @@ private void lstRemoteFilesMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FI
     @Override
     public void clearLogConsole()
     {
-        this.txtAreaLog.setText(null);
+        this.logListModel.clear();
     }
 
     /**
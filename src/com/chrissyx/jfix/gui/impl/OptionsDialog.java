@@ -6,7 +6,7 @@ import com.chrissyx.jfix.modules.ConfigController;
 import com.chrissyx.jfix.modules.GuiController;
 import com.chrissyx.jfix.modules.LangController;
 import com.chrissyx.jfix.modules.util.CryptUtils;
-import com.chrissyx.jfix.modules.util.FileUtils;
+import com.chrissyx.jfix.modules.util.ServiceRegistry;
 
 import javax.swing.JFileChooser;
 
@@ -147,7 +147,7 @@ public class OptionsDialog extends javax.swing.JDialog implements OptionsView
 
         lblPlugIn.setText(LangController.getInstance().getString("plug_in_to_use"));
 
-        cbxPlugIns.setModel(new javax.swing.DefaultComboBoxModel(FileUtils.getPackageListing("plugins", ".class", "FiletimeFixer", "package-info")));
+        cbxPlugIns.setModel(new javax.swing.DefaultComboBoxModel(ServiceRegistry.getPlugInNames()));
         cbxPlugIns.setSelectedItem(ConfigController.getInstance().getCfgVal("plugIn"));
 
         lblLanguage.setText(LangController.getInstance().getString("language_after_restart"));
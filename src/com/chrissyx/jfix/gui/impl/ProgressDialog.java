@@ -0,0 +1,145 @@
+package com.chrissyx.jfix.gui.impl;
+
+import com.chrissyx.jfix.gui.ProgressView;
+import com.chrissyx.jfix.modules.GuiController;
+import com.chrissyx.jfix.modules.LangController;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.WindowConstants;
+
+/**
+ * Non-modal window showing the progress of a fix run with a button to cancel it.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class ProgressDialog extends JDialog implements ProgressView
+{
+    /**
+     * Bar with the percentage of files done.
+     */
+    private final JProgressBar progressBar = new JProgressBar(0, 1000);
+
+    /**
+     * Label with the number of files done.
+     */
+    private final JLabel lblFiles = new JLabel(" ");
+
+    /**
+     * Label with throughput, round-trip time and ETA.
+     */
+    private final JLabel lblRate = new JLabel(" ");
+
+    /**
+     * Button to cancel the run.
+     */
+    private final JButton btnCancel = new JButton(LangController.getInstance().getString("cancel"));
+
+    /**
+     * Creates new progress dialog.
+     *
+     * @param parent Parent frame
+     */
+    public ProgressDialog(final JFrame parent)
+    {
+        super(parent, LangController.getInstance().getString("title_progress"), false);
+        this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        this.addWindowListener(new WindowAdapter()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void windowClosing(final WindowEvent e)
+            {
+                GuiController.getInstance().onCancelFix();
+            }
+        });
+        this.btnCancel.addActionListener(new ActionListener()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void actionPerformed(final ActionEvent e)
+            {
+                GuiController.getInstance().onCancelFix();
+            }
+        });
+        this.progressBar.setIndeterminate(true);
+        final JPanel pnlLabels = new JPanel(new GridLayout(2, 1, 0, 4));
+        pnlLabels.add(this.lblFiles);
+        pnlLabels.add(this.lblRate);
+        final JPanel pnlButton = new JPanel();
+        pnlButton.add(this.btnCancel);
+        final JPanel pnlContent = new JPanel(new BorderLayout(0, 8));
+        pnlContent.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        pnlContent.add(this.progressBar, BorderLayout.NORTH);
+        pnlContent.add(pnlLabels, BorderLayout.CENTER);
+        pnlContent.add(pnlButton, BorderLayout.SOUTH);
+        this.setContentPane(pnlContent);
+        this.setProgress(0, -1, 0, 0, -1);
+        this.pack();
+        this.setSize(Math.max(400, this.getWidth()), this.getHeight());
+        this.setLocationRelativeTo(parent);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void closeFrame()
+    {
+        this.dispose();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void showFrame()
+    {
+        this.setVisible(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setProgress(final long filesDone, final long filesTotal, final double commandsPerSecond, final double rtt, final long eta)
+    {
+        if(filesTotal < 0)
+            this.lblFiles.setText(LangController.getInstance().getString("text_progress_counting", filesDone));
+        else
+        {
+            this.progressBar.setIndeterminate(false);
+            this.progressBar.setValue(filesTotal == 0 ? 1000 : (int) Math.min(1000, filesDone * 1000 / filesTotal));
+            this.lblFiles.setText(LangController.getInstance().getString("text_progress_files", filesDone, filesTotal));
+        }
+        this.lblRate.setText(LangController.getInstance().getString("text_progress_rate", commandsPerSecond, rtt,
+                eta < 0 ? "?" : String.format("%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCancelling()
+    {
+        this.btnCancel.setEnabled(false);
+        this.btnCancel.setText(LangController.getInstance().getString("cancelling"));
+    }
+}
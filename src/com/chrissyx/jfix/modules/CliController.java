@@ -0,0 +1,374 @@
+package com.chrissyx.jfix.modules;
+
+import com.chrissyx.jfix.JFix;
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.modules.ftp.ErrorReport;
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+import com.chrissyx.jfix.modules.util.CryptUtils;
+import com.chrissyx.jfix.modules.util.ServiceRegistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs JFix without GUI from the command line. Options override the values of the config file, the run ends with a
+ * JSON summary including the run metrics and an exit status for scripts. Log messages go to standard error, so standard
+ * output only carries the summary. No classes of the desktop module are loaded, so the run metrics are only registered
+ * for JMX with system property {@code jfix.jmx} or remote JMX enabled.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class CliController
+{
+    /**
+     * Exit status of a run with all filetimes fixed.
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * Exit status of a completed run with commands rejected by the server.
+     */
+    public static final int EXIT_FAILED_COMMANDS = 1;
+
+    /**
+     * Exit status of an aborted run.
+     */
+    public static final int EXIT_ABORTED = 2;
+
+    /**
+     * Exit status of a run cancelled by a signal.
+     */
+    public static final int EXIT_CANCELLED = 3;
+
+    /**
+     * Exit status of invalid options.
+     */
+    public static final int EXIT_USAGE = 64;
+
+    /**
+     * Singleton instance of this class.
+     */
+    private static CliController cliController = new CliController();
+
+    /**
+     * Options with a value mapped to their config keys.
+     */
+    private final Map<String, String> valueOptions = new HashMap<String, String>();
+
+    /**
+     * Switches mapped to their config keys and values.
+     */
+    private final Map<String, String[]> switchOptions = new HashMap<String, String[]>();
+
+    /**
+     * Creates the option mappings.
+     */
+    private CliController()
+    {
+        this.valueOptions.put("--host", "host");
+        this.valueOptions.put("--port", "port");
+        this.valueOptions.put("--user", "user");
+        this.valueOptions.put("--plugin", "plugIn");
+        this.valueOptions.put("--pool-size", "poolSize");
+        this.valueOptions.put("--pipeline", "pipelineWindow");
+        this.valueOptions.put("--include", "include");
+        this.valueOptions.put("--exclude", "exclude");
+        this.valueOptions.put("--adaptive-max", "adaptiveMaxInFlight");
+        this.valueOptions.put("--max-rate", "maxCommandRate");
+        this.valueOptions.put("--retries", "retryAttempts");
+        this.switchOptions.put("--recursive", new String[] {"recursive", "true"});
+        this.switchOptions.put("--no-recursive", new String[] {"recursive", "false"});
+        this.switchOptions.put("--skip-unchanged", new String[] {"skipUnchanged", "true"});
+        this.switchOptions.put("--journal", new String[] {"journal", "true"});
+        this.switchOptions.put("--stat-listing", new String[] {"statListing", "true"});
+        this.switchOptions.put("--adaptive", new String[] {"adaptiveConcurrency", "true"});
+    }
+
+    /**
+     * Returns the singleton instance of this class.
+     *
+     * @return Instance of this class
+     */
+    public static CliController getInstance()
+    {
+        return CliController.cliController;
+    }
+
+    /**
+     * Parses the options, connects, fixes the filetimes and writes the summary.
+     *
+     * @param args Command line options
+     * @return Exit status
+     */
+    public int run(final String[] args)
+    {
+        final Map<String, String> options = new HashMap<String, String>();
+        for(int i = 0; i < args.length; i++)
+            if(args[i].equals("--help"))
+            {
+                this.printUsage(System.out);
+                return CliController.EXIT_OK;
+            }
+            else if(this.switchOptions.containsKey(args[i]) || args[i].equals("--resume") || args[i].equals("--verbose"))
+                options.put(args[i], null);
+            else if(this.valueOptions.containsKey(args[i]) || args[i].equals("--config") || args[i].equals("--pass")
+                    || args[i].equals("--local") || args[i].equals("--remote") || args[i].equals("--summary"))
+            {
+                if(++i == args.length)
+                    return this.usageError("Missing value for " + args[i - 1]);
+                options.put(args[i - 1], args[i]);
+            }
+            else
+                return this.usageError("Unknown option " + args[i]);
+        //Config file must be known before the settings are loaded
+        if(options.containsKey("--config"))
+            System.setProperty("jfix.config", options.get("--config"));
+        LoggerFactory.getLogger(CliController.class).info("Starting JFix {} without GUI...", JFix.VERSION);
+        for(final Map.Entry<String, String> curOption : options.entrySet())
+            if(this.valueOptions.containsKey(curOption.getKey()))
+                ConfigController.getInstance().setCfgVal(this.valueOptions.get(curOption.getKey()), curOption.getValue());
+            else if(this.switchOptions.containsKey(curOption.getKey()))
+                ConfigController.getInstance().setCfgVal(this.switchOptions.get(curOption.getKey())[0], this.switchOptions.get(curOption.getKey())[1]);
+        final String password = options.containsKey("--pass") ? options.get("--pass") : System.getenv("JFIX_PASS");
+        if(password != null)
+            ConfigController.getInstance().setCfgVal("pass", CryptUtils.encode(password));
+        final String host = ConfigController.getInstance().getCfgVal("host");
+        final File localDir = new File(options.containsKey("--local") ? options.get("--local") : ConfigController.getInstance().getCfgVal("localStartDir"));
+        final String remoteDir = options.containsKey("--remote") ? options.get("--remote") : ConfigController.getInstance().getCfgVal("remoteStartDir");
+        if(host.isEmpty())
+            return this.usageError("No host set");
+        if(!localDir.isDirectory())
+            return this.usageError("Local directory '" + localDir + "' not found");
+        if(remoteDir.isEmpty())
+            return this.usageError("No remote directory set");
+        if(ServiceRegistry.getPlugIn(ConfigController.getInstance().getCfgVal("plugIn")) == null)
+            return this.usageError("Unknown plug-in " + ConfigController.getInstance().getCfgVal("plugIn"));
+        try
+        {
+            Integer.parseInt(ConfigController.getInstance().getCfgVal("port"));
+            Integer.parseInt(ConfigController.getInstance().getCfgVal("poolSize"));
+            Integer.parseInt(ConfigController.getInstance().getCfgVal("pipelineWindow"));
+            Integer.parseInt(ConfigController.getInstance().getCfgVal("adaptiveMaxInFlight"));
+            Double.parseDouble(ConfigController.getInstance().getCfgVal("maxCommandRate"));
+            Integer.parseInt(ConfigController.getInstance().getCfgVal("retryAttempts"));
+        }
+        catch(final NumberFormatException e)
+        {
+            return this.usageError("Invalid number " + e.getMessage());
+        }
+        final FixProgress fixProgress = new FixProgress();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final Thread shutdownHook = new Thread("JFix-Shutdown")
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                LoggerFactory.getLogger(CliController.class).info("Cancelling run...");
+                fixProgress.cancel();
+                try
+                {
+                    finished.await(10, TimeUnit.SECONDS);
+                }
+                catch(final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        String error = null;
+        try
+        {
+            FtpController.getInstance().connect();
+            try
+            {
+                FtpController.getInstance().changeDir(remoteDir);
+                FtpController.getInstance().fixFiletimes(localDir, options.containsKey("--resume"), fixProgress);
+            }
+            finally
+            {
+                FtpController.getInstance().disconnect();
+            }
+        }
+        catch(final JFixError e)
+        {
+            e.error(CliController.class);
+            error = e.getLogMessage() == null ? e.getMessage() : e.getLogMessage();
+        }
+        final int status = error != null ? CliController.EXIT_ABORTED
+                : fixProgress.isCancelled() ? CliController.EXIT_CANCELLED
+                : fixProgress.getFailed() > 0 ? CliController.EXIT_FAILED_COMMANDS : CliController.EXIT_OK;
+        this.writeSummary(options.get("--summary"), this.getSummary(status, host, localDir, remoteDir, fixProgress, error));
+        finished.countDown();
+        if(!fixProgress.isCancelled())
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        return status;
+    }
+
+    /**
+     * Builds the JSON summary of a run.
+     *
+     * @param status Exit status
+     * @param host FTP host
+     * @param localDir Local root directory
+     * @param remoteDir Remote root directory
+     * @param fixProgress Progress of run
+     * @param error Message of abort or {@code null}
+     * @return JSON object
+     */
+    private String getSummary(final int status, final String host, final File localDir, final String remoteDir, final FixProgress fixProgress, final String error)
+    {
+        final long commands = fixProgress.getCommands();
+        return "{\"status\":" + status
+                + ",\"host\":" + this.toJson(host)
+                + ",\"localDir\":" + this.toJson(localDir.getAbsolutePath())
+                + ",\"remoteDir\":" + this.toJson(remoteDir)
+                + ",\"filesTotal\":" + fixProgress.getFilesTotal()
+                + ",\"filesDone\":" + fixProgress.getFilesDone()
+                + ",\"commands\":" + commands
+                + ",\"failed\":" + fixProgress.getFailed()
+                + ",\"avgRttMs\":" + (commands == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(fixProgress.getRttNanos() / commands))
+                + ",\"elapsedMs\":" + (System.currentTimeMillis() - fixProgress.getStartTime())
+                + ",\"error\":" + this.toJson(error)
+                + ",\"problems\":" + this.getProblems(FtpController.getInstance().getErrorReport())
+                + ",\"metrics\":" + FtpController.getInstance().getFixMetrics().getJson() + "}";
+    }
+
+    /**
+     * Builds the JSON summary of the problems of a run, naming the report file only if there were any.
+     *
+     * @param errorReport Problems of run
+     * @return JSON object
+     */
+    private String getProblems(final ErrorReport errorReport)
+    {
+        final StringBuilder json = new StringBuilder("{\"total\":").append(errorReport.getTotal()).append(",\"byCode\":{");
+        boolean first = true;
+        for(final Map.Entry<String, Integer> curCount : errorReport.getCounts().entrySet())
+        {
+            if(!first)
+                json.append(',');
+            first = false;
+            json.append(this.toJson(curCount.getKey())).append(':').append(curCount.getValue());
+        }
+        return json.append("},\"report\":").append(this.toJson(errorReport.getTotal() == 0 ? null : errorReport.getReportFile().getAbsolutePath())).append('}').toString();
+    }
+
+    /**
+     * Quotes a string as JSON value.
+     *
+     * @param string String to quote or {@code null}
+     * @return JSON string or {@code null}
+     */
+    private String toJson(final String string)
+    {
+        if(string == null)
+            return "null";
+        final StringBuilder json = new StringBuilder(string.length() + 2).append('"');
+        for(final char curChar : string.toCharArray())
+            if(curChar == '"' || curChar == '\\')
+                json.append('\\').append(curChar);
+            else if(curChar < 0x20)
+                json.append(String.format("\\u%04x", (int) curChar));
+            else
+                json.append(curChar);
+        return json.append('"').toString();
+    }
+
+    /**
+     * Writes the summary to stated file or standard output.
+     *
+     * @param summaryFile File to write to or {@code null} for standard output
+     * @param summary JSON summary
+     */
+    private void writeSummary(final String summaryFile, final String summary)
+    {
+        if(summaryFile == null)
+        {
+            System.out.println(summary);
+            return;
+        }
+        try
+        {
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(summaryFile), "UTF-8");
+            try
+            {
+                writer.write(summary);
+                writer.write(System.getProperty("line.separator"));
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch(final IOException e)
+        {
+            new JFixError("Can't write summary to '" + summaryFile + "'!", e).warn(CliController.class, false);
+            System.out.println(summary);
+        }
+    }
+
+    /**
+     * Prints an invalid option message and the usage.
+     *
+     * @param message Message of invalid option
+     * @return Exit status for usage errors
+     */
+    private int usageError(final String message)
+    {
+        System.err.println("JFix: " + message);
+        this.printUsage(System.err);
+        return CliController.EXIT_USAGE;
+    }
+
+    /**
+     * Prints the available options.
+     *
+     * @param out Stream to print to
+     */
+    private void printUsage(final PrintStream out)
+    {
+        out.println("Usage: java -jar JFix.jar [options]");
+        out.println("Fixes filetimes without GUI. Options override the values of the config file.");
+        out.println("  --config <file>      Config XML file to use");
+        out.println("  --host <host>        FTP host");
+        out.println("  --port <port>        FTP port");
+        out.println("  --user <name>        FTP user name");
+        out.println("  --pass <password>    FTP password, environment variable JFIX_PASS otherwise");
+        out.println("  --local <dir>        Local root directory");
+        out.println("  --remote <dir>       Remote root directory");
+        out.println("  --plugin <name>      Plug-in to set filetimes with: Auto, Mfmt, Mdtm or SiteUtime");
+        out.println("  --recursive          Fix subdirectories, too");
+        out.println("  --no-recursive       Fix root directory only");
+        out.println("  --pool-size <n>      Number of parallel FTP sessions");
+        out.println("  --pipeline <n>       Number of commands sent ahead of their replies");
+        out.println("  --adaptive           Adapt commands in flight to server throttling and latency");
+        out.println("  --adaptive-max <n>   Most commands in flight over all sessions when adapting, at least pool size times pipeline");
+        out.println("  --max-rate <n>       Maximum commands per second to the host, 0 for no ceiling");
+        out.println("  --retries <n>        Reconnects and resends per batch after losing the connection, 0 to abort");
+        out.println("  --include <globs>    Comma separated filename patterns to fix");
+        out.println("  --exclude <globs>    Comma separated filename patterns to leave untouched");
+        out.println("  --skip-unchanged     Skip files with matching remote filetimes");
+        out.println("  --journal            Skip files fixed by earlier runs");
+        out.println("  --resume             Resume an interrupted run");
+        out.println("  --stat-listing       List directories over the control connection if supported");
+        out.println("  --summary <file>     Write JSON summary with metrics to file instead of standard output");
+        out.println("  --verbose            Log debug messages to standard error, otherwise only warnings and errors");
+        out.println("  --help               Show this help");
+        out.println("Exit status: 0 done, 1 commands failed, 2 aborted, 3 cancelled, 64 invalid options");
+    }
+}
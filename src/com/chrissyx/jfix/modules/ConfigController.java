@@ -25,13 +25,18 @@ public final class ConfigController extends Observable
      */
     private static ConfigController configController = new ConfigController();
 
+    /**
+     * Default values for tuning settings not stored in older config files.
+     */
+    private final Properties defaults;
+
     /**
      * Properties handler.
      */
     private final Properties properties;
 
     /**
-     * Name of XML configuration file.
+     * Name of XML configuration file, may be set with system property {@code jfix.config}.
      */
     private final String configFile;
 
@@ -40,8 +45,37 @@ public final class ConfigController extends Observable
      */
     private ConfigController()
     {
-        this.properties = new Properties();
-        this.configFile = System.getProperty("user.dir") + File.separator + "jfix-config.xml";
+        this.defaults = new Properties();
+        this.defaults.setProperty("poolSize", "1");
+        this.defaults.setProperty("absolutePaths", "true");
+        this.defaults.setProperty("pipelineWindow", "1");
+        this.defaults.setProperty("skipUnchanged", "false");
+        //LIST shows filetimes to the minute only, older ones to the day; a smaller tolerance re-sends unchanged files, a
+        //larger one skips files changed within that many seconds of the remote filetime
+        this.defaults.setProperty("skipTolerance", "60");
+        this.defaults.setProperty("journal", "false");
+        this.defaults.setProperty("resume", "ask");
+        this.defaults.setProperty("checkpointInterval", "5");
+        this.defaults.setProperty("listingCacheTtl", "60");
+        this.defaults.setProperty("listingCacheSize", "128");
+        this.defaults.setProperty("listingCacheMemory", "4096");
+        this.defaults.setProperty("logLines", "5000");
+        this.defaults.setProperty("logFile", "");
+        this.defaults.setProperty("eventQueueSize", "10000");
+        this.defaults.setProperty("eventOverflow", "sample");
+        this.defaults.setProperty("eventSampleRate", "10");
+        this.defaults.setProperty("include", "");
+        this.defaults.setProperty("exclude", "");
+        this.defaults.setProperty("statListing", "false");
+        this.defaults.setProperty("adaptiveConcurrency", "false");
+        this.defaults.setProperty("adaptiveMaxInFlight", "16");
+        this.defaults.setProperty("maxCommandRate", "0");
+        this.defaults.setProperty("retryAttempts", "3");
+        this.defaults.setProperty("retryDelay", "1000");
+        this.defaults.setProperty("retryMaxDelay", "30000");
+        this.defaults.setProperty("errorReportSize", "1000");
+        this.properties = new Properties(this.defaults);
+        this.configFile = System.getProperty("jfix.config", System.getProperty("user.dir") + File.separator + "jfix-config.xml");
         LoggerFactory.getLogger(ConfigController.class).debug("Loading settings from {}...", this.configFile);
         try
         {
@@ -87,6 +121,18 @@ public final class ConfigController extends Observable
         return this.properties.getProperty(key, "");
     }
 
+    /**
+     * Returns a file stored next to the XML configuration file.
+     *
+     * @param filename Name of data file
+     * @return Data file in configuration directory
+     * @since 1.1
+     */
+    public File getDataFile(final String filename)
+    {
+        return new File(new File(this.configFile).getParentFile(), filename);
+    }
+
     /**
      * Returns the stated configuration identifier is known.
      *
@@ -95,7 +141,7 @@ public final class ConfigController extends Observable
      */
     public boolean hasCfgVal(final String key)
     {
-        return this.properties.containsKey(key);
+        return this.properties.getProperty(key) != null;
     }
 
     /**
@@ -1,22 +1,61 @@
 package com.chrissyx.jfix.modules;
 
+import com.chrissyx.jfix.JFix;
 import com.chrissyx.jfix.common.error.JFixError;
 import com.chrissyx.jfix.common.error.JFixFtpAuthError;
+import com.chrissyx.jfix.modules.ftp.CapabilityCache;
+import com.chrissyx.jfix.modules.ftp.ConcurrencyLimiter;
+import com.chrissyx.jfix.modules.ftp.ErrorReport;
+import com.chrissyx.jfix.modules.ftp.FailureQueue;
+import com.chrissyx.jfix.modules.ftp.FixCheckpoint;
+import com.chrissyx.jfix.modules.ftp.FixJob;
+import com.chrissyx.jfix.modules.ftp.FixJournal;
+import com.chrissyx.jfix.modules.ftp.FixMetrics;
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+import com.chrissyx.jfix.modules.ftp.FixScheduler;
+import com.chrissyx.jfix.modules.ftp.FtpEvent;
+import com.chrissyx.jfix.modules.ftp.FtpEventBus;
+import com.chrissyx.jfix.modules.ftp.FtpSession;
+import com.chrissyx.jfix.modules.ftp.FtpSessionPool;
+import com.chrissyx.jfix.modules.ftp.PipelinedExecutor;
+import com.chrissyx.jfix.modules.ftp.RemoteListing;
+import com.chrissyx.jfix.modules.ftp.RemoteListingCache;
+import com.chrissyx.jfix.modules.ftp.RetryPolicy;
+import com.chrissyx.jfix.modules.jfr.FlightRecorder;
 import com.chrissyx.jfix.modules.util.CryptUtils;
+import com.chrissyx.jfix.modules.util.LocalFile;
+import com.chrissyx.jfix.modules.util.LocalListing;
+import com.chrissyx.jfix.modules.util.LocalTreeScanner;
+import com.chrissyx.jfix.modules.util.ServiceRegistry;
+import com.chrissyx.jfix.plugins.Auto;
 import com.chrissyx.jfix.plugins.FiletimeFixer;
+import com.chrissyx.jfix.plugins.Mdtm;
+import com.chrissyx.jfix.plugins.Mfmt;
+import com.chrissyx.jfix.plugins.SiteUtime;
 import com.enterprisedt.net.ftp.EventListener;
 import com.enterprisedt.net.ftp.FTPException;
-import com.enterprisedt.net.ftp.FTPFile;
+import com.enterprisedt.net.ftp.FTPReply;
 import com.enterprisedt.net.ftp.FileTransferClient;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +72,21 @@ public final class FtpController implements Observer
      */
     private static FtpController ftpController = new FtpController();
 
+    /**
+     * Maximum number of files per job, so big directories are spread over several sessions.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Number of files only fixed after changing directories, before paths in commands are considered rejected.
+     */
+    private static final int PATH_PROBES = 2;
+
+    /**
+     * Reply codes of a command with syntax or parameter errors.
+     */
+    private static final List<String> SYNTAX_ERRORS = Arrays.asList("500", "501", "502", "504");
+
     /**
      * The FTP client being worked with.
      */
@@ -41,270 +95,1403 @@ public final class FtpController implements Observer
     /**
      * Instance of filetime fixing plug-in to use.
      */
-    private FiletimeFixer filetimeFixer;
+    private FiletimeFixer filetimeFixer;
+
+    /**
+     * Reused buffer of each worker thread to encode commands in.
+     */
+    private final ThreadLocal<StringBuilder> commandBuffer = new ThreadLocal<StringBuilder>()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(256);
+        }
+    };
+
+    /**
+     * Bus to pass events of all FTP sessions to their subscribers.
+     */
+    private final FtpEventBus eventBus;
+
+    /**
+     * Metrics of all fix runs.
+     */
+    private final FixMetrics fixMetrics = new FixMetrics();
+
+    /**
+     * Listener for commands and replies of all FTP sessions, publishing them without further work on the network thread.
+     */
+    private final EventListener eventListener = new EventListener()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void commandSent(final String connId, final String cmd)
+        {
+            FtpController.this.fixMetrics.commandSent(connId, cmd);
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.COMMAND_SENT, connId, cmd, 0));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void replyReceived(final String connId, final String reply)
+        {
+            FtpController.this.fixMetrics.replyReceived(connId, reply);
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.REPLY_RECEIVED, connId, reply, 0));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void bytesTransferred(final String connId, final String remoteFilename, final long bytes)
+        {
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.BYTES_TRANSFERRED, connId, remoteFilename, bytes));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void downloadStarted(final String connId, final String remoteFilename)
+        {
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.TRANSFER, connId, "Started download for file '" + remoteFilename + "'...", 0));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void downloadCompleted(final String connId, final String remoteFilename)
+        {
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.TRANSFER, connId, "Finished download for file '" + remoteFilename + "'", 0));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void uploadStarted(final String connId, final String remoteFilename)
+        {
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.TRANSFER, connId, "Started upload for file '" + remoteFilename + "'...", 0));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void uploadCompleted(final String connId, final String remoteFilename)
+        {
+            FtpController.this.eventBus.publish(new FtpEvent(FtpEvent.Type.TRANSFER, connId, "Finished upload for file '" + remoteFilename + "'", 0));
+        }
+    };
+
+    /**
+     * Fix filetimes recursively.
+     */
+    private boolean recursive;
+
+    /**
+     * Patterns of filenames to fix, empty for all.
+     */
+    private List<PathMatcher> includes = new ArrayList<PathMatcher>();
+
+    /**
+     * Patterns of filenames to leave untouched.
+     */
+    private List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+
+    /**
+     * Send commands with absolute remote paths instead of changing directories.
+     */
+    private boolean absolutePaths;
+
+    /**
+     * State if the connected server accepts paths in commands or {@code null} if not known yet.
+     */
+    private volatile Boolean pathsAccepted;
+
+    /**
+     * Number of probed files only fixed after changing directories without a syntax error for the absolute path.
+     */
+    private final AtomicInteger relativeProbes = new AtomicInteger();
+
+    /**
+     * Only fix files with different remote filetimes.
+     */
+    private boolean skipUnchanged;
+
+    /**
+     * Maximum difference in milliseconds for filetimes to be considered unchanged. Listings show filetimes to the minute
+     * at best, so it has to be at least one minute to skip anything; files older than half a year are listed to the day
+     * and are only skipped with a tolerance of a day, at the cost of missing changes within that time.
+     */
+    private long skipTolerance;
+
+    /**
+     * Maximum number of outstanding commands per session.
+     */
+    private int pipelineWindow;
+
+    /**
+     * Adapt the commands in flight to the server, up to {@link #adaptiveMaxInFlight}.
+     */
+    private boolean adaptiveConcurrency;
+
+    /**
+     * Maximum commands in flight over all sessions in adaptive mode, at least the number of sessions times the pipeline
+     * window.
+     */
+    private int adaptiveMaxInFlight;
+
+    /**
+     * Maximum number of outstanding commands per session of the current run.
+     */
+    private int sessionWindow;
+
+    /**
+     * Maximum commands per second to the host or 0 for no ceiling.
+     */
+    private double maxCommandRate;
+
+    /**
+     * Skip files unchanged since their last fix according to the journal.
+     */
+    private boolean useJournal;
+
+    /**
+     * Journal of fixed files for the current user, host and port, opened on first run.
+     */
+    private FixJournal fixJournal;
+
+    /**
+     * Checkpoint of the current run.
+     */
+    private FixCheckpoint fixCheckpoint;
+
+    /**
+     * Capabilities detected per host.
+     */
+    private CapabilityCache capabilityCache;
+
+    /**
+     * List directories with {@code STAT -l} over the control connection if supported.
+     */
+    private boolean statListing;
+
+    /**
+     * State if the server lists directories with {@code STAT -l} or {@code null} if not detected yet.
+     */
+    private volatile Boolean statSupported;
+
+    /**
+     * System type of the server to parse {@code STAT} listings or {@code null} if not asked yet.
+     */
+    private volatile String systemType;
+
+    /**
+     * Progress of the current run.
+     */
+    private FixProgress fixProgress;
+
+    /**
+     * Limiter of commands in flight of the current run.
+     */
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Problems of the current or last run, shown once after it.
+     */
+    private ErrorReport errorReport;
+
+    /**
+     * Reconnects and resends after losing a connection during fix runs.
+     */
+    private RetryPolicy retryPolicy;
+
+    /**
+     * Files of the current run to retry in its final pass.
+     */
+    private FailureQueue failureQueue;
+
+    /**
+     * State if the current run is in its final retry pass.
+     */
+    private volatile boolean finalPass;
+
+    /**
+     * Number of parallel FTP sessions for fix runs.
+     */
+    private int poolSize;
+
+    /**
+     * Pool of additional sessions for fix runs, opened on first run.
+     */
+    private FtpSessionPool sessionPool;
+
+    /**
+     * Cache of remote listings for browsing.
+     */
+    private RemoteListingCache listingCache;
+
+    /**
+     * Remote directory browsed to from cache, but not changed to yet, or {@code null} if none.
+     */
+    private String pendingDir;
+
+    /**
+     * Initializes the FTP client module.
+     */
+    private FtpController()
+    {
+        ConfigController.getInstance().addObserver(this);
+        LoggerFactory.getLogger(FtpController.class).debug("Setting up FTP client...");
+        this.eventBus = new FtpEventBus();
+        this.eventBus.subscribe(new FtpEventBus.Subscriber()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void eventReceived(final FtpEvent event)
+            {
+                switch(event.getType())
+                {
+                    case COMMAND_SENT:
+                        LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Command '{}' sent", event.getConnId(), event.getMessage());
+                        break;
+                    case REPLY_RECEIVED:
+                        LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Reply '{}' received", event.getConnId(), event.getMessage());
+                        break;
+                    case BYTES_TRANSFERRED:
+                        LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Transferred {} bytes for file '{}'", new Object[]
+                                {
+                                    event.getConnId(), event.getCount(), event.getMessage()
+                                });
+                        break;
+                    case EVENTS_DROPPED:
+                        LoggerFactory.getLogger(EventListener.class).debug("{} events dropped", event.getCount());
+                        break;
+                    default:
+                        LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> {}", event.getConnId(), event.getMessage());
+                }
+            }
+        });
+        //MXBean introspection loads dozens of java.desktop classes, so the command line only registers them on request
+        if(!JFix.isHeadless() || Boolean.getBoolean("jfix.jmx") || System.getProperty("com.sun.management.jmxremote") != null)
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this.fixMetrics, new ObjectName("com.chrissyx.jfix:type=FixMetrics"));
+            }
+            catch(final JMException e)
+            {
+                new JFixError("Can't register metrics for JMX!", e).warn(FtpController.class, false);
+            }
+        this.ftpClient = new FileTransferClient();
+        this.update(null, null);
+        this.ftpClient.setEventListener(this.eventListener);
+        //http://www.enterprisedt.com/products/edtftpj/examples/howto/monitor_transfers_and_commands/MonitorTransfersCommands.java.html
+        // the transfer notify interval must be greater than buffer
+        this.ftpClient.getAdvancedSettings().setTransferBufferSize(500);
+        this.ftpClient.getAdvancedSettings().setTransferNotifyInterval(1000);
+    }
+
+    /**
+     * Returns the singleton instance of this class.
+     *
+     * @return Instance of this class
+     */
+    public static FtpController getInstance()
+    {
+        return FtpController.ftpController;
+    }
+
+    /**
+     * Returns the problems of the current or last fix run.
+     *
+     * @return Error report
+     */
+    public ErrorReport getErrorReport()
+    {
+        return this.errorReport;
+    }
+
+    /**
+     * Returns the metrics of all fix runs, also registered as MXBean {@code com.chrissyx.jfix:type=FixMetrics} with GUI,
+     * system property {@code jfix.jmx} or remote JMX enabled.
+     *
+     * @return Run metrics
+     */
+    public FixMetrics getFixMetrics()
+    {
+        return this.fixMetrics;
+    }
+
+    /**
+     * Returns the bus with the events of all FTP sessions.
+     *
+     * @return Event bus to subscribe to
+     */
+    public FtpEventBus getEventBus()
+    {
+        return this.eventBus;
+    }
+
+    /**
+     * Changes current remote working directory.
+     *
+     * @param filename Directory to change to
+     * @throws JFixError If changing remote folder failed
+     */
+    public void changeDir(final String filename) throws JFixError
+    {
+        try
+        {
+            this.ftpClient.changeDirectory(filename);
+            this.pendingDir = null;
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't change remote directory to '" + filename + "'!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+    }
+
+    /**
+     * Connects to FTP host.
+     *
+     * @throws JFixError If connecting failed
+     */
+    public void connect() throws JFixError
+    {
+        LoggerFactory.getLogger(FtpController.class).debug("Connecting to server...");
+        this.pathsAccepted = null;
+        this.relativeProbes.set(0);
+        this.pendingDir = null;
+        this.listingCache.clear();
+        try
+        {
+            this.ftpClient.connect();
+        }
+        catch(final FTPException e)
+        {
+            if(e.getReplyCode() == 530)
+                throw new JFixFtpAuthError("Login rejected from server!", e);
+            else
+                throw new JFixError("Can't connect to FTP host!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+        LoggerFactory.getLogger(FtpController.class).info("Connected to {}!", this.ftpClient.getRemoteHost());
+        this.systemType = null;
+        this.statSupported = null;
+        if(this.statListing)
+        {
+            final String statCapability = this.capabilityCache.get(this.ftpClient.getRemoteHost(), this.ftpClient.getRemotePort(), "statListing");
+            if(statCapability != null)
+                this.statSupported = Boolean.valueOf(statCapability);
+        }
+        //Plug-in instances are shared, so forget the selection for the previous host
+        if(this.filetimeFixer instanceof Auto)
+            ((Auto) this.filetimeFixer).select(null);
+        try
+        {
+            this.selectPlugIn();
+        }
+        catch(final JFixError e)
+        {
+            e.warn(FtpController.class, false);
+        }
+    }
+
+    /**
+     * Disconnects from FTP host.
+     *
+     * @throws JFixError If disconnecting failed
+     */
+    public void disconnect() throws JFixError
+    {
+        LoggerFactory.getLogger(FtpController.class).debug("Disconnecting from server...");
+        this.closeSessionPool();
+        this.listingCache.clear();
+        try
+        {
+            this.ftpClient.disconnect();
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't disconnect from FTP host!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+        LoggerFactory.getLogger(FtpController.class).info("Disconnected from {}!", this.ftpClient.getRemoteHost());
+    }
+
+    /**
+     * Selects the cheapest filetime command supported by the server, if the auto plug-in is used and nothing is selected
+     * yet. The plug-in is taken from the capability cache or detected by asking the server with {@code FEAT} and
+     * {@code SITE HELP}: {@code MFMT} is preferred, followed by {@code SITE UTIME}. The two-argument {@code MDTM} comes
+     * last, as servers advertise {@code MDTM} for reading filetimes only.
+     *
+     * @throws JFixError If server couldn't be asked
+     */
+    private void selectPlugIn() throws JFixError
+    {
+        if(!(this.filetimeFixer instanceof Auto) || ((Auto) this.filetimeFixer).getSelected() != null)
+            return;
+        final String host = this.ftpClient.getRemoteHost();
+        final int port = this.ftpClient.getRemotePort();
+        String plugIn = this.capabilityCache.get(host, port, "plugIn");
+        if(plugIn == null)
+        {
+            LoggerFactory.getLogger(FtpController.class).debug("Detecting filetime commands of {}...", host);
+            final String features = this.queryServer("FEAT");
+            if(Pattern.compile("\\bMFMT\\b").matcher(features).find())
+                plugIn = Mfmt.class.getSimpleName();
+            else if(Pattern.compile("\\bUTIME\\b").matcher(this.queryServer("SITE HELP")).find())
+                plugIn = SiteUtime.class.getSimpleName();
+            else if(Pattern.compile("\\bMDTM\\b").matcher(features).find())
+                plugIn = Mdtm.class.getSimpleName();
+            else
+                plugIn = SiteUtime.class.getSimpleName();
+            this.capabilityCache.put(host, port, "plugIn", plugIn);
+        }
+        final FiletimeFixer selected = ServiceRegistry.getPlugIn(plugIn);
+        if(selected == null)
+            throw new JFixError("Can't find plugin '" + plugIn + "'!");
+        ((Auto) this.filetimeFixer).select(selected);
+        LoggerFactory.getLogger(FtpController.class).info("Using plugin '{}' for {}", plugIn, host);
+    }
+
+    /**
+     * Executes an informational command and returns all lines of its reply.
+     *
+     * @param command FTP command to execute
+     * @return Upper case reply or empty string if the command was rejected
+     * @throws JFixError If command couldn't be sent
+     */
+    private String queryServer(final String command) throws JFixError
+    {
+        try
+        {
+            this.ftpClient.executeCommand(command);
+        }
+        catch(final FTPException e)
+        {
+            return "";
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+        final FTPReply reply = FtpSession.getLastReply(this.ftpClient);
+        if(!FtpSession.isPositive(reply))
+            return "";
+        final StringBuilder replyLines = new StringBuilder(reply.getReplyCode()).append(' ').append(reply.getReplyText());
+        if(reply.getReplyData() != null)
+            for(final String curLine : reply.getReplyData())
+                replyLines.append('\n').append(curLine);
+        return replyLines.toString().toUpperCase();
+    }
+
+    /**
+     * Changes to the remote directory browsed to from cache, so the main session is where the user is.
+     *
+     * @throws JFixError If changing remote folder failed
+     */
+    private void syncPendingDir() throws JFixError
+    {
+        if(this.pendingDir != null)
+            this.changeDir(this.pendingDir);
+    }
+
+    /**
+     * Closes all additional sessions of the pool.
+     */
+    private void closeSessionPool()
+    {
+        if(this.sessionPool != null)
+        {
+            this.sessionPool.close();
+            this.sessionPool = null;
+        }
+    }
+
+    /**
+     * Fixes filetimes of files in stated local dir with the ones in current remote working directory.
+     *
+     * @param localDir Local directory with files and folders to get filetimes from
+     * @throws JFixError If fixing was aborted
+     * @see #fixFiletimes(java.io.File, boolean)
+     */
+    public void fixFiletimes(final File localDir) throws JFixError
+    {
+        this.fixFiletimes(localDir, false);
+    }
+
+    /**
+     * Fixes filetimes of files in stated local dir with the ones in current remote working directory.
+     * The work is spread over the configured number of parallel sessions and its progress is checkpointed.
+     *
+     * @param localDir Local directory with files and folders to get filetimes from
+     * @param resume Skip directories finished by an interrupted run with the same directories
+     * @throws JFixError If fixing was aborted
+     */
+    public void fixFiletimes(final File localDir, final boolean resume) throws JFixError
+    {
+        this.fixFiletimes(localDir, null, resume, new FixProgress());
+    }
+
+    /**
+     * Fixes filetimes of files in stated local dir with the ones in current remote working directory.
+     *
+     * @param localDir Local directory with files and folders to get filetimes from
+     * @param resume Skip directories finished by an interrupted run with the same directories
+     * @param fixProgress Progress to update, the run stops between two commands once it is cancelled
+     * @throws JFixError If fixing was aborted
+     * @see #fixFiletimes(java.io.File, boolean)
+     */
+    public void fixFiletimes(final File localDir, final boolean resume, final FixProgress fixProgress) throws JFixError
+    {
+        this.fixFiletimes(localDir, null, resume, fixProgress);
+    }
+
+    /**
+     * Fixes filetimes of files in stated local listing with the ones in current remote working directory. The entries of
+     * the listing are not read again.
+     *
+     * @param localListing Listing of local directory with files and folders to get filetimes from
+     * @param resume Skip directories finished by an interrupted run with the same directories
+     * @param fixProgress Progress to update, the run stops between two commands once it is cancelled
+     * @throws JFixError If fixing was aborted
+     * @see #fixFiletimes(java.io.File, boolean)
+     */
+    public void fixFiletimes(final LocalListing localListing, final boolean resume, final FixProgress fixProgress) throws JFixError
+    {
+        this.fixFiletimes(localListing.getDirectory(), localListing, resume, fixProgress);
+    }
+
+    /**
+     * Fixes filetimes of files in stated local dir with the ones in current remote working directory.
+     * The work is spread over the configured number of parallel sessions and its progress is checkpointed.
+     *
+     * @param localDir Local directory with files and folders to get filetimes from
+     * @param localListing Already read listing of local directory or {@code null} to scan it
+     * @param resume Skip directories finished by an interrupted run with the same directories
+     * @param fixProgress Progress to update, the run stops between two commands once it is cancelled
+     * @throws JFixError If fixing was aborted
+     */
+    private void fixFiletimes(final File localDir, final LocalListing localListing, final boolean resume, final FixProgress fixProgress) throws JFixError
+    {
+        LoggerFactory.getLogger(FtpController.class).info("Fixing filetimes for '{}'...", localDir.getName());
+        this.syncPendingDir();
+        this.selectPlugIn();
+        if(this.sessionPool == null)
+            this.sessionPool = new FtpSessionPool(this.ftpClient, this.eventListener);
+        final List<FtpSession> sessions = this.sessionPool.getSessions(this.poolSize);
+        final String remoteStartDir = sessions.get(0).getRemoteDir();
+        if(this.useJournal)
+        {
+            if(this.fixJournal == null)
+                //Replace characters of IPv6 addresses and user names not allowed in filenames on every platform
+                this.fixJournal = new FixJournal(ConfigController.getInstance().getDataFile("jfix-journal-"
+                        + this.getServerId().replaceAll("[^\\w.@-]", "_") + ".dat"));
+            this.fixJournal.open();
+        }
+        this.fixCheckpoint.start(this.getRunId(localDir, remoteStartDir), resume);
+        this.errorReport.start();
+        this.fixProgress = fixProgress;
+        this.failureQueue = new FailureQueue();
+        //Adaptive runs start with one command per session and grow from there, with a deeper pipeline if needed
+        final int maxInFlight = this.adaptiveConcurrency ? Math.max(sessions.size() * this.pipelineWindow, this.adaptiveMaxInFlight) : sessions.size() * this.pipelineWindow;
+        this.sessionWindow = (maxInFlight + sessions.size() - 1) / sessions.size();
+        this.concurrencyLimiter = new ConcurrencyLimiter(this.adaptiveConcurrency ? sessions.size() : maxInFlight, maxInFlight, this.adaptiveConcurrency, this.maxCommandRate);
+        final Object flightEvent = FlightRecorder.beginRun(localDir.getAbsolutePath(), remoteStartDir);
+        final FixScheduler fixScheduler = new FixScheduler(sessions);
+        fixScheduler.submit(0, new FixJob(localDir, remoteStartDir, null, localListing));
+        final LocalTreeScanner treeScanner = new LocalTreeScanner(Runtime.getRuntime().availableProcessors(), 1024);
+        final Thread fileCounter = this.countFiles(treeScanner, localDir);
+        boolean complete = false;
+        try
+        {
+            fixScheduler.run(new FixScheduler.JobHandler()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void process(final int workerId, final FtpSession session, final FixJob job) throws JFixError
+                {
+                    //Remaining jobs of a cancelled run are dropped without checkpointing them
+                    if(fixProgress.isCancelled())
+                        return;
+                    if(job.isDirectory())
+                        FtpController.this.expandDir(workerId, session, fixScheduler, job);
+                    else
+                        FtpController.this.fixFiles(session, job);
+                    //Jobs with files to retry are finished by the final pass
+                    if(!fixProgress.isCancelled() && !FtpController.this.failureQueue.contains(job))
+                        FtpController.this.finishJob(job);
+                }
+            });
+            if(!fixProgress.isCancelled() && this.failureQueue.size() > 0)
+                this.retryFailures(sessions.get(0));
+            complete = !fixProgress.isCancelled();
+        }
+        finally
+        {
+            fileCounter.interrupt();
+            treeScanner.shutdown();
+            this.fixCheckpoint.close(complete);
+            this.errorReport.close();
+            if(this.fixJournal != null)
+                this.fixJournal.close();
+            FlightRecorder.endRun(flightEvent, fixProgress.getFilesDone(), fixProgress.getCommands(), fixProgress.getFailed(), complete);
+            //Main session has to be back where the user browsed to
+            sessions.get(0).changeDir(remoteStartDir);
+        }
+        if(complete)
+            LoggerFactory.getLogger(FtpController.class).info("Filetimes fixed!");
+        else
+            LoggerFactory.getLogger(FtpController.class).info("Fixing filetimes cancelled, run can be resumed");
+    }
+
+    /**
+     * Retries the files queued during the current run once on the stated session. Files still failing are counted as
+     * failed.
+     *
+     * @param session Session to use
+     * @throws JFixError If the connection couldn't be recovered
+     */
+    private void retryFailures(final FtpSession session) throws JFixError
+    {
+        LoggerFactory.getLogger(FtpController.class).info("Retrying {} failed file(s)...", this.failureQueue.size());
+        try
+        {
+            //Give a throttling or restarting server some time first
+            this.retryPolicy.await(0);
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new JFixError("Fix run interrupted!", e);
+        }
+        this.finalPass = true;
+        try
+        {
+            for(final Map.Entry<FixJob, List<LocalFile>> curFailures : this.failureQueue.drain().entrySet())
+                if(!this.fixProgress.isCancelled())
+                {
+                    this.fixFiles(session, curFailures.getKey(), curFailures.getValue());
+                    if(!this.fixProgress.isCancelled())
+                        this.finishJob(curFailures.getKey());
+                }
+        }
+        finally
+        {
+            this.finalPass = false;
+        }
+    }
+
+    /**
+     * Starts a thread counting the files to process for the progress of the current run.
+     *
+     * @param treeScanner Scanner to use
+     * @param localDir Local start directory
+     * @return Started thread
+     */
+    private Thread countFiles(final LocalTreeScanner treeScanner, final File localDir)
+    {
+        final BlockingQueue<LocalFile> scanQueue = treeScanner.scan(localDir, this.recursive);
+        final FixProgress curFixProgress = this.fixProgress;
+        final boolean curRecursive = this.recursive;
+        final Thread fileCounter = new Thread("JFix-Counter")
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                long files = 0;
+                try
+                {
+                    LocalFile curEntry;
+                    while((curEntry = scanQueue.take()) != LocalTreeScanner.END_OF_SCAN)
+                        if(!curRecursive || !curEntry.isDirectory())
+                            files++;
+                    LoggerFactory.getLogger(FtpController.class).debug("Counted {} files to process", files);
+                    curFixProgress.setFilesTotal(files);
+                }
+                catch(final InterruptedException e)
+                {
+                    LoggerFactory.getLogger(FtpController.class).debug("Counting files stopped after {}", files);
+                }
+            }
+        };
+        fileCounter.setDaemon(true);
+        fileCounter.start();
+        return fileCounter;
+    }
+
+    /**
+     * Returns if an interrupted run for stated local dir and current remote working directory can be resumed.
+     *
+     * @param localDir Local directory with files and folders to get filetimes from
+     * @return Resumable state
+     * @throws JFixError If remote working directory couldn't be determined
+     */
+    public boolean isResumable(final File localDir) throws JFixError
+    {
+        this.syncPendingDir();
+        return this.fixCheckpoint.isResumable(this.getRunId(localDir, new FtpSession(this.ftpClient).getRemoteDir()));
+    }
+
+    /**
+     * Returns the identifier of a run for checkpoints.
+     *
+     * @param localDir Local start directory
+     * @param remoteStartDir Absolute remote start directory
+     * @return Run identifier
+     */
+    private String getRunId(final File localDir, final String remoteStartDir)
+    {
+        return this.getServerId() + remoteStartDir + " " + localDir.getAbsolutePath();
+    }
 
     /**
-     * Comparator to list remote directories before files.
+     * Returns the identifier of the connected account, as different users or ports of a host may serve different files.
+     *
+     * @return User, host and port in the form {@code user@host:port}
      */
-    private Comparator<FTPFile> ftpFileComparator = new Comparator<FTPFile>()
+    private String getServerId()
     {
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public int compare(final FTPFile file1, final FTPFile file2)
-        {
-            return (file1.isDir() && file2.isDir()) || (!file1.isDir() && !file2.isDir()) ? 0
-                    : (file1.isDir() && !file2.isDir() ? -1 : 1);
-        }
-    };
+        return this.ftpClient.getUserName() + "@" + this.ftpClient.getRemoteHost() + ":" + this.ftpClient.getRemotePort();
+    }
 
     /**
-     * Fix filetimes recursively.
+     * Marks a processed job as finished and checkpoints directories with all files or their whole subtree done.
+     *
+     * @param job Finished job
      */
-    private boolean recursive;
+    private void finishJob(final FixJob job)
+    {
+        final FixJob dirJob = job.isDirectory() ? job : job.getParent();
+        if(dirJob.finishBatch())
+            this.fixCheckpoint.setFilesDone(dirJob.getLocalDir());
+        for(FixJob curDirJob = dirJob; curDirJob != null && curDirJob.finishChild(); curDirJob = curDirJob.getParent())
+            this.fixCheckpoint.setSubtreeDone(curDirJob.getLocalDir());
+    }
 
     /**
-     * Initializes the FTP client module.
+     * Splits a directory job into jobs for its subdirectories and batches of its files. The local directory is streamed
+     * with each entry's attributes read once, so batches are submitted while scanning; an already read listing is used
+     * as is. Directories done by a resumed run
+     * are skipped. Files unchanged since their last journaled fix are dropped. In skip-unchanged mode, the remote
+     * directory is listed once (if needed at all) and only files existing remotely with a different filetime are kept.
+     *
+     * @param workerId ID of current worker
+     * @param session Session of current worker
+     * @param fixScheduler Scheduler to submit new jobs to
+     * @param job Directory job to expand
      */
-    private FtpController()
+    private void expandDir(final int workerId, final FtpSession session, final FixScheduler fixScheduler, final FixJob job)
     {
-        ConfigController.getInstance().addObserver(this);
-        LoggerFactory.getLogger(FtpController.class).debug("Setting up FTP client...");
-        this.ftpClient = new FileTransferClient();
-        this.update(null, null);
-        this.ftpClient.setEventListener(new EventListener()
+        if(this.fixCheckpoint.isSubtreeDone(job.getLocalDir()))
+        {
+            LoggerFactory.getLogger(FtpController.class).debug("Skipping '{}', already done", job.getLocalDir());
+            return;
+        }
+        LoggerFactory.getLogger(FtpController.class).debug("Expanding '{}'...", job.getLocalDir());
+        this.fixMetrics.addDirectory();
+        final Object flightEvent = FlightRecorder.beginDirectory();
+        final boolean filesDone = this.fixCheckpoint.isFilesDone(job.getLocalDir());
+        final ArrayList<LocalFile> files = new ArrayList<LocalFile>();
+        final int[] counts = new int[3]; //Scanned entries, files to fix and files in total
+        final LocalTreeScanner.EntryHandler entryHandler = new LocalTreeScanner.EntryHandler()
         {
             /**
-             * {@inheritDoc}
+             * Remote entries or {@code null} if not listed or listing failed.
              */
-            @Override
-            public void commandSent(final String connId, final String cmd)
-            {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Command '{}' sent", connId, cmd);
-                GuiController.getInstance().appendLogEntry(cmd);
-            }
+            private RemoteListing remoteFiles;
 
             /**
-             * {@inheritDoc}
+             * State if the remote directory was listed or doesn't need to be.
              */
-            @Override
-            public void replyReceived(final String connId, final String reply)
-            {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Reply '{}' received", connId, reply);
-                GuiController.getInstance().appendLogEntry(reply);
-            }
+            private boolean remoteListed = !FtpController.this.skipUnchanged;
 
             /**
              * {@inheritDoc}
              */
             @Override
-            public void bytesTransferred(final String connId, final String remoteFilename, final long bytes)
+            public void handleEntry(final LocalFile entry)
             {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Transferred {} bytes for file '{}'", new Object[]
-                        {
-                            connId, bytes, remoteFilename
-                        });
+                if(FtpController.this.fixProgress.isCancelled())
+                    return;
+                counts[0]++;
+                final boolean isSubDir = FtpController.this.recursive && entry.isDirectory();
+                if(!isSubDir)
+                    counts[2]++;
+                if(!isSubDir && filesDone)
+                    return;
+                if(!isSubDir && !FtpController.this.isIncluded(entry))
+                    return;
+                if(!isSubDir && FtpController.this.useJournal && FtpController.this.fixJournal.isUnchanged(job.getRemoteDir() + entry.getName(), entry))
+                    return;
+                if(!this.remoteListed)
+                {
+                    this.remoteFiles = FtpController.this.getRemoteListing(session, job.getRemoteDir());
+                    this.remoteListed = true;
+                }
+                if(this.remoteFiles != null)
+                {
+                    final int remoteIndex = this.remoteFiles.indexOf(entry.getName());
+                    if(remoteIndex == -1)
+                    {
+                        LoggerFactory.getLogger(FtpController.class).debug("Skipping '{}', not found remotely", entry);
+                        return;
+                    }
+                    else if(!isSubDir && this.remoteFiles.getLastModified(remoteIndex) != RemoteListing.UNKNOWN_TIME
+                            && Math.abs(this.remoteFiles.getLastModified(remoteIndex) - entry.getLastModified()) <= FtpController.this.skipTolerance)
+                        return;
+                }
+                if(isSubDir)
+                    fixScheduler.submit(workerId, new FixJob(entry.getFile(), job.getRemoteDir() + entry.getName() + "/", job));
+                else
+                {
+                    counts[1]++;
+                    files.add(entry);
+                    if(files.size() == FtpController.BATCH_SIZE)
+                    {
+                        fixScheduler.submit(workerId, new FixJob(job, files.toArray(new LocalFile[0])));
+                        files.clear();
+                    }
+                }
             }
-
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void downloadStarted(final String connId, final String remoteFilename)
+        };
+        if(job.getListing() != null)
+            for(int i = 0; i < job.getListing().size(); i++)
+                entryHandler.handleEntry(job.getListing().getLocalFile(i));
+        else
+            try
             {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Started download for file '{}'...", connId, remoteFilename);
+                LocalTreeScanner.scanDirectory(job.getLocalDir(), entryHandler);
             }
-
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void downloadCompleted(final String connId, final String remoteFilename)
+            catch(final JFixError e)
             {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Finished download for file '{}'", connId, remoteFilename);
+                e.warn(FtpController.class, false);
+                this.errorReport.add(job.getLocalDir().getPath(), e);
             }
+        if(!files.isEmpty())
+            fixScheduler.submit(workerId, new FixJob(job, files.toArray(new LocalFile[0])));
+        this.fixProgress.addSkipped(counts[2] - counts[1]);
+        this.fixMetrics.addSkipped(counts[2] - counts[1]);
+        FlightRecorder.endDirectory(flightEvent, job.getRemoteDir(), counts[0], counts[1]);
+        if(counts[1] != counts[0])
+            LoggerFactory.getLogger(FtpController.class).debug("{} of {} entries in '{}' need fixing", new Object[]
+                    {
+                        counts[1], counts[0], job.getRemoteDir()
+                    });
+    }
 
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void uploadStarted(final String connId, final String remoteFilename)
+    /**
+     * Returns if the stated file matches the include patterns, if any, and none of the exclude patterns.
+     *
+     * @param file File to check
+     * @return Filename passes the filters
+     */
+    private boolean isIncluded(final LocalFile file)
+    {
+        final Path filename = file.getFile().toPath().getFileName();
+        boolean included = this.includes.isEmpty();
+        for(int i = 0; !included && i < this.includes.size(); i++)
+            included = this.includes.get(i).matches(filename);
+        for(int i = 0; included && i < this.excludes.size(); i++)
+            included = !this.excludes.get(i).matches(filename);
+        return included;
+    }
+
+    /**
+     * Parses comma separated glob patterns for filenames.
+     *
+     * @param patterns Glob patterns, e.g. {@code *.html,*.php}
+     * @return Matchers for the patterns
+     */
+    private List<PathMatcher> getMatchers(final String patterns)
+    {
+        final List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+        for(final String curPattern : patterns.split(","))
+            if(!curPattern.trim().isEmpty())
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + curPattern.trim()));
+        return matchers;
+    }
+
+    /**
+     * Lists the stated remote directory to look up its entries by name.
+     *
+     * @param session Session to use
+     * @param remoteDir Absolute remote directory to list
+     * @return Remote entries or {@code null} if listing failed
+     */
+    private RemoteListing getRemoteListing(final FtpSession session, final String remoteDir)
+    {
+        try
+        {
+            return this.readListing(session.getClient(), remoteDir, false);
+        }
+        catch(final JFixError e)
+        {
+            e.warn(FtpController.class, false);
+            this.errorReport.add(remoteDir, e);
+        }
+        return null;
+    }
+
+    /**
+     * Sends the filetime fixing commands for a batch of files.
+     *
+     * @param session Session to use
+     * @param job Job with files to fix
+     * @throws JFixError If a command couldn't be executed
+     * @see #fixFiles(com.chrissyx.jfix.modules.ftp.FtpSession, com.chrissyx.jfix.modules.ftp.FixJob, java.util.List)
+     */
+    private void fixFiles(final FtpSession session, final FixJob job) throws JFixError
+    {
+        this.fixFiles(session, job, Arrays.asList(job.getFiles()));
+    }
+
+    /**
+     * Sends the filetime fixing commands for files of a job, pipelined if configured. With absolute paths no remote
+     * directory has to be changed, unless the server rejects paths in commands. If the connection gets lost, the session
+     * is reconnected and the files without reply are sent again, up to the configured number of retries. Files left
+     * after that are queued for the final pass or, during it, counted as failed.
+     *
+     * @param session Session to use
+     * @param job Job with files to fix
+     * @param files Files of job to fix
+     * @throws JFixError If a command couldn't be executed or the connection couldn't be recovered
+     */
+    private void fixFiles(final FtpSession session, final FixJob job, final List<LocalFile> files) throws JFixError
+    {
+        List<LocalFile> remaining = files;
+        for(int retry = 0; !remaining.isEmpty(); retry++)
+        {
+            final PipelinedExecutor<LocalFile> pipelinedExecutor = new PipelinedExecutor<LocalFile>(session, this.sessionWindow, this.concurrencyLimiter, new PipelinedExecutor.ReplyHandler<LocalFile>()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void replyReceived(final LocalFile item, final FTPReply reply, final long rtt)
+                {
+                    FtpController.this.onReply(job, item, reply, rtt);
+                }
+            });
+            int i = 0;
+            try
             {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Started upload for file '{}'...", connId, remoteFilename);
+                //Only count the probed file once answered, otherwise it is sent again after a reconnect
+                //Probe once per batch, an inconclusive result fixes the rest of it after changing directories
+                if(i < remaining.size() && this.absolutePaths && this.pathsAccepted == null)
+                {
+                    this.probePaths(session, job, remaining.get(i));
+                    i++;
+                }
+                final boolean withPaths = this.absolutePaths && this.pathsAccepted == Boolean.TRUE;
+                if(i < remaining.size() && !withPaths && !this.changeDir(session, job, remaining.size() - i))
+                    return;
+                final String path = withPaths ? job.getRemoteDir() : "";
+                for(; i < remaining.size() && !this.fixProgress.isCancelled(); i++)
+                    pipelinedExecutor.submit(this.getCommand(path, remaining.get(i)), remaining.get(i));
+                pipelinedExecutor.flush();
+                remaining = Collections.emptyList();
             }
-
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void uploadCompleted(final String connId, final String remoteFilename)
+            catch(final JFixError e)
             {
-                LoggerFactory.getLogger(EventListener.class).trace("<Connection ID: {}> Finished upload for file '{}'", connId, remoteFilename);
+                if(!FtpSession.isConnectionLost(e))
+                    throw e;
+                //Commands without reply may have been executed or not, so they are sent again
+                final List<LocalFile> unanswered = pipelinedExecutor.drainAbandoned();
+                for(; i < remaining.size(); i++)
+                    if(!unanswered.contains(remaining.get(i)))
+                        unanswered.add(remaining.get(i));
+                remaining = unanswered;
+                if(this.fixProgress.isCancelled())
+                    return;
+                session.reconnect(this.retryPolicy, e);
+                this.fixMetrics.addReconnect();
+                if(retry == this.retryPolicy.getRetries())
+                {
+                    this.giveUp(job, remaining);
+                    remaining = Collections.emptyList();
+                }
             }
-        });
-        //http://www.enterprisedt.com/products/edtftpj/examples/howto/monitor_transfers_and_commands/MonitorTransfersCommands.java.html
-        // the transfer notify interval must be greater than buffer
-        this.ftpClient.getAdvancedSettings().setTransferBufferSize(500);
-        this.ftpClient.getAdvancedSettings().setTransferNotifyInterval(1000);
+        }
+        //Cached filetimes of this directory are outdated now
+        this.listingCache.invalidate(job.getRemoteDir());
     }
 
     /**
-     * Returns the singleton instance of this class.
+     * Changes the session to the remote directory of a job. Files of a directory not found are skipped.
      *
-     * @return Instance of this class
+     * @param session Session to use
+     * @param job Job with files to fix
+     * @param files Number of files to skip on failure
+     * @return Directory changed
+     * @throws JFixError If the connection got lost
      */
-    public static FtpController getInstance()
+    private boolean changeDir(final FtpSession session, final FixJob job, final int files) throws JFixError
     {
-        return FtpController.ftpController;
+        try
+        {
+            session.changeDir(job.getRemoteDir());
+            return true;
+        }
+        catch(final JFixError e)
+        {
+            if(FtpSession.isConnectionLost(e))
+                throw e;
+            e.warn(FtpController.class, false);
+            this.errorReport.add(job.getRemoteDir(), e);
+            this.fixProgress.addSkipped(files);
+            this.fixMetrics.addSkipped(files);
+            return false;
+        }
     }
 
     /**
-     * Changes current remote working directory.
+     * Queues files still without reply after all retries for the final pass or, during it, counts them as failed.
      *
-     * @param filename Directory to change to
-     * @throws JFixError If changing remote folder failed
+     * @param job Job of files
+     * @param files Files without reply
      */
-    public void changeDir(final String filename) throws JFixError
+    private void giveUp(final FixJob job, final List<LocalFile> files)
+    {
+        if(this.finalPass)
+            for(final LocalFile curFile : files)
+            {
+                this.fixProgress.addSkipped(1);
+                this.fixProgress.addFailed();
+                this.fixMetrics.addFailed();
+                LoggerFactory.getLogger(FtpController.class).warn("Can't fix filetime of '{}': connection lost", curFile);
+                this.errorReport.add(job.getRemoteDir() + curFile.getName(), ErrorReport.NO_REPLY, "Connection lost");
+            }
+        else
+        {
+            LoggerFactory.getLogger(FtpController.class).info("Retrying {} file(s) of '{}' at the end of the run", files.size(), job.getRemoteDir());
+            for(int i = 0; i < files.size(); i++)
+                this.fixMetrics.addRetried();
+            this.failureQueue.addAll(job, files);
+        }
+    }
+
+    /**
+     * Fixes a single file with its absolute path to detect if the server accepts paths in commands.
+     * If not, the file is fixed again after changing to its directory. Paths are only considered rejected on a syntax
+     * error or if this happens for more than one file, a failure of the file itself leaves the result unknown.
+     *
+     * @param session Session to use
+     * @param job Job with file to fix
+     * @param file File to fix
+     * @throws JFixError If a command couldn't be executed
+     */
+    private void probePaths(final FtpSession session, final FixJob job, final LocalFile file) throws JFixError
     {
+        final long[] rtt = new long[1];
+        final FTPReply absoluteReply = this.executeLimited(session, this.getCommand(job.getRemoteDir(), file), rtt);
+        if(FtpSession.isPositive(absoluteReply))
+        {
+            this.pathsAccepted = Boolean.TRUE;
+            this.onReply(job, file, absoluteReply, rtt[0]);
+            return;
+        }
         try
         {
-            this.ftpClient.changeDirectory(filename);
+            session.changeDir(job.getRemoteDir());
         }
-        catch(final FTPException e)
+        catch(final JFixError e)
         {
-            throw new JFixError("Can't change remote directory to '" + filename + "'!", e);
+            if(FtpSession.isConnectionLost(e))
+                throw e;
+            e.warn(FtpController.class, false);
+            this.errorReport.add(job.getRemoteDir(), e);
+            this.fixProgress.addSkipped(1);
+            this.fixMetrics.addSkipped(1);
+            return;
         }
-        catch(final IOException e)
+        final FTPReply reply = this.executeLimited(session, this.getCommand("", file), rtt);
+        final boolean syntaxError = absoluteReply != null && FtpController.SYNTAX_ERRORS.contains(absoluteReply.getReplyCode());
+        if(FtpSession.isPositive(reply) && (syntaxError || this.relativeProbes.incrementAndGet() >= FtpController.PATH_PROBES))
         {
-            throw new JFixError(e);
+            LoggerFactory.getLogger(FtpController.class).info("Server rejects paths in commands, changing directories instead");
+            this.pathsAccepted = Boolean.FALSE;
         }
+        this.onReply(job, file, reply, rtt[0]);
     }
 
     /**
-     * Connects to FTP host.
+     * Executes a single fix command outside of a pipeline, holding a slot of the concurrency limiter until its reply
+     * is received.
      *
-     * @throws JFixError If connecting failed
+     * @param session Session to use
+     * @param command Fix command to execute
+     * @param rtt Receives the round-trip time of the command in nanoseconds
+     * @return Reply from server
+     * @throws JFixError If the command couldn't be executed or the run was interrupted
      */
-    public void connect() throws JFixError
+    private FTPReply executeLimited(final FtpSession session, final String command, final long[] rtt) throws JFixError
     {
-        LoggerFactory.getLogger(FtpController.class).debug("Connecting to server...");
         try
         {
-            this.ftpClient.connect();
+            this.concurrencyLimiter.acquire();
         }
-        catch(final FTPException e)
+        catch(final InterruptedException e)
         {
-            if(e.getReplyCode() == 530)
-                throw new JFixFtpAuthError("Login rejected from server!", e);
-            else
-                throw new JFixError("Can't connect to FTP host!", e);
+            Thread.currentThread().interrupt();
+            throw new JFixError("Fix run interrupted!", e);
         }
-        catch(final IOException e)
+        final FTPReply reply;
+        try
         {
-            throw new JFixError(e);
+            this.concurrencyLimiter.awaitRate();
+            final long sendTime = System.nanoTime();
+            reply = session.executeCommand(command);
+            rtt[0] = System.nanoTime() - sendTime;
         }
-        LoggerFactory.getLogger(FtpController.class).info("Connected to {}!", this.ftpClient.getRemoteHost());
+        catch(final InterruptedException e)
+        {
+            this.concurrencyLimiter.releaseFailed(1);
+            Thread.currentThread().interrupt();
+            throw new JFixError("Fix run interrupted!", e);
+        }
+        catch(final JFixError e)
+        {
+            this.concurrencyLimiter.releaseFailed(1);
+            throw e;
+        }
+        this.concurrencyLimiter.release(rtt[0], reply.getReplyCode());
+        return reply;
     }
 
     /**
-     * Disconnects from FTP host.
+     * Handles the reply of a fix command by logging failures, journaling fixed files and updating the progress. Files
+     * with transient negative replies are queued for the final pass, if retries are enabled.
      *
-     * @throws JFixError If disconnecting failed
+     * @param job Job of fixed file
+     * @param file Fixed file
+     * @param reply Reply from server
+     * @param rtt Round-trip time of command in nanoseconds
      */
-    public void disconnect() throws JFixError
+    private void onReply(final FixJob job, final LocalFile file, final FTPReply reply, final long rtt)
     {
-        LoggerFactory.getLogger(FtpController.class).debug("Disconnecting from server...");
-        try
+        if(!this.finalPass && this.retryPolicy.getRetries() > 0 && reply.getReplyCode().startsWith("4"))
         {
-            this.ftpClient.disconnect();
+            LoggerFactory.getLogger(FtpController.class).debug("Retrying '{}' at the end of the run: {}", file, reply.getRawReply());
+            this.fixProgress.addRetried(rtt);
+            this.fixMetrics.addRetried();
+            this.failureQueue.add(job, file);
+            return;
         }
-        catch(final FTPException e)
+        this.fixProgress.addCommand(rtt);
+        if(FtpSession.isPositive(reply))
         {
-            throw new JFixError("Can't disconnect from FTP host!", e);
+            LoggerFactory.getLogger(FtpController.class).trace("Fixed filetime of '{}'", file);
+            this.fixMetrics.addFixed();
+            if(this.useJournal)
+                this.fixJournal.record(job.getRemoteDir() + file.getName(), file.getLastModified(), file);
         }
-        catch(final IOException e)
+        else
         {
-            throw new JFixError(e);
+            this.fixProgress.addFailed();
+            this.fixMetrics.addFailed();
+            LoggerFactory.getLogger(FtpController.class).warn("Can't fix filetime of '{}': {}", file, reply.getRawReply());
+            this.errorReport.add(job.getRemoteDir() + file.getName(), reply.getReplyCode(), reply.getReplyText());
         }
-        LoggerFactory.getLogger(FtpController.class).info("Disconnected from {}!", this.ftpClient.getRemoteHost());
     }
 
     /**
-     * Fixes filetimes of files in stated local dir with the ones in current remote working directory.
+     * Returns the command of the current plug-in for stated file, encoded in the buffer of the calling worker.
      *
-     * @param localDir Local directory with files and folders to get filetimes from
+     * @param path Absolute remote path to prefix filename with or empty string
+     * @param file File to fix
+     * @return FTP command for execution
      */
-    public void fixFiletimes(final File localDir) throws JFixError
+    private String getCommand(final String path, final LocalFile file)
     {
-        LoggerFactory.getLogger(FtpController.class).info("Fixing filetimes for '{}'...", localDir.getName());
-        for(final File curFile : localDir.listFiles())
-            if(this.recursive && curFile.isDirectory())
-            {
-                try
-                {
-                    this.changeDir(curFile.getName());
-                }
-                catch(final JFixError e)
-                {
-                    e.warn(FtpController.class, true);
-                    continue;
-                }
-                this.fixFiletimes(curFile);
-                this.changeDir("../");
-            }
-            else
+        final StringBuilder buffer = this.commandBuffer.get();
+        buffer.setLength(0);
+        this.filetimeFixer.encodeCommand(buffer, path, file.getName(), file.getLastModified());
+        return buffer.toString();
+    }
+
+    /**
+     * Returns sorted file list of current remote working directory.
+     *
+     * @return Remote file list
+     * @throws JFixError If getting remote file list failed
+     */
+    public String[] getFileList() throws JFixError
+    {
+        return this.getNameList(this.listDirectory());
+    }
+
+    /**
+     * Returns sorted file list of stated remote directory. Cached listings are returned without contacting the server
+     * and the remote working directory is only changed before it is needed the next time.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     * @return Remote file list
+     * @throws JFixError If changing the directory or getting remote file list failed
+     */
+    public String[] getFileList(final String remoteDir) throws JFixError
+    {
+        RemoteListing fileList = this.listingCache.get(remoteDir);
+        if(fileList != null)
+        {
+            this.pendingDir = remoteDir;
+            return this.getNameList(fileList);
+        }
+        this.changeDir(remoteDir);
+        this.listingCache.put(remoteDir, fileList = this.readListing(this.ftpClient, remoteDir, true));
+        return this.getNameList(fileList);
+    }
+
+    /**
+     * Drops the cached file list of stated remote directory, so it is listed again next time.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     */
+    public void invalidateFileList(final String remoteDir)
+    {
+        this.listingCache.invalidate(remoteDir);
+    }
+
+    /**
+     * Lists current remote working directory with directories first.
+     *
+     * @return Sorted remote entries
+     * @throws JFixError If getting remote file list failed
+     */
+    private RemoteListing listDirectory() throws JFixError
+    {
+        return RemoteListing.read(this.ftpClient, "", true);
+    }
+
+    /**
+     * Lists the stated remote directory, over the control connection with {@code STAT -l} if enabled and supported by
+     * the server, otherwise with a data connection. Support is detected with the first listing containing entries, a
+     * {@code STAT} rejected with a permanent error falls back to a data connection for the rest of the session, other
+     * failing or unparsable replies only for the current directory. The result is cached per host.
+     *
+     * @param client FTP client to list with
+     * @param remoteDir Absolute remote directory to list
+     * @param sort List directories before files
+     * @return Remote entries
+     * @throws JFixError If getting remote file list failed
+     */
+    private RemoteListing readListing(final FileTransferClient client, final String remoteDir, final boolean sort) throws JFixError
+    {
+        final Object flightEvent = FlightRecorder.beginListing();
+        if(this.statListing && this.statSupported != Boolean.FALSE)
+        {
+            if(this.systemType == null)
                 try
                 {
-                    this.ftpClient.executeCommand(this.filetimeFixer.getCommand(curFile.getName(), curFile.lastModified()));
+                    this.systemType = client.getSystemType();
                 }
                 catch(final FTPException e)
                 {
-                    throw new JFixError("Can't execute command!", e);
+                    throw new JFixError("Can't get system type of server!", e);
                 }
                 catch(final IOException e)
                 {
                     throw new JFixError(e);
                 }
-        LoggerFactory.getLogger(FtpController.class).info("Filetimes fixed!");
+            RemoteListing listing;
+            try
+            {
+                listing = RemoteListing.readStat(client, this.systemType, remoteDir, sort);
+            }
+            catch(final JFixError e)
+            {
+                if(FtpSession.isConnectionLost(e))
+                    throw e;
+                LoggerFactory.getLogger(FtpController.class).debug("Listing '{}' with STAT failed, using data connection: {}", remoteDir, e.getMessage());
+                listing = RemoteListing.read(client, remoteDir, sort);
+                this.fixMetrics.addListed(listing.getBytes());
+                FlightRecorder.endListing(flightEvent, remoteDir, false, listing.size(), listing.getBytes());
+                return listing;
+            }
+            if(listing != null && listing.size() > 0)
+                this.updateStatSupport(Boolean.TRUE);
+            if(listing != null)
+            {
+                this.fixMetrics.addListed(listing.getBytes());
+                FlightRecorder.endListing(flightEvent, remoteDir, true, listing.size(), listing.getBytes());
+                return listing;
+            }
+            this.updateStatSupport(Boolean.FALSE);
+        }
+        final RemoteListing listing = RemoteListing.read(client, remoteDir, sort);
+        this.fixMetrics.addListed(listing.getBytes());
+        FlightRecorder.endListing(flightEvent, remoteDir, false, listing.size(), listing.getBytes());
+        return listing;
     }
 
     /**
-     * Returns sorted file list of current remote working directory.
+     * Sets and caches if the server lists directories with {@code STAT -l}.
+     *
+     * @param supported Detected support
+     * @throws JFixError If capability cache can't be written
+     */
+    private void updateStatSupport(final Boolean supported) throws JFixError
+    {
+        if(supported.equals(this.statSupported))
+            return;
+        this.statSupported = supported;
+        LoggerFactory.getLogger(FtpController.class).info(supported ? "Listing directories over control connection" : "Server doesn't list directories with STAT, using data connections");
+        this.capabilityCache.put(this.ftpClient.getRemoteHost(), this.ftpClient.getRemotePort(), "statListing", supported.toString());
+    }
+
+    /**
+     * Converts sorted remote entries to their names with relative paths added.
      *
+     * @param fileList Sorted remote entries
      * @return Remote file list
-     * @throws JFixError If getting remote file list failed
      */
-    public String[] getFileList() throws JFixError
+    private String[] getNameList(final RemoteListing fileList)
     {
-        try
-        {
-            //Get original file list and sort it
-            final FTPFile[] fileList = this.ftpClient.directoryList();
-            Arrays.sort(fileList, this.ftpFileComparator);
-            //Convert to name list only
-            final LinkedList<String> nameList = new LinkedList<String>();
-            for(final FTPFile curFile : fileList)
-                nameList.add(curFile.getName());
-            //Add relative paths
-            if(!nameList.contains(".."))
-                nameList.addFirst("..");
-            if(!nameList.contains("."))
-                nameList.addFirst(".");
-            return nameList.toArray(new String[0]);
-        }
-        catch(final FTPException e)
-        {
-            throw new JFixError("Can't get remote directory file list!", e);
-        }
-        catch(final ParseException e)
-        {
-            throw new JFixError(e);
-        }
-        catch(final IOException e)
-        {
-            throw new JFixError(e);
-        }
+        boolean hasCurrent = false;
+        boolean hasParent = false;
+        for(int i = 0; i < fileList.size() && fileList.isDirectory(i); i++)
+            if(fileList.getName(i).equals("."))
+                hasCurrent = true;
+            else if(fileList.getName(i).equals(".."))
+                hasParent = true;
+        //Add relative paths
+        final String[] nameList = new String[fileList.size() + (hasCurrent ? 0 : 1) + (hasParent ? 0 : 1)];
+        int next = 0;
+        if(!hasCurrent)
+            nameList[next++] = ".";
+        if(!hasParent)
+            nameList[next++] = "..";
+        for(int i = 0; i < fileList.size(); i++)
+            nameList[next++] = fileList.getName(i);
+        return nameList;
     }
 
     /**
@@ -401,24 +1588,44 @@ public final class FtpController implements Observer
             this.setPort(Integer.parseInt(ConfigController.getInstance().getCfgVal("port")));
             this.setUserName(ConfigController.getInstance().getCfgVal("user"));
             this.setPassword(CryptUtils.decode(ConfigController.getInstance().getCfgVal("pass")));
-            this.filetimeFixer = (FiletimeFixer) Class.forName("com.chrissyx.jfix.plugins." + ConfigController.getInstance().getCfgVal("plugIn")).newInstance();
+            if((this.filetimeFixer = ServiceRegistry.getPlugIn(ConfigController.getInstance().getCfgVal("plugIn"))) == null)
+                throw new JFixError("Can't find plugin '" + ConfigController.getInstance().getCfgVal("plugIn") + "'!");
             this.recursive = Boolean.parseBoolean(ConfigController.getInstance().getCfgVal("recursive"));
+            this.includes = this.getMatchers(ConfigController.getInstance().getCfgVal("include"));
+            this.excludes = this.getMatchers(ConfigController.getInstance().getCfgVal("exclude"));
+            this.absolutePaths = Boolean.parseBoolean(ConfigController.getInstance().getCfgVal("absolutePaths"));
+            this.skipUnchanged = Boolean.parseBoolean(ConfigController.getInstance().getCfgVal("skipUnchanged"));
+            this.skipTolerance = Math.max(0, Long.parseLong(ConfigController.getInstance().getCfgVal("skipTolerance")) * 1000L);
+            this.statListing = Boolean.parseBoolean(ConfigController.getInstance().getCfgVal("statListing"));
+            this.capabilityCache = new CapabilityCache(ConfigController.getInstance().getDataFile("jfix-capabilities.properties"));
+            this.errorReport = new ErrorReport(ConfigController.getInstance().getDataFile("jfix-errors.txt"), Integer.parseInt(ConfigController.getInstance().getCfgVal("errorReportSize")));
+            this.fixCheckpoint = new FixCheckpoint(ConfigController.getInstance().getDataFile("jfix-checkpoint.dat"), Long.parseLong(ConfigController.getInstance().getCfgVal("checkpointInterval")) * 1000L);
+            this.useJournal = Boolean.parseBoolean(ConfigController.getInstance().getCfgVal("journal"));
+            this.pipelineWindow = Math.max(1, Integer.parseInt(ConfigController.getInstance().getCfgVal("pipelineWindow")));
+            this.adaptiveConcurrency = Boolean.parseBoolean(ConfigController.getInstance().getCfgVal("adaptiveConcurrency"));
+            this.adaptiveMaxInFlight = Integer.parseInt(ConfigController.getInstance().getCfgVal("adaptiveMaxInFlight"));
+            this.maxCommandRate = Math.max(0, Double.parseDouble(ConfigController.getInstance().getCfgVal("maxCommandRate")));
+            this.retryPolicy = new RetryPolicy(Integer.parseInt(ConfigController.getInstance().getCfgVal("retryAttempts")),
+                    Long.parseLong(ConfigController.getInstance().getCfgVal("retryDelay")),
+                    Long.parseLong(ConfigController.getInstance().getCfgVal("retryMaxDelay")));
+            this.poolSize = Math.max(1, Integer.parseInt(ConfigController.getInstance().getCfgVal("poolSize")));
+            this.eventBus.configure(Integer.parseInt(ConfigController.getInstance().getCfgVal("eventQueueSize")),
+                    FtpEventBus.OverflowPolicy.valueOf(ConfigController.getInstance().getCfgVal("eventOverflow").toUpperCase()),
+                    Integer.parseInt(ConfigController.getInstance().getCfgVal("eventSampleRate")));
+            this.listingCache = new RemoteListingCache(Long.parseLong(ConfigController.getInstance().getCfgVal("listingCacheTtl")) * 1000L,
+                    Integer.parseInt(ConfigController.getInstance().getCfgVal("listingCacheSize")),
+                    Long.parseLong(ConfigController.getInstance().getCfgVal("listingCacheMemory")) * 1024L);
+            //Connection settings may have changed
+            this.closeSessionPool();
+            this.fixJournal = null;
         }
         catch(final JFixError e)
         {
             e.error(FtpController.class);
         }
-        catch(final ClassNotFoundException e)
-        {
-            new JFixError("Can't find plugin '" + ConfigController.getInstance().getCfgVal("plugIn") + "'!", e).error(FtpController.class);
-        }
-        catch(final InstantiationException e)
-        {
-            new JFixError(e).error(FtpController.class);
-        }
-        catch(final IllegalAccessException e)
+        catch(final IllegalArgumentException e)
         {
-            new JFixError(e).error(FtpController.class);
+            new JFixError("Invalid config value!", e).error(FtpController.class);
         }
     }
 }
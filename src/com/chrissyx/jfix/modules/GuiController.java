@@ -5,16 +5,39 @@ import com.chrissyx.jfix.common.error.JFixError;
 import com.chrissyx.jfix.common.error.JFixFtpAuthError;
 import com.chrissyx.jfix.gui.MainView;
 import com.chrissyx.jfix.gui.OptionsView;
+import com.chrissyx.jfix.gui.ProgressView;
 import com.chrissyx.jfix.gui.impl.MainFrame;
 import com.chrissyx.jfix.gui.impl.OptionsDialog;
+import com.chrissyx.jfix.gui.impl.ProgressDialog;
+import com.chrissyx.jfix.modules.ftp.ErrorReport;
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+import com.chrissyx.jfix.modules.ftp.FtpEvent;
+import com.chrissyx.jfix.modules.ftp.FtpEventBus;
+import com.chrissyx.jfix.modules.jfr.FlightRecorder;
 import com.chrissyx.jfix.modules.util.CryptUtils;
 import com.chrissyx.jfix.modules.util.FileUtils;
+import com.chrissyx.jfix.modules.util.LocalListing;
+import com.chrissyx.jfix.modules.util.LogRingBuffer;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 
 import org.slf4j.LoggerFactory;
@@ -31,6 +54,21 @@ public final class GuiController
      */
     private static GuiController guiController = new GuiController();
 
+    /**
+     * Milliseconds between two updates of the progress frame.
+     */
+    private static final int PROGRESS_INTERVAL = 250;
+
+    /**
+     * Milliseconds to collect log entries before passing them to the console at once.
+     */
+    private static final int LOG_FLUSH_INTERVAL = 100;
+
+    /**
+     * Number of problems listed in the summary after a run.
+     */
+    private static final int ERROR_SUMMARY_SIZE = 10;
+
     /**
      * The main frame to handle.
      */
@@ -41,11 +79,98 @@ public final class GuiController
      */
     private OptionsView optionsView;
 
+    /**
+     * Log entries not yet passed to the console, bounded like the console itself.
+     */
+    private final LogRingBuffer pendingLog = new LogRingBuffer(Integer.parseInt(ConfigController.getInstance().getCfgVal("logLines")));
+
+    /**
+     * State if a flush of pending log entries is scheduled.
+     */
+    private final AtomicBoolean logFlushScheduled = new AtomicBoolean();
+
+    /**
+     * Timer to flush pending log entries to the console.
+     */
+    private final Timer logFlushTimer = new Timer(GuiController.LOG_FLUSH_INTERVAL, new ActionListener()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void actionPerformed(final ActionEvent e)
+        {
+            GuiController.this.flushLog();
+        }
+    });
+
+    /**
+     * Writer for the full log history or {@code null} if not configured.
+     */
+    private Writer logFileWriter;
+
+    /**
+     * The progress frame of the current run or {@code null} if none.
+     */
+    private ProgressView progressView;
+
+    /**
+     * Executor to run fixes off the event dispatch thread.
+     */
+    private final ExecutorService fixExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable r)
+        {
+            final Thread thread = new Thread(r, "JFix-Run");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Progress of the current run or {@code null} if none.
+     */
+    private FixProgress fixProgress;
+
+    /**
+     * Timer polling the progress of the current run.
+     */
+    private Timer progressTimer;
+
+    /**
+     * Number of commands at the last progress update.
+     */
+    private long lastCommands;
+
+    /**
+     * Summed round-trip times at the last progress update.
+     */
+    private long lastRttNanos;
+
+    /**
+     * Time of the last progress update in milliseconds.
+     */
+    private long lastUpdate;
+
+    /**
+     * Smoothed commands per second.
+     */
+    private double commandRate;
+
     /**
      * Current local working directory for file browsing.
      */
     private File cwdLocal;
 
+    /**
+     * Listing of current local working directory as displayed.
+     */
+    private LocalListing localListing;
+
     /**
      * Current remote working directory for file browsing.
      */
@@ -65,9 +190,33 @@ public final class GuiController
         {
             LoggerFactory.getLogger(GuiController.class).warn("Cannot set system L&F!", e);
         }
+        this.logFlushTimer.setRepeats(false);
+        this.openLogFile();
         LoggerFactory.getLogger(GuiController.class).debug("Creating main frame...");
         this.mainView = new MainFrame();
-        this.mainView.setLocalFileList(FileUtils.getFileListing(this.cwdLocal = new File(ConfigController.getInstance().getCfgVal("localStartDir")), true));
+        FtpController.getInstance().getEventBus().subscribe(new FtpEventBus.Subscriber()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void eventReceived(final FtpEvent event)
+            {
+                switch(event.getType())
+                {
+                    case COMMAND_SENT:
+                    case REPLY_RECEIVED:
+                        GuiController.this.appendLogEntry(event.getMessage());
+                        break;
+                    case EVENTS_DROPPED:
+                        GuiController.this.appendLogEntry(LangController.getInstance().getString("x_log_entries_skipped", event.getCount()));
+                        break;
+                    default:
+                }
+            }
+        });
+        this.cwdLocal = new File(ConfigController.getInstance().getCfgVal("localStartDir"));
+        this.refreshLocalFileList();
         this.mainView.showFrame();
         this.appendLogEntry(LangController.getInstance().getString("jfix_version_x_ready", JFix.VERSION));
         this.appendLogEntry("© 2011 by Chrissyx");
@@ -86,13 +235,77 @@ public final class GuiController
     }
 
     /**
-     * Displays given log message in console text area.
+     * Displays given log message in console. Messages from any thread are collected and passed to the console in batches
+     * on the event dispatch thread. If configured, the message is also written to the log file.
      *
      * @param logMessage Message to log
      */
     public void appendLogEntry(final String logMessage)
     {
-        this.mainView.appendLogEntry(logMessage);
+        if(this.logFileWriter != null)
+            synchronized(this.logFileWriter)
+            {
+                try
+                {
+                    this.logFileWriter.write(logMessage);
+                    this.logFileWriter.write(System.getProperty("line.separator"));
+                }
+                catch(final IOException e)
+                {
+                    LoggerFactory.getLogger(GuiController.class).warn("Cannot write log file!", e);
+                }
+            }
+        this.pendingLog.add(logMessage);
+        if(this.logFlushScheduled.compareAndSet(false, true))
+            this.logFlushTimer.start();
+    }
+
+    /**
+     * Passes all pending log entries to the console and flushes the log file.
+     */
+    private void flushLog()
+    {
+        this.logFlushScheduled.set(false);
+        final Object flightEvent = FlightRecorder.beginLogFlush();
+        final String[] logMessages = this.pendingLog.drain();
+        final int dropped = this.pendingLog.takeDropped();
+        if(dropped > 0)
+            this.mainView.appendLogEntries(new String[]
+                    {
+                        LangController.getInstance().getString("x_log_entries_skipped", dropped)
+                    });
+        this.mainView.appendLogEntries(logMessages);
+        if(this.logFileWriter != null)
+            synchronized(this.logFileWriter)
+            {
+                try
+                {
+                    this.logFileWriter.flush();
+                }
+                catch(final IOException e)
+                {
+                    LoggerFactory.getLogger(GuiController.class).warn("Cannot flush log file!", e);
+                }
+            }
+        FlightRecorder.endLogFlush(flightEvent, logMessages.length, dropped);
+    }
+
+    /**
+     * Opens the configured log file for appending the full log history.
+     */
+    private void openLogFile()
+    {
+        final String logFile = ConfigController.getInstance().getCfgVal("logFile");
+        if(logFile.isEmpty())
+            return;
+        try
+        {
+            this.logFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), "UTF-8"));
+        }
+        catch(final IOException e)
+        {
+            new JFixError("Cannot open log file '" + logFile + "'!", e).warn(GuiController.class, false);
+        }
     }
 
     /**
@@ -113,7 +326,25 @@ public final class GuiController
         {
             new JFixError(e).error(GuiController.class);
         }
-        this.mainView.setLocalFileList(FileUtils.getFileListing(this.cwdLocal, true));
+        this.refreshLocalFileList();
+    }
+
+    /**
+     * Reads the listing of the current local working directory once and displays it.
+     */
+    private void refreshLocalFileList()
+    {
+        try
+        {
+            this.localListing = LocalListing.read(this.cwdLocal, true);
+            this.mainView.setLocalFileList(FileUtils.getFileListing(this.localListing));
+        }
+        catch(final JFixError e)
+        {
+            //Listing again reports the error and falls back to the super folder only
+            this.localListing = null;
+            this.mainView.setLocalFileList(FileUtils.getFileListing(this.cwdLocal, true));
+        }
     }
 
     /**
@@ -124,15 +355,16 @@ public final class GuiController
     public void onChangeRemoteDir(final String filename)
     {
         LoggerFactory.getLogger(GuiController.class).debug("Browsing remotely to '{}' from '{}'...", filename, this.cwdRemote);
-        if(!FtpController.getInstance().isConnected())
+        if(!FtpController.getInstance().isConnected() || this.fixProgress != null)
             return;
         final String oldRemoteDir = this.cwdRemote; //Back up current dir in case of error (file selected, ...)
         if(!filename.contentEquals("."))
-            this.cwdRemote = filename.contentEquals("..") ? this.getRemoteParentDir() : this.cwdRemote.concat(filename).concat("/");
+            this.cwdRemote = filename.contentEquals("..") ? FileUtils.getRemoteParentDir(this.cwdRemote) : this.cwdRemote.concat(filename).concat("/");
+        else
+            FtpController.getInstance().invalidateFileList(this.cwdRemote); //Reload on explicit refresh
         try
         {
-            FtpController.getInstance().changeDir(this.cwdRemote);
-            this.mainView.setRemoteFileList(FtpController.getInstance().getFileList());
+            this.mainView.setRemoteFileList(FtpController.getInstance().getFileList(this.cwdRemote));
         }
         catch(final JFixError e)
         {
@@ -141,30 +373,38 @@ public final class GuiController
         }
     }
 
-    /**
-     * Returns the parent remote working directory from the current one.
-     *
-     * @return Remote working directory path down to parent of current one
-     */
-    private String getRemoteParentDir()
-    {
-        if(this.cwdRemote.length() == 1)
-            return this.cwdRemote;
-        final StringBuilder stringBuilder = new StringBuilder();
-        final String[] remoteDirs = this.cwdRemote.split("/");
-        for(int i = 0; i < remoteDirs.length - 1; i++)
-            stringBuilder.append(remoteDirs[i]).append("/");
-        return stringBuilder.toString();
-    }
-
     /**
      * Closes all frames and exits application.
      */
     public void onClose()
     {
         LoggerFactory.getLogger(GuiController.class).info("Exiting JFix...");
+        if(this.fixProgress != null)
+        {
+            //Let the run stop cleanly to keep its checkpoint
+            this.fixProgress.cancel();
+            this.fixExecutor.shutdown();
+            try
+            {
+                this.fixExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch(final InterruptedException e)
+            {
+                LoggerFactory.getLogger(GuiController.class).warn("Interrupted while waiting for run to stop!", e);
+            }
+            this.fixProgress = null;
+        }
         this.onDisconnect();
         this.mainView.closeFrame();
+        if(this.logFileWriter != null)
+            try
+            {
+                this.logFileWriter.close();
+            }
+            catch(final IOException e)
+            {
+                LoggerFactory.getLogger(GuiController.class).warn("Cannot close log file!", e);
+            }
         System.exit(0);
     }
 
@@ -179,8 +419,7 @@ public final class GuiController
         try
         {
             FtpController.getInstance().connect();
-            FtpController.getInstance().changeDir(this.cwdRemote = ConfigController.getInstance().getCfgVal("remoteStartDir"));
-            this.mainView.setRemoteFileList(FtpController.getInstance().getFileList());
+            this.mainView.setRemoteFileList(FtpController.getInstance().getFileList(this.cwdRemote = ConfigController.getInstance().getCfgVal("remoteStartDir")));
             return true;
         }
         catch(final JFixFtpAuthError e)
@@ -203,6 +442,11 @@ public final class GuiController
      */
     public boolean onDisconnect()
     {
+        if(this.fixProgress != null)
+        {
+            this.showWarningDialog(LangController.getInstance().getString("text_fix_running"), LangController.getInstance().getString("title_fix_running"));
+            return false;
+        }
         if(FtpController.getInstance().isConnected())
             try
             {
@@ -217,14 +461,23 @@ public final class GuiController
     }
 
     /**
-     * Starts synchronizing remote filetimes with local ones via {@link FtpController}.
+     * Starts synchronizing remote filetimes with local ones via {@link FtpController} in the background.
+     * If an interrupted run for the same directories exists, it is resumed according to the config or user's choice.
+     * The local listing is refreshed beforehand and handed over, so its entries are not read again.
      */
     public void onFixFiletimes()
     {
-        if(FtpController.getInstance().isConnected())
+        if(this.fixProgress != null)
+            this.showWarningDialog(LangController.getInstance().getString("text_fix_running"), LangController.getInstance().getString("title_fix_running"));
+        else if(FtpController.getInstance().isConnected())
             try
             {
-                FtpController.getInstance().fixFiletimes(this.cwdLocal);
+                final String resumeMode = ConfigController.getInstance().getCfgVal("resume");
+                final boolean resume = !resumeMode.equals("false") && FtpController.getInstance().isResumable(this.cwdLocal)
+                        && (resumeMode.equals("true") || this.showConfirmDialog(LangController.getInstance().getString("text_resume_run"), LangController.getInstance().getString("title_resume_run")));
+                this.refreshLocalFileList();
+                if(this.localListing != null)
+                    this.startFix(this.localListing, resume);
             }
             catch(final JFixError e)
             {
@@ -234,6 +487,121 @@ public final class GuiController
             this.showWarningDialog(LangController.getInstance().getString("text_connect_first"), LangController.getInstance().getString("title_connect_first"));
     }
 
+    /**
+     * Cancels the current run after the outstanding commands.
+     */
+    public void onCancelFix()
+    {
+        if(this.fixProgress == null || this.fixProgress.isCancelled())
+            return;
+        LoggerFactory.getLogger(GuiController.class).info("Cancelling run...");
+        this.fixProgress.cancel();
+        this.progressView.setCancelling();
+    }
+
+    /**
+     * Shows the progress frame and runs the fix on the background executor.
+     *
+     * @param runListing Listing of local directory to fix
+     * @param resume Resume an interrupted run
+     */
+    private void startFix(final LocalListing runListing, final boolean resume)
+    {
+        final FixProgress runProgress = this.fixProgress = new FixProgress();
+        this.lastCommands = this.lastRttNanos = 0;
+        this.lastUpdate = runProgress.getStartTime();
+        this.commandRate = 0;
+        this.progressView = new ProgressDialog((JFrame) this.mainView);
+        this.progressView.showFrame();
+        this.progressTimer = new Timer(GuiController.PROGRESS_INTERVAL, new ActionListener()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void actionPerformed(final ActionEvent e)
+            {
+                GuiController.this.updateProgress();
+            }
+        });
+        this.progressTimer.start();
+        this.fixExecutor.execute(new Runnable()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                try
+                {
+                    FtpController.getInstance().fixFiletimes(runListing, resume, runProgress);
+                }
+                catch(final JFixError e)
+                {
+                    e.error(FtpController.class);
+                }
+                finally
+                {
+                    SwingUtilities.invokeLater(new Runnable()
+                    {
+                        /**
+                         * {@inheritDoc}
+                         */
+                        @Override
+                        public void run()
+                        {
+                            GuiController.this.onFixFinished();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Polls the progress of the current run and shows it with current throughput, round-trip time and ETA.
+     */
+    private void updateProgress()
+    {
+        final long now = System.currentTimeMillis();
+        final long commands = this.fixProgress.getCommands();
+        final long rttNanos = this.fixProgress.getRttNanos();
+        final long filesDone = this.fixProgress.getFilesDone();
+        final long filesTotal = this.fixProgress.getFilesTotal();
+        final long newCommands = commands - this.lastCommands;
+        if(now > this.lastUpdate)
+            this.commandRate = this.commandRate == 0 ? newCommands * 1000d / (now - this.lastUpdate)
+                    : 0.8 * this.commandRate + 0.2 * newCommands * 1000d / (now - this.lastUpdate);
+        final double rtt = newCommands == 0 ? 0 : (rttNanos - this.lastRttNanos) / 1000000d / newCommands;
+        final long elapsed = now - this.fixProgress.getStartTime();
+        final long eta = filesTotal < 0 || filesDone == 0 ? -1 : Math.max(0, filesTotal - filesDone) * elapsed / filesDone / 1000;
+        this.lastCommands = commands;
+        this.lastRttNanos = rttNanos;
+        this.lastUpdate = now;
+        this.progressView.setProgress(filesDone, filesTotal, this.commandRate, rtt, eta);
+    }
+
+    /**
+     * Closes the progress frame after the run ended and summarizes its problems, if any.
+     */
+    private void onFixFinished()
+    {
+        this.progressTimer.stop();
+        this.progressView.closeFrame();
+        this.progressView = null;
+        this.progressTimer = null;
+        this.fixProgress = null;
+        final ErrorReport errorReport = FtpController.getInstance().getErrorReport();
+        if(errorReport.getTotal() == 0)
+            return;
+        final List<ErrorReport.Entry> entries = errorReport.getEntries();
+        final StringBuilder summary = new StringBuilder(LangController.getInstance().getString("text_fix_errors", errorReport.getTotal(), errorReport.getReportFile()));
+        for(final ErrorReport.Entry curEntry : entries.subList(0, Math.min(GuiController.ERROR_SUMMARY_SIZE, entries.size())))
+            summary.append('\n').append(curEntry);
+        this.showWarningDialog(summary.toString(), LangController.getInstance().getString("title_fix_errors"));
+    }
+
     /**
      * Checks and saves settings to file.
      */
@@ -269,6 +637,12 @@ public final class GuiController
      */
     public void onShowOptions()
     {
+        //Saved options reconfigure the FTP sessions of the running fix
+        if(this.fixProgress != null)
+        {
+            this.showWarningDialog(LangController.getInstance().getString("text_fix_running"), LangController.getInstance().getString("title_fix_running"));
+            return;
+        }
         if(this.optionsView == null)
         {
             LoggerFactory.getLogger(GuiController.class).debug("Creating options frame...");
@@ -285,6 +659,18 @@ public final class GuiController
         this.optionsView.showFrame();
     }
 
+    /**
+     * Displays given question and title in a confirmation dialog.
+     *
+     * @param message Question to display
+     * @param title Title of confirmation dialog
+     * @return User confirmed the question
+     */
+    private boolean showConfirmDialog(final String message, final String title)
+    {
+        return JOptionPane.showConfirmDialog((JFrame) this.mainView, message, title, JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+    }
+
     /**
      * Displays given message in an error dialog.
      *
@@ -296,13 +682,29 @@ public final class GuiController
     }
 
     /**
-     * Displays given message and title in an error dialog.
+     * Displays given message and title in an error dialog. Calls from other threads are passed to the event dispatch
+     * thread.
      *
      * @param message Message text to display
      * @param title Title of error dialog
      */
     private void showErrorDialog(final String message, final String title)
     {
+        if(!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run()
+                {
+                    GuiController.this.showErrorDialog(message, title);
+                }
+            });
+            return;
+        }
         JOptionPane.showMessageDialog((JFrame) this.mainView, message, title, JOptionPane.ERROR_MESSAGE);
     }
 
@@ -317,13 +719,29 @@ public final class GuiController
     }
 
     /**
-     * Displays given message and title in a warning dialog.
+     * Displays given message and title in a warning dialog. Calls from other threads are passed to the event dispatch
+     * thread.
      *
      * @param message Message text to display
      * @param title Title of warning dialog
      */
     public void showWarningDialog(final String message, final String title)
     {
+        if(!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run()
+                {
+                    GuiController.this.showWarningDialog(message, title);
+                }
+            });
+            return;
+        }
         JOptionPane.showMessageDialog((JFrame) this.mainView, message, title, JOptionPane.WARNING_MESSAGE);
     }
 }
@@ -1,10 +1,9 @@
 package com.chrissyx.jfix.modules;
 
-import com.chrissyx.jfix.modules.util.FileUtils;
 import com.chrissyx.jfix.modules.util.ResourceUtils;
+import com.chrissyx.jfix.modules.util.ServiceRegistry;
 
 import java.text.MessageFormat;
-import java.util.LinkedList;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.Observable;
@@ -70,10 +69,7 @@ public final class LangController implements Observer
      */
     public String[] getLocales()
     {
-        final LinkedList<String> localeList = new LinkedList<String>();
-        for(final String curLocale : FileUtils.getPackageListing("resources", ".properties"))
-            localeList.add(curLocale.replace("jfix-lang_", "")); //.replaceFirst("_", ""));
-        return localeList.toArray(new String[0]);
+        return ServiceRegistry.getLocales();
     }
 
     /**
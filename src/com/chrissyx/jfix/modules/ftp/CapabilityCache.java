@@ -0,0 +1,118 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the capabilities detected for each FTP host, e.g. the filetime fixing plug-in, so later connects skip
+ * probing the server. Entries are stored as {@code host:port.capability=value} in a properties file.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class CapabilityCache
+{
+    /**
+     * Cache file on disk.
+     */
+    private final File cacheFile;
+
+    /**
+     * Capabilities by host, loaded on first access.
+     */
+    private Properties capabilities;
+
+    /**
+     * Creates a capability cache for the stated file.
+     *
+     * @param cacheFile Cache file to read and write
+     */
+    public CapabilityCache(final File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Returns a capability detected for stated host.
+     *
+     * @param host FTP host
+     * @param port FTP port
+     * @param capability Name of capability, e.g. "plugIn"
+     * @return Detected value or {@code null} if not detected yet
+     */
+    public synchronized String get(final String host, final int port, final String capability)
+    {
+        return this.getCapabilities().getProperty(host + ":" + port + "." + capability);
+    }
+
+    /**
+     * Stores a capability detected for stated host.
+     *
+     * @param host FTP host
+     * @param port FTP port
+     * @param capability Name of capability, e.g. "plugIn"
+     * @param value Detected value
+     * @throws JFixError If cache file can't be written
+     */
+    public synchronized void put(final String host, final int port, final String capability, final String value) throws JFixError
+    {
+        this.getCapabilities().setProperty(host + ":" + port + "." + capability, value);
+        try
+        {
+            final OutputStream out = new FileOutputStream(this.cacheFile);
+            try
+            {
+                this.capabilities.store(out, "Detected FTP capabilities per host");
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError("Cannot write capability cache file!", e);
+        }
+    }
+
+    /**
+     * Returns the cached capabilities, loading them from disk on first access.
+     *
+     * @return Capabilities by host
+     */
+    private Properties getCapabilities()
+    {
+        if(this.capabilities == null)
+        {
+            this.capabilities = new Properties();
+            if(this.cacheFile.exists())
+                try
+                {
+                    final InputStream in = new FileInputStream(this.cacheFile);
+                    try
+                    {
+                        this.capabilities.load(in);
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                    LoggerFactory.getLogger(CapabilityCache.class).debug("Loaded {} cached capabilities", this.capabilities.size());
+                }
+                catch(final IOException e)
+                {
+                    new JFixError("Cannot read capability cache file!", e).warn(CapabilityCache.class, false);
+                }
+        }
+        return this.capabilities;
+    }
+}
@@ -0,0 +1,240 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the fix commands in flight over all sessions of a run and optionally their rate. In adaptive mode the limit
+ * follows AIMD: it grows by one after each window of replies with flat latency and is cut multiplicatively on throttling
+ * replies ({@code 421}, {@code 450}), failed connections or a p99 latency rising well above the best one seen. A limit
+ * below the number of sessions leaves workers idle, so both parallel sessions and pipelined commands are adjusted.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class ConcurrencyLimiter
+{
+    /**
+     * Minimum number of replies per latency window.
+     */
+    private static final int MIN_WINDOW = 16;
+
+    /**
+     * Factor of the best p99 latency a window may reach before backing off.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Factor to cut the limit with on throttling or failures.
+     */
+    private static final double THROTTLE_BACKOFF = 0.5;
+
+    /**
+     * Factor to cut the limit with on rising latency.
+     */
+    private static final double LATENCY_BACKOFF = 0.75;
+
+    /**
+     * Minimum nanoseconds between two cuts, so a burst of throttling replies counts once.
+     */
+    private static final long MIN_COOLDOWN = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Upper bound of the limit.
+     */
+    private final int maxLimit;
+
+    /**
+     * State if the limit adapts to the server.
+     */
+    private final boolean adaptive;
+
+    /**
+     * Nanoseconds between two commands for the rate ceiling or 0 for no ceiling.
+     */
+    private final long interval;
+
+    /**
+     * Current limit of commands in flight.
+     */
+    private int limit;
+
+    /**
+     * Number of commands in flight.
+     */
+    private int inFlight;
+
+    /**
+     * Latencies of current window in nanoseconds.
+     */
+    private long[] samples = new long[ConcurrencyLimiter.MIN_WINDOW];
+
+    /**
+     * Number of latencies in current window.
+     */
+    private int sampleCount;
+
+    /**
+     * Best p99 latency of a window in nanoseconds or 0 if no window completed yet.
+     */
+    private long baseline;
+
+    /**
+     * Time of last cut.
+     */
+    private long lastBackoff = System.nanoTime() - ConcurrencyLimiter.MIN_COOLDOWN;
+
+    /**
+     * Earliest time the next command may be sent for the rate ceiling.
+     */
+    private long nextSendTime = System.nanoTime();
+
+    /**
+     * Creates a limiter.
+     *
+     * @param initialLimit Commands in flight to start with
+     * @param maxLimit Upper bound of commands in flight
+     * @param adaptive Adapt the limit to the server, otherwise keep the initial one
+     * @param maxRate Maximum commands per second or 0 for no ceiling
+     */
+    public ConcurrencyLimiter(final int initialLimit, final int maxLimit, final boolean adaptive, final double maxRate)
+    {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+        this.adaptive = adaptive;
+        this.interval = maxRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRate) : 0;
+    }
+
+    /**
+     * Takes a slot for a command if the limit is not reached.
+     *
+     * @return Slot taken
+     */
+    public synchronized boolean tryAcquire()
+    {
+        if(this.inFlight >= this.limit)
+            return false;
+        this.inFlight++;
+        return true;
+    }
+
+    /**
+     * Waits for a free slot and takes it. Only call this without own commands in flight, otherwise their replies have
+     * to be read first to prevent deadlocks between sessions.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException
+    {
+        while(this.inFlight >= this.limit)
+            this.wait();
+        this.inFlight++;
+    }
+
+    /**
+     * Waits until the rate ceiling allows sending the next command.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitRate() throws InterruptedException
+    {
+        if(this.interval == 0)
+            return;
+        final long sendTime;
+        synchronized(this)
+        {
+            sendTime = Math.max(System.nanoTime(), this.nextSendTime);
+            this.nextSendTime = sendTime + this.interval;
+        }
+        final long delay = sendTime - System.nanoTime();
+        if(delay > 0)
+            TimeUnit.NANOSECONDS.sleep(delay);
+    }
+
+    /**
+     * Frees the slot of a command with received reply and adapts the limit.
+     *
+     * @param rtt Round-trip time of command in nanoseconds
+     * @param replyCode Code of reply
+     */
+    public synchronized void release(final long rtt, final String replyCode)
+    {
+        this.inFlight--;
+        this.notifyAll();
+        if(!this.adaptive)
+            return;
+        if(replyCode.equals("421") || replyCode.equals("450"))
+        {
+            this.backOff(ConcurrencyLimiter.THROTTLE_BACKOFF, "throttling reply " + replyCode);
+            return;
+        }
+        if(this.sampleCount == this.samples.length)
+            this.samples = Arrays.copyOf(this.samples, this.samples.length * 2);
+        this.samples[this.sampleCount++] = rtt;
+        if(this.sampleCount < Math.max(ConcurrencyLimiter.MIN_WINDOW, this.limit))
+            return;
+        Arrays.sort(this.samples, 0, this.sampleCount);
+        final long p99 = this.samples[(int) Math.ceil(this.sampleCount * 0.99) - 1];
+        this.sampleCount = 0;
+        if(this.baseline == 0 || p99 < this.baseline)
+            this.baseline = p99;
+        //Follow lasting latency changes slowly, so a slower network doesn't keep the limit down, but only at the lowest or
+        //highest limit, otherwise the baseline follows the queueing delay of the own commands
+        if(this.limit == 1 || this.limit == this.maxLimit)
+            this.baseline += (p99 - this.baseline) / 8;
+        if(p99 > this.baseline * ConcurrencyLimiter.LATENCY_TOLERANCE)
+            this.backOff(ConcurrencyLimiter.LATENCY_BACKOFF, "p99 latency of " + TimeUnit.NANOSECONDS.toMillis(p99) + " ms");
+        else if(this.limit < this.maxLimit)
+        {
+            this.limit++;
+            LoggerFactory.getLogger(ConcurrencyLimiter.class).debug("Raising limit to {} commands in flight", this.limit);
+        }
+    }
+
+    /**
+     * Frees the slots of commands lost with a failed connection and backs off.
+     *
+     * @param commands Number of commands in flight on the connection
+     */
+    public synchronized void releaseFailed(final int commands)
+    {
+        this.inFlight -= commands;
+        this.notifyAll();
+        if(this.adaptive)
+            this.backOff(ConcurrencyLimiter.THROTTLE_BACKOFF, "failed connection");
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return Commands in flight allowed
+     */
+    public synchronized int getLimit()
+    {
+        return this.limit;
+    }
+
+    /**
+     * Cuts the limit, unless it was cut recently, and starts a new latency window.
+     *
+     * @param factor Factor to cut the limit with
+     * @param reason Description of the cause for logging
+     */
+    private void backOff(final double factor, final String reason)
+    {
+        final long now = System.nanoTime();
+        if(now - this.lastBackoff < Math.max(ConcurrencyLimiter.MIN_COOLDOWN, 2 * this.baseline))
+            return;
+        this.lastBackoff = now;
+        this.sampleCount = 0;
+        final int newLimit = Math.max(1, (int) (this.limit * factor));
+        if(newLimit != this.limit)
+            LoggerFactory.getLogger(ConcurrencyLimiter.class).info("Lowering limit from {} to {} commands in flight due to {}", new Object[]
+                    {
+                        this.limit, newLimit, reason
+                    });
+        this.limit = newLimit;
+    }
+}
@@ -0,0 +1,302 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.enterprisedt.net.ftp.FTPException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the problems of the current fix run instead of showing a dialog for each of them, so unattended runs never
+ * block. Up to a maximum number of entries are kept in memory and written to the report file, one tab separated line
+ * with reply code, path and message per entry; further ones are only counted by reply code. The report file is only
+ * created with the first problem and shown once after the run.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class ErrorReport
+{
+    /**
+     * Reply code of entries without server reply.
+     */
+    public static final String NO_REPLY = "-";
+
+    /**
+     * A single problem of a run.
+     */
+    public static final class Entry
+    {
+        /**
+         * Absolute remote or local path of file or directory.
+         */
+        private final String path;
+
+        /**
+         * Reply code of server or {@link ErrorReport#NO_REPLY}.
+         */
+        private final String replyCode;
+
+        /**
+         * Description of problem.
+         */
+        private final String message;
+
+        /**
+         * Creates an entry.
+         *
+         * @param path Absolute remote or local path of file or directory
+         * @param replyCode Reply code of server or {@link ErrorReport#NO_REPLY}
+         * @param message Description of problem
+         */
+        private Entry(final String path, final String replyCode, final String message)
+        {
+            this.path = path;
+            this.replyCode = replyCode;
+            this.message = message;
+        }
+
+        /**
+         * Returns the path.
+         *
+         * @return Absolute remote or local path of file or directory
+         */
+        public String getPath()
+        {
+            return this.path;
+        }
+
+        /**
+         * Returns the reply code.
+         *
+         * @return Reply code of server or {@link ErrorReport#NO_REPLY}
+         */
+        public String getReplyCode()
+        {
+            return this.replyCode;
+        }
+
+        /**
+         * Returns the description.
+         *
+         * @return Description of problem
+         */
+        public String getMessage()
+        {
+            return this.message;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return this.replyCode + " " + this.path + ": " + this.message;
+        }
+    }
+
+    /**
+     * Report file on disk.
+     */
+    private final File reportFile;
+
+    /**
+     * Maximum number of kept entries.
+     */
+    private final int maxEntries;
+
+    /**
+     * Kept entries in reporting order.
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Number of all entries by reply code.
+     */
+    private final Map<String, Integer> counts = new TreeMap<String, Integer>();
+
+    /**
+     * Number of all entries.
+     */
+    private int total;
+
+    /**
+     * Writer to append lines or {@code null} if not opened yet or closed.
+     */
+    private Writer writer;
+
+    /**
+     * State if the report file couldn't be written during the current run, so opening it isn't tried again.
+     */
+    private boolean writeFailed;
+
+    /**
+     * Creates a report for the stated file.
+     *
+     * @param reportFile Report file to write
+     * @param maxEntries Maximum number of kept entries
+     */
+    public ErrorReport(final File reportFile, final int maxEntries)
+    {
+        this.reportFile = reportFile;
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    /**
+     * Starts a new report, dropping the one of the last run.
+     */
+    public synchronized void start()
+    {
+        if(this.writer != null)
+            this.closeWriter();
+        this.entries.clear();
+        this.counts.clear();
+        this.total = 0;
+        this.writeFailed = false;
+        if(this.reportFile.exists() && !this.reportFile.delete())
+            LoggerFactory.getLogger(ErrorReport.class).debug("Can't delete error report of last run {}", this.reportFile);
+    }
+
+    /**
+     * Adds a problem with a server reply.
+     *
+     * @param path Absolute remote or local path of file or directory
+     * @param replyCode Reply code of server or {@link #NO_REPLY}
+     * @param message Description of problem
+     */
+    public synchronized void add(final String path, final String replyCode, final String message)
+    {
+        this.total++;
+        final Integer count = this.counts.get(replyCode);
+        this.counts.put(replyCode, count == null ? 1 : count + 1);
+        if(this.entries.size() >= this.maxEntries)
+            return;
+        final Entry entry = new Entry(path, replyCode, message);
+        this.entries.add(entry);
+        this.write(replyCode + "\t" + path + "\t" + message.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ') + "\n");
+    }
+
+    /**
+     * Adds a problem reported by an error, taking the reply code from its cause if sent by the server.
+     *
+     * @param path Absolute remote or local path of file or directory
+     * @param e Error of problem
+     */
+    public void add(final String path, final JFixError e)
+    {
+        final Throwable cause = e.getCause();
+        final String replyCode = cause instanceof FTPException && ((FTPException) cause).getReplyCode() > 0 ? String.valueOf(((FTPException) cause).getReplyCode()) : ErrorReport.NO_REPLY;
+        if(e.getLogMessage() == null)
+            this.add(path, replyCode, String.valueOf(e.getMessage()));
+        else
+            this.add(path, replyCode, e.getMessage() == null ? e.getLogMessage() : e.getLogMessage() + " " + e.getMessage());
+    }
+
+    /**
+     * Finishes the report, noting the number of entries not kept.
+     */
+    public synchronized void close()
+    {
+        if(this.total > this.entries.size())
+            this.write("# " + (this.total - this.entries.size()) + " more not listed\n");
+        if(this.writer != null)
+            this.closeWriter();
+        if(this.total > 0)
+            LoggerFactory.getLogger(ErrorReport.class).info("{} problem(s) during run {}, see {}", new Object[]
+                    {
+                        this.total, this.counts, this.reportFile
+                    });
+    }
+
+    /**
+     * Returns the number of all problems.
+     *
+     * @return Reported problems
+     */
+    public synchronized int getTotal()
+    {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of all problems by reply code.
+     *
+     * @return Reported problems by reply code or {@link #NO_REPLY}
+     */
+    public synchronized Map<String, Integer> getCounts()
+    {
+        return new TreeMap<String, Integer>(this.counts);
+    }
+
+    /**
+     * Returns the kept problems.
+     *
+     * @return First reported problems
+     */
+    public synchronized List<Entry> getEntries()
+    {
+        return new ArrayList<Entry>(this.entries);
+    }
+
+    /**
+     * Returns the report file.
+     *
+     * @return Report file on disk
+     */
+    public File getReportFile()
+    {
+        return this.reportFile;
+    }
+
+    /**
+     * Writes a line to the report file, creating it first if needed. After a failure, nothing more is written during
+     * the current run.
+     *
+     * @param line Line to write
+     */
+    private void write(final String line)
+    {
+        if(this.writeFailed)
+            return;
+        try
+        {
+            if(this.writer == null)
+                this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.reportFile), "UTF-8"));
+            this.writer.write(line);
+        }
+        catch(final IOException e)
+        {
+            new JFixError("Cannot write error report!", e).warn(ErrorReport.class, false);
+            this.writeFailed = true;
+            if(this.writer != null)
+                this.closeWriter();
+        }
+    }
+
+    /**
+     * Closes the writer, ignoring failures.
+     */
+    private void closeWriter()
+    {
+        try
+        {
+            this.writer.close();
+        }
+        catch(final IOException e)
+        {
+            LoggerFactory.getLogger(ErrorReport.class).debug("Closing error report failed", e);
+        }
+        this.writer = null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.modules.util.LocalFile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects files of a run whose fix failed temporarily, either with a transient negative reply or after all reconnects
+ * for their batch were used up. Instead of stopping the run, they are retried once in a final pass, grouped by the job
+ * they belong to.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FailureQueue
+{
+    /**
+     * Queued files by their jobs in queuing order.
+     */
+    private final Map<FixJob, List<LocalFile>> failures = new LinkedHashMap<FixJob, List<LocalFile>>();
+
+    /**
+     * Number of queued files.
+     */
+    private int size;
+
+    /**
+     * Queues a file for the final retry pass.
+     *
+     * @param job Job of file
+     * @param file File to retry
+     */
+    public synchronized void add(final FixJob job, final LocalFile file)
+    {
+        List<LocalFile> files = this.failures.get(job);
+        if(files == null)
+            this.failures.put(job, files = new ArrayList<LocalFile>());
+        files.add(file);
+        this.size++;
+    }
+
+    /**
+     * Queues files of a job for the final retry pass.
+     *
+     * @param job Job of files
+     * @param files Files to retry
+     */
+    public synchronized void addAll(final FixJob job, final List<LocalFile> files)
+    {
+        for(final LocalFile curFile : files)
+            this.add(job, curFile);
+    }
+
+    /**
+     * Returns if files of the stated job are queued.
+     *
+     * @param job Job to check
+     * @return Job has queued files
+     */
+    public synchronized boolean contains(final FixJob job)
+    {
+        return this.failures.containsKey(job);
+    }
+
+    /**
+     * Returns and removes all queued files.
+     *
+     * @return Queued files by their jobs
+     */
+    public synchronized Map<FixJob, List<LocalFile>> drain()
+    {
+        final Map<FixJob, List<LocalFile>> drained = new LinkedHashMap<FixJob, List<LocalFile>>(this.failures);
+        this.failures.clear();
+        this.size = 0;
+        return drained;
+    }
+
+    /**
+     * Returns the number of queued files.
+     *
+     * @return Queued files
+     */
+    public synchronized int size()
+    {
+        return this.size;
+    }
+}
@@ -0,0 +1,240 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checkpoint of the current fix run to resume it after an interruption. The checkpoint file starts with a line
+ * identifying the run, followed by one line per local directory whose files ({@code F}) or whole subtree ({@code T})
+ * are done. Lines are written periodically and the file is deleted once the run finished.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FixCheckpoint
+{
+    /**
+     * Checkpoint file on disk.
+     */
+    private final File checkpointFile;
+
+    /**
+     * Minimum milliseconds between two flushes.
+     */
+    private final long flushInterval;
+
+    /**
+     * Directories with all files done.
+     */
+    private final Set<String> filesDone = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Directories with whole subtree done.
+     */
+    private final Set<String> subtreesDone = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Writer to append lines or {@code null} if closed.
+     */
+    private Writer writer;
+
+    /**
+     * Time of last flush.
+     */
+    private long lastFlush;
+
+    /**
+     * Creates a checkpoint for the stated file.
+     *
+     * @param checkpointFile Checkpoint file to read and write
+     * @param flushInterval Minimum milliseconds between two flushes
+     */
+    public FixCheckpoint(final File checkpointFile, final long flushInterval)
+    {
+        this.checkpointFile = checkpointFile;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Returns if a checkpoint of an interrupted run with the stated identifier exists.
+     *
+     * @param runId Identifier of run
+     * @return Resumable state
+     */
+    public boolean isResumable(final String runId)
+    {
+        if(!this.checkpointFile.exists())
+            return false;
+        try
+        {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.checkpointFile), "UTF-8"));
+            try
+            {
+                return runId.equals(reader.readLine());
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch(final IOException e)
+        {
+            new JFixError("Cannot read checkpoint file!", e).warn(FixCheckpoint.class, false);
+        }
+        return false;
+    }
+
+    /**
+     * Starts checkpointing a run, optionally loading the progress of the interrupted one with the same identifier.
+     *
+     * @param runId Identifier of run
+     * @param resume Continue the interrupted run
+     * @throws JFixError If checkpoint file can't be accessed
+     */
+    public synchronized void start(final String runId, final boolean resume) throws JFixError
+    {
+        this.filesDone.clear();
+        this.subtreesDone.clear();
+        final boolean append = resume && this.isResumable(runId);
+        if(append)
+            try
+            {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.checkpointFile), "UTF-8"));
+                try
+                {
+                    String curLine;
+                    reader.readLine(); //Skip run identifier
+                    while((curLine = reader.readLine()) != null)
+                        if(curLine.startsWith("F "))
+                            this.filesDone.add(curLine.substring(2));
+                        else if(curLine.startsWith("T "))
+                            this.subtreesDone.add(curLine.substring(2));
+                }
+                finally
+                {
+                    reader.close();
+                }
+                LoggerFactory.getLogger(FixCheckpoint.class).info("Resuming run with {} finished directories and {} finished subtrees", this.filesDone.size(), this.subtreesDone.size());
+            }
+            catch(final IOException e)
+            {
+                throw new JFixError("Cannot read checkpoint file!", e);
+            }
+        try
+        {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.checkpointFile, append), "UTF-8"));
+            if(!append)
+                this.writer.write(runId + "\n");
+            this.writer.flush();
+            this.lastFlush = System.currentTimeMillis();
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError("Cannot write checkpoint file!", e);
+        }
+    }
+
+    /**
+     * Returns if all files of the stated directory were done in the resumed run.
+     *
+     * @param localDir Local directory
+     * @return Files done state
+     */
+    public boolean isFilesDone(final File localDir)
+    {
+        return this.filesDone.contains(localDir.getPath());
+    }
+
+    /**
+     * Returns if the whole subtree of the stated directory was done in the resumed run.
+     *
+     * @param localDir Local directory
+     * @return Subtree done state
+     */
+    public boolean isSubtreeDone(final File localDir)
+    {
+        return this.subtreesDone.contains(localDir.getPath());
+    }
+
+    /**
+     * Records that all files of the stated directory are done.
+     *
+     * @param localDir Local directory
+     */
+    public void setFilesDone(final File localDir)
+    {
+        if(this.filesDone.add(localDir.getPath()))
+            this.write("F " + localDir.getPath());
+    }
+
+    /**
+     * Records that the whole subtree of the stated directory is done.
+     *
+     * @param localDir Local directory
+     */
+    public void setSubtreeDone(final File localDir)
+    {
+        if(this.subtreesDone.add(localDir.getPath()))
+            this.write("T " + localDir.getPath());
+    }
+
+    /**
+     * Flushes and closes the checkpoint. If the run is complete, the checkpoint file is deleted.
+     *
+     * @param complete Run finished without interruption
+     */
+    public synchronized void close(final boolean complete)
+    {
+        if(this.writer != null)
+            try
+            {
+                this.writer.close();
+            }
+            catch(final IOException e)
+            {
+                new JFixError("Cannot close checkpoint file!", e).warn(FixCheckpoint.class, false);
+            }
+        this.writer = null;
+        if(complete && !this.checkpointFile.delete())
+            LoggerFactory.getLogger(FixCheckpoint.class).warn("Cannot delete checkpoint file {}!", this.checkpointFile);
+    }
+
+    /**
+     * Appends a line and flushes it, if the last flush is long enough ago.
+     *
+     * @param line Line to append
+     */
+    private synchronized void write(final String line)
+    {
+        if(this.writer == null)
+            return;
+        try
+        {
+            this.writer.write(line + "\n");
+            if(System.currentTimeMillis() - this.lastFlush >= this.flushInterval)
+            {
+                this.writer.flush();
+                this.lastFlush = System.currentTimeMillis();
+            }
+        }
+        catch(final IOException e)
+        {
+            new JFixError("Cannot write checkpoint file, checkpoints disabled for this run!", e).warn(FixCheckpoint.class, false);
+            this.close(false);
+        }
+    }
+}
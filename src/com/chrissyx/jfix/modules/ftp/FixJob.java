@@ -0,0 +1,193 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.modules.util.LocalFile;
+import com.chrissyx.jfix.modules.util.LocalListing;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit of work for a fix run: either a local directory to expand or a batch of files inside one directory.
+ * Directory jobs count their unfinished batches and child jobs to tell when their files or whole subtree are done.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FixJob
+{
+    /**
+     * Local directory of this job.
+     */
+    private final File localDir;
+
+    /**
+     * Absolute remote directory matching the local one, with trailing slash.
+     */
+    private final String remoteDir;
+
+    /**
+     * Files to fix or {@code null} to expand the directory.
+     */
+    private final LocalFile[] files;
+
+    /**
+     * Already read listing of the local directory or {@code null} to scan it.
+     */
+    private final LocalListing listing;
+
+    /**
+     * Parent directory job for directories, owning directory job for batches or {@code null} for the start directory.
+     */
+    private final FixJob parent;
+
+    /**
+     * Unfinished batches including the expansion itself, only used for directory jobs.
+     */
+    private final AtomicInteger pendingBatches;
+
+    /**
+     * Unfinished batches and subdirectories including the expansion itself, only used for directory jobs.
+     */
+    private final AtomicInteger pendingChildren;
+
+    /**
+     * Creates a job to expand the stated directory.
+     *
+     * @param localDir Local directory to expand
+     * @param remoteDir Matching absolute remote directory
+     * @param parent Job of parent directory or {@code null} for the start directory
+     */
+    public FixJob(final File localDir, final String remoteDir, final FixJob parent)
+    {
+        this(localDir, remoteDir, parent, null);
+    }
+
+    /**
+     * Creates a job to expand the stated directory with an already read listing.
+     *
+     * @param localDir Local directory to expand
+     * @param remoteDir Matching absolute remote directory
+     * @param parent Job of parent directory or {@code null} for the start directory
+     * @param listing Listing of local directory or {@code null} to scan it
+     */
+    public FixJob(final File localDir, final String remoteDir, final FixJob parent, final LocalListing listing)
+    {
+        this.localDir = localDir;
+        this.remoteDir = remoteDir;
+        this.files = null;
+        this.listing = listing;
+        this.parent = parent;
+        this.pendingBatches = new AtomicInteger(1);
+        this.pendingChildren = new AtomicInteger(1);
+        if(parent != null)
+            parent.pendingChildren.incrementAndGet();
+    }
+
+    /**
+     * Creates a job to fix the stated files of a directory.
+     *
+     * @param dirJob Job of directory containing the files
+     * @param files Files to fix with their scanned attributes
+     */
+    public FixJob(final FixJob dirJob, final LocalFile[] files)
+    {
+        this.localDir = dirJob.localDir;
+        this.remoteDir = dirJob.remoteDir;
+        this.files = files;
+        this.listing = null;
+        this.parent = dirJob;
+        this.pendingBatches = null;
+        this.pendingChildren = null;
+        dirJob.pendingBatches.incrementAndGet();
+        dirJob.pendingChildren.incrementAndGet();
+    }
+
+    /**
+     * Marks one batch (or the expansion) of this directory job as finished.
+     *
+     * @return All files of this directory are done
+     */
+    public boolean finishBatch()
+    {
+        return this.pendingBatches.decrementAndGet() == 0;
+    }
+
+    /**
+     * Marks one child job (or the expansion) of this directory job as finished.
+     *
+     * @return The whole subtree of this directory is done
+     */
+    public boolean finishChild()
+    {
+        return this.pendingChildren.decrementAndGet() == 0;
+    }
+
+    /**
+     * Returns the files to fix.
+     *
+     * @return Files of this batch or {@code null} for a directory job
+     */
+    public LocalFile[] getFiles()
+    {
+        return this.files;
+    }
+
+    /**
+     * Returns the already read listing of the local directory.
+     *
+     * @return Local listing or {@code null} to scan the directory
+     */
+    public LocalListing getListing()
+    {
+        return this.listing;
+    }
+
+    /**
+     * Returns the local directory.
+     *
+     * @return Local directory
+     */
+    public File getLocalDir()
+    {
+        return this.localDir;
+    }
+
+    /**
+     * Returns the parent job.
+     *
+     * @return Parent directory job, owning directory job for batches or {@code null} for the start directory
+     */
+    public FixJob getParent()
+    {
+        return this.parent;
+    }
+
+    /**
+     * Returns the remote directory.
+     *
+     * @return Absolute remote directory with trailing slash
+     */
+    public String getRemoteDir()
+    {
+        return this.remoteDir;
+    }
+
+    /**
+     * Returns if this job expands a directory.
+     *
+     * @return Directory job state
+     */
+    public boolean isDirectory()
+    {
+        return this.files == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.isDirectory() ? this.remoteDir : this.remoteDir + " (" + this.files.length + " files)";
+    }
+}
@@ -0,0 +1,256 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.modules.util.LocalFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of successfully fixed files. Each record stores the remote path, the applied filetime and size
+ * plus filetime of the local file at that moment. Files unchanged since their last record don't need to be fixed again.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FixJournal
+{
+    /**
+     * State of a fixed file.
+     */
+    private static final class Entry
+    {
+        /**
+         * Applied remote filetime.
+         */
+        private final long appliedTime;
+
+        /**
+         * Size of local file.
+         */
+        private final long localSize;
+
+        /**
+         * Filetime of local file.
+         */
+        private final long localTime;
+
+        /**
+         * Creates a journal entry.
+         *
+         * @param appliedTime Applied remote filetime
+         * @param localSize Size of local file
+         * @param localTime Filetime of local file
+         */
+        private Entry(final long appliedTime, final long localSize, final long localTime)
+        {
+            this.appliedTime = appliedTime;
+            this.localSize = localSize;
+            this.localTime = localTime;
+        }
+    }
+
+    /**
+     * Journal file on disk.
+     */
+    private final File journalFile;
+
+    /**
+     * Latest entries by remote path.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Stream to append records or {@code null} if closed.
+     */
+    private DataOutputStream outputStream;
+
+    /**
+     * Creates a journal for the stated file.
+     *
+     * @param journalFile Journal file to read and append to
+     */
+    public FixJournal(final File journalFile)
+    {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Loads all records and opens the journal for appending. The file is rewritten without obsolete records if they make
+     * up most of it or the last record is incomplete, by replacing it with a compacted copy so a crash never loses it.
+     *
+     * @throws JFixError If journal file can't be accessed
+     */
+    public synchronized void open() throws JFixError
+    {
+        if(this.outputStream != null)
+            return;
+        LoggerFactory.getLogger(FixJournal.class).debug("Loading journal {}...", this.journalFile);
+        this.entries.clear();
+        int records = 0;
+        boolean compact = false;
+        if(this.journalFile.exists())
+            try
+            {
+                final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(this.journalFile)));
+                try
+                {
+                    while(inputStream.available() > 0)
+                    {
+                        final String remotePath = inputStream.readUTF();
+                        this.entries.put(remotePath, new Entry(inputStream.readLong(), inputStream.readLong(), inputStream.readLong()));
+                        records++;
+                    }
+                }
+                catch(final EOFException e)
+                {
+                    LoggerFactory.getLogger(FixJournal.class).warn("Dropping incomplete last journal record of an aborted run");
+                    compact = true;
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+            catch(final IOException e)
+            {
+                throw new JFixError("Cannot read journal file!", e);
+            }
+        LoggerFactory.getLogger(FixJournal.class).info("Loaded {} journal entries", this.entries.size());
+        try
+        {
+            if(compact || records > 1000 && records > 2 * this.entries.size())
+                this.compact(records);
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.journalFile, true)));
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError("Cannot write journal file!", e);
+        }
+    }
+
+    /**
+     * Returns if the stated local file is unchanged since it was fixed the last time.
+     *
+     * @param remotePath Absolute remote path of file
+     * @param localFile Local file with its scanned attributes
+     * @return Unchanged state, {@code false} if never fixed
+     */
+    public boolean isUnchanged(final String remotePath, final LocalFile localFile)
+    {
+        final Entry entry = this.entries.get(remotePath);
+        if(entry == null)
+            return false;
+        final long localTime = localFile.getLastModified();
+        return entry.localTime == localTime && entry.appliedTime == localTime && entry.localSize == localFile.getSize();
+    }
+
+    /**
+     * Records a successfully fixed file.
+     *
+     * @param remotePath Absolute remote path of file
+     * @param appliedTime Applied filetime
+     * @param localFile Local file with its scanned attributes
+     */
+    public synchronized void record(final String remotePath, final long appliedTime, final LocalFile localFile)
+    {
+        final Entry entry = new Entry(appliedTime, localFile.getSize(), localFile.getLastModified());
+        this.entries.put(remotePath, entry);
+        if(this.outputStream != null)
+            try
+            {
+                this.write(this.outputStream, remotePath, entry);
+            }
+            catch(final IOException e)
+            {
+                new JFixError("Cannot write journal file, journal disabled for this run!", e).warn(FixJournal.class, false);
+                this.close();
+            }
+    }
+
+    /**
+     * Flushes and closes the journal file.
+     */
+    public synchronized void close()
+    {
+        if(this.outputStream == null)
+            return;
+        try
+        {
+            this.outputStream.close();
+        }
+        catch(final IOException e)
+        {
+            new JFixError("Cannot close journal file!", e).warn(FixJournal.class, false);
+        }
+        this.outputStream = null;
+    }
+
+    /**
+     * Writes the latest entries to a temporary file and moves it over the journal file.
+     *
+     * @param records Number of records in the journal file
+     * @throws IOException If writing or moving failed
+     */
+    private void compact(final int records) throws IOException
+    {
+        LoggerFactory.getLogger(FixJournal.class).debug("Compacting journal from {} records...", records);
+        final Path tempFile = new File(this.journalFile.getPath() + ".tmp").toPath();
+        try
+        {
+            final DataOutputStream tempStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+            try
+            {
+                for(final Map.Entry<String, Entry> curEntry : this.entries.entrySet())
+                    this.write(tempStream, curEntry.getKey(), curEntry.getValue());
+            }
+            finally
+            {
+                tempStream.close();
+            }
+            try
+            {
+                Files.move(tempFile, this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(final AtomicMoveNotSupportedException e)
+            {
+                Files.move(tempFile, this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Appends a single record.
+     *
+     * @param outputStream Stream to append record to
+     * @param remotePath Absolute remote path of file
+     * @param entry State of fixed file
+     * @throws IOException If writing failed
+     */
+    private void write(final DataOutputStream outputStream, final String remotePath, final Entry entry) throws IOException
+    {
+        outputStream.writeUTF(remotePath);
+        outputStream.writeLong(entry.appliedTime);
+        outputStream.writeLong(entry.localSize);
+        outputStream.writeLong(entry.localTime);
+    }
+}
@@ -0,0 +1,482 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.modules.jfr.FlightRecorder;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of all fix runs since start or last reset. Each sent command is paired with the next reply on its connection
+ * and its latency recorded lock-free in a histogram per command verb and reply code. Histograms use eight linear
+ * sub-buckets per power of two microseconds, so percentiles are accurate to 12.5 percent in constant memory.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FixMetrics implements FixMetricsMXBean
+{
+    /**
+     * Prefix of sent commands passed to event listeners.
+     */
+    private static final String COMMAND_PREFIX = "---> ";
+
+    /**
+     * Latency histogram of a command verb and reply code.
+     */
+    private static final class Histogram
+    {
+        /**
+         * Number of buckets, covering up to 2<sup>40</sup> microseconds.
+         */
+        private static final int BUCKETS = 8 * 39;
+
+        /**
+         * Counts of latencies per bucket.
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(Histogram.BUCKETS);
+
+        /**
+         * Number of latencies.
+         */
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Sum of latencies in nanoseconds.
+         */
+        private final AtomicLong sum = new AtomicLong();
+
+        /**
+         * Records a latency.
+         *
+         * @param nanos Latency in nanoseconds
+         */
+        private void record(final long nanos)
+        {
+            final long micros = Math.max(0, nanos / 1000L);
+            final int index;
+            if(micros < 8)
+                index = (int) micros;
+            else
+            {
+                final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+                index = Math.min(Histogram.BUCKETS - 1, (exponent - 2) * 8 + (int) ((micros >>> (exponent - 3)) & 7));
+            }
+            this.buckets.incrementAndGet(index);
+            this.count.incrementAndGet();
+            this.sum.addAndGet(nanos);
+        }
+
+        /**
+         * Returns the mean latency.
+         *
+         * @return Mean milliseconds or 0 if nothing recorded
+         */
+        private double getMean()
+        {
+            final long curCount = this.count.get();
+            return curCount == 0 ? 0 : this.sum.get() / 1e6 / curCount;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing stated percentile.
+         *
+         * @param percentile Percentile from 0 to 1
+         * @return Latency in milliseconds or 0 if nothing recorded
+         */
+        private double getPercentile(final double percentile)
+        {
+            final long rank = (long) Math.ceil(percentile * this.count.get());
+            long seen = 0;
+            for(int i = 0; i < Histogram.BUCKETS; i++)
+                if((seen += this.buckets.get(i)) >= rank && seen > 0)
+                    return (i < 8 ? i + 1 : (long) (9 + i % 8) << (i / 8 - 1)) / 1e3;
+            return 0;
+        }
+    }
+
+    /**
+     * Verb, send time and flight recorder event of a command waiting for its reply.
+     */
+    private static final class PendingCommand
+    {
+        /**
+         * Verb of command.
+         */
+        private final String verb;
+
+        /**
+         * Value of {@link System#nanoTime()} when sent.
+         */
+        private final long sendTime;
+
+        /**
+         * Handle of flight recorder event or {@code null} if not recorded.
+         */
+        private final Object flightEvent;
+
+        /**
+         * Creates a pending command.
+         *
+         * @param verb Verb of command
+         * @param sendTime Value of {@link System#nanoTime()} when sent
+         * @param flightEvent Handle of flight recorder event or {@code null}
+         */
+        private PendingCommand(final String verb, final long sendTime, final Object flightEvent)
+        {
+            this.verb = verb;
+            this.sendTime = sendTime;
+            this.flightEvent = flightEvent;
+        }
+    }
+
+    /**
+     * Histograms by command verb and reply code.
+     */
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * Commands waiting for their replies by connection ID.
+     */
+    private final ConcurrentHashMap<String, Queue<PendingCommand>> pending = new ConcurrentHashMap<String, Queue<PendingCommand>>();
+
+    /**
+     * Number of fixed files.
+     */
+    private final AtomicLong filesFixed = new AtomicLong();
+
+    /**
+     * Number of skipped files.
+     */
+    private final AtomicLong filesSkipped = new AtomicLong();
+
+    /**
+     * Number of failed files.
+     */
+    private final AtomicLong filesFailed = new AtomicLong();
+
+    /**
+     * Number of files queued for the final retry pass.
+     */
+    private final AtomicLong filesRetried = new AtomicLong();
+
+    /**
+     * Number of reconnected sessions.
+     */
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * Number of walked directories.
+     */
+    private final AtomicLong directoriesWalked = new AtomicLong();
+
+    /**
+     * Number of listed bytes.
+     */
+    private final AtomicLong bytesListed = new AtomicLong();
+
+    /**
+     * Remembers a sent command to pair it with its reply.
+     *
+     * @param connId Connection ID of the session
+     * @param command Sent command
+     */
+    public void commandSent(final String connId, final String command)
+    {
+        Queue<PendingCommand> commands = this.pending.get(connId);
+        if(commands == null)
+        {
+            final Queue<PendingCommand> newCommands = new ConcurrentLinkedQueue<PendingCommand>();
+            commands = this.pending.putIfAbsent(connId, newCommands);
+            if(commands == null)
+                commands = newCommands;
+        }
+        commands.add(new PendingCommand(this.getVerb(command), System.nanoTime(), FlightRecorder.beginCommand(command.length())));
+    }
+
+    /**
+     * Records the latency of the oldest command waiting for a reply on the connection. A greeting drops all waiting
+     * commands, as they were sent over a previous connection.
+     *
+     * @param connId Connection ID of the session
+     * @param reply Received reply
+     */
+    public void replyReceived(final String connId, final String reply)
+    {
+        final long receiveTime = System.nanoTime();
+        final Queue<PendingCommand> commands = this.pending.get(connId);
+        if(commands == null)
+            return;
+        final String replyCode = reply.length() < 3 ? reply : reply.substring(0, 3);
+        if(replyCode.equals("220"))
+        {
+            commands.clear();
+            return;
+        }
+        final PendingCommand command = commands.poll();
+        if(command == null)
+            return;
+        final String key = command.verb + " " + replyCode;
+        Histogram histogram = this.histograms.get(key);
+        if(histogram == null)
+        {
+            final Histogram newHistogram = new Histogram();
+            histogram = this.histograms.putIfAbsent(key, newHistogram);
+            if(histogram == null)
+                histogram = newHistogram;
+        }
+        histogram.record(receiveTime - command.sendTime);
+        FlightRecorder.endCommand(command.flightEvent, command.verb, replyCode, reply.length());
+    }
+
+    /**
+     * Adds a file with an accepted fix command.
+     */
+    public void addFixed()
+    {
+        this.filesFixed.incrementAndGet();
+    }
+
+    /**
+     * Adds files not needing a fix command.
+     *
+     * @param count Number of skipped files
+     */
+    public void addSkipped(final long count)
+    {
+        this.filesSkipped.addAndGet(count);
+    }
+
+    /**
+     * Adds a file with a rejected fix command.
+     */
+    public void addFailed()
+    {
+        this.filesFailed.incrementAndGet();
+    }
+
+    /**
+     * Adds a file queued for the final retry pass.
+     */
+    public void addRetried()
+    {
+        this.filesRetried.incrementAndGet();
+    }
+
+    /**
+     * Adds a reconnected session.
+     */
+    public void addReconnect()
+    {
+        this.reconnects.incrementAndGet();
+    }
+
+    /**
+     * Adds an expanded directory.
+     */
+    public void addDirectory()
+    {
+        this.directoriesWalked.incrementAndGet();
+    }
+
+    /**
+     * Adds the size of a received remote listing.
+     *
+     * @param bytes Listed bytes
+     */
+    public void addListed(final long bytes)
+    {
+        this.bytesListed.addAndGet(bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFilesFixed()
+    {
+        return this.filesFixed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFilesSkipped()
+    {
+        return this.filesSkipped.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFilesFailed()
+    {
+        return this.filesFailed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFilesRetried()
+    {
+        return this.filesRetried.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getReconnects()
+    {
+        return this.reconnects.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDirectoriesWalked()
+    {
+        return this.directoriesWalked.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesListed()
+    {
+        return this.bytesListed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getCommandCounts()
+    {
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+        for(final Map.Entry<String, Histogram> curHistogram : this.histograms.entrySet())
+            counts.put(curHistogram.getKey(), curHistogram.getValue().count.get());
+        return counts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Double> getMeanLatencies()
+    {
+        final Map<String, Double> latencies = new TreeMap<String, Double>();
+        for(final Map.Entry<String, Histogram> curHistogram : this.histograms.entrySet())
+            latencies.put(curHistogram.getKey(), curHistogram.getValue().getMean());
+        return latencies;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Double> getP50Latencies()
+    {
+        return this.getPercentiles(0.5);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Double> getP99Latencies()
+    {
+        return this.getPercentiles(0.99);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getJson()
+    {
+        final StringBuilder json = new StringBuilder("{\"filesFixed\":").append(this.filesFixed.get())
+                .append(",\"filesSkipped\":").append(this.filesSkipped.get())
+                .append(",\"filesFailed\":").append(this.filesFailed.get())
+                .append(",\"filesRetried\":").append(this.filesRetried.get())
+                .append(",\"reconnects\":").append(this.reconnects.get())
+                .append(",\"directoriesWalked\":").append(this.directoriesWalked.get())
+                .append(",\"bytesListed\":").append(this.bytesListed.get())
+                .append(",\"commands\":{");
+        boolean first = true;
+        for(final Map.Entry<String, Histogram> curHistogram : new TreeMap<String, Histogram>(this.histograms).entrySet())
+        {
+            if(!first)
+                json.append(',');
+            first = false;
+            json.append('"');
+            for(final char curChar : curHistogram.getKey().toCharArray())
+                json.append(curChar == '"' || curChar == '\\' ? '_' : curChar < 0x20 ? ' ' : curChar);
+            json.append("\":{\"count\":").append(curHistogram.getValue().count.get())
+                    .append(",\"meanMs\":").append(String.format(Locale.ROOT, "%.3f", curHistogram.getValue().getMean()))
+                    .append(",\"p50Ms\":").append(String.format(Locale.ROOT, "%.3f", curHistogram.getValue().getPercentile(0.5)))
+                    .append(",\"p90Ms\":").append(String.format(Locale.ROOT, "%.3f", curHistogram.getValue().getPercentile(0.9)))
+                    .append(",\"p99Ms\":").append(String.format(Locale.ROOT, "%.3f", curHistogram.getValue().getPercentile(0.99)))
+                    .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset()
+    {
+        this.histograms.clear();
+        this.filesFixed.set(0);
+        this.filesSkipped.set(0);
+        this.filesFailed.set(0);
+        this.filesRetried.set(0);
+        this.reconnects.set(0);
+        this.directoriesWalked.set(0);
+        this.bytesListed.set(0);
+    }
+
+    /**
+     * Returns a percentile of all histograms.
+     *
+     * @param percentile Percentile from 0 to 1
+     * @return Milliseconds by verb and reply code
+     */
+    private Map<String, Double> getPercentiles(final double percentile)
+    {
+        final Map<String, Double> latencies = new TreeMap<String, Double>();
+        for(final Map.Entry<String, Histogram> curHistogram : this.histograms.entrySet())
+            latencies.put(curHistogram.getKey(), curHistogram.getValue().getPercentile(percentile));
+        return latencies;
+    }
+
+    /**
+     * Returns the verb of a command, including the subcommand for {@code SITE}.
+     *
+     * @param command Sent command, as logged by edtFTPj with a leading {@code --->}
+     * @return Upper case verb, e.g. {@code MFMT} or {@code SITE UTIME}
+     */
+    private String getVerb(final String command)
+    {
+        final int start = command.startsWith(FixMetrics.COMMAND_PREFIX) ? FixMetrics.COMMAND_PREFIX.length() : 0;
+        int end = command.indexOf(' ', start);
+        if(end - start == 4 && command.regionMatches(true, start, "SITE", 0, 4))
+        {
+            final int subEnd = command.indexOf(' ', end + 1);
+            end = subEnd == -1 ? command.length() : subEnd;
+        }
+        return command.substring(start, end == -1 ? command.length() : end).toUpperCase(Locale.ENGLISH);
+    }
+}
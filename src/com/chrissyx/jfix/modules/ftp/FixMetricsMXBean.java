@@ -0,0 +1,102 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link FixMetrics}, registered as {@code com.chrissyx.jfix:type=FixMetrics}. Latencies are
+ * keyed by command verb and reply code, e.g. {@code MFMT 213}.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public interface FixMetricsMXBean
+{
+    /**
+     * Returns the number of files with accepted fix commands.
+     *
+     * @return Fixed files
+     */
+    long getFilesFixed();
+
+    /**
+     * Returns the number of files not needing a fix command.
+     *
+     * @return Skipped files
+     */
+    long getFilesSkipped();
+
+    /**
+     * Returns the number of files with rejected fix commands.
+     *
+     * @return Failed files
+     */
+    long getFilesFailed();
+
+    /**
+     * Returns the number of files queued for the final retry pass.
+     *
+     * @return Retried files
+     */
+    long getFilesRetried();
+
+    /**
+     * Returns the number of sessions reconnected after losing their connection.
+     *
+     * @return Reconnects
+     */
+    long getReconnects();
+
+    /**
+     * Returns the number of expanded directories.
+     *
+     * @return Walked directories
+     */
+    long getDirectoriesWalked();
+
+    /**
+     * Returns the number of bytes of received remote listings.
+     *
+     * @return Listed bytes
+     */
+    long getBytesListed();
+
+    /**
+     * Returns the number of commands with received replies.
+     *
+     * @return Commands by verb and reply code
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * Returns the mean latencies.
+     *
+     * @return Mean milliseconds by verb and reply code
+     */
+    Map<String, Double> getMeanLatencies();
+
+    /**
+     * Returns the median latencies.
+     *
+     * @return Median milliseconds by verb and reply code
+     */
+    Map<String, Double> getP50Latencies();
+
+    /**
+     * Returns the 99th percentile latencies.
+     *
+     * @return 99th percentile milliseconds by verb and reply code
+     */
+    Map<String, Double> getP99Latencies();
+
+    /**
+     * Returns all metrics as JSON object.
+     *
+     * @return JSON metrics
+     */
+    String getJson();
+
+    /**
+     * Sets all metrics back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,177 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a fix run, updated lock-free by all workers and polled by the GUI. A run can be cancelled through it;
+ * workers stop between two commands.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FixProgress
+{
+    /**
+     * Number of files to process or -1 if not counted yet.
+     */
+    private final AtomicLong filesTotal = new AtomicLong(-1);
+
+    /**
+     * Number of fixed or skipped files.
+     */
+    private final AtomicLong filesDone = new AtomicLong();
+
+    /**
+     * Number of commands with received replies.
+     */
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * Number of commands rejected by the server.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Summed round-trip times of all commands in nanoseconds.
+     */
+    private final AtomicLong rttNanos = new AtomicLong();
+
+    /**
+     * Start of run.
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Cancel request state.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Sets the number of files to process.
+     *
+     * @param total Counted files
+     */
+    public void setFilesTotal(final long total)
+    {
+        this.filesTotal.set(total);
+    }
+
+    /**
+     * Adds files which don't need a command.
+     *
+     * @param count Number of skipped files
+     */
+    public void addSkipped(final long count)
+    {
+        this.filesDone.addAndGet(count);
+    }
+
+    /**
+     * Adds a command with received reply for a file.
+     *
+     * @param rtt Round-trip time of command in nanoseconds
+     */
+    public void addCommand(final long rtt)
+    {
+        this.filesDone.incrementAndGet();
+        this.commands.incrementAndGet();
+        this.rttNanos.addAndGet(rtt);
+    }
+
+    /**
+     * Adds a command with received reply for a file queued for the final retry pass, which is not done yet.
+     *
+     * @param rtt Round-trip time of command in nanoseconds
+     */
+    public void addRetried(final long rtt)
+    {
+        this.commands.incrementAndGet();
+        this.rttNanos.addAndGet(rtt);
+    }
+
+    /**
+     * Adds a command rejected by the server.
+     */
+    public void addFailed()
+    {
+        this.failed.incrementAndGet();
+    }
+
+    /**
+     * Requests to stop the run.
+     */
+    public void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    /**
+     * Returns if the run was requested to stop.
+     *
+     * @return Cancel request state
+     */
+    public boolean isCancelled()
+    {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns the number of files to process.
+     *
+     * @return Counted files or -1 if not counted yet
+     */
+    public long getFilesTotal()
+    {
+        return this.filesTotal.get();
+    }
+
+    /**
+     * Returns the number of fixed or skipped files.
+     *
+     * @return Files done
+     */
+    public long getFilesDone()
+    {
+        return this.filesDone.get();
+    }
+
+    /**
+     * Returns the number of commands with received replies.
+     *
+     * @return Commands done
+     */
+    public long getCommands()
+    {
+        return this.commands.get();
+    }
+
+    /**
+     * Returns the number of commands rejected by the server.
+     *
+     * @return Failed commands
+     */
+    public long getFailed()
+    {
+        return this.failed.get();
+    }
+
+    /**
+     * Returns the summed round-trip times of all commands.
+     *
+     * @return Round-trip times in nanoseconds
+     */
+    public long getRttNanos()
+    {
+        return this.rttNanos.get();
+    }
+
+    /**
+     * Returns the start of the run.
+     *
+     * @return Start time in milliseconds
+     */
+    public long getStartTime()
+    {
+        return this.startTime;
+    }
+}
@@ -0,0 +1,212 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Work-stealing scheduler to spread fix jobs over several FTP sessions. Each session is served by its own worker
+ * thread with a local job deque; idle workers steal the oldest (usually biggest) jobs from the others.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FixScheduler
+{
+    /**
+     * Handles a single job with the session of the current worker.
+     */
+    public interface JobHandler
+    {
+        /**
+         * Processes the stated job. New jobs may be submitted to the scheduler with the given worker ID.
+         *
+         * @param workerId ID of current worker
+         * @param session Session of current worker
+         * @param job Job to process
+         * @throws JFixError If the job failed and the whole run has to be aborted
+         */
+        void process(final int workerId, final FtpSession session, final FixJob job) throws JFixError;
+    }
+
+    /**
+     * Sessions, one per worker.
+     */
+    private final List<FtpSession> sessions;
+
+    /**
+     * Job deques, one per worker.
+     */
+    private final List<LinkedBlockingDeque<FixJob>> deques;
+
+    /**
+     * Number of submitted but not yet finished jobs.
+     */
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+
+    /**
+     * Monitor for idle workers.
+     */
+    private final Object idleLock = new Object();
+
+    /**
+     * First error aborting the run.
+     */
+    private volatile JFixError error;
+
+    /**
+     * Creates a scheduler with one worker per stated session.
+     *
+     * @param sessions Connected sessions to use
+     */
+    public FixScheduler(final List<FtpSession> sessions)
+    {
+        this.sessions = sessions;
+        this.deques = new ArrayList<LinkedBlockingDeque<FixJob>>(sessions.size());
+        for(int i = 0; i < sessions.size(); i++)
+            this.deques.add(new LinkedBlockingDeque<FixJob>());
+    }
+
+    /**
+     * Submits a new job to the deque of the stated worker.
+     *
+     * @param workerId ID of worker to own the job
+     * @param job Job to add
+     */
+    public void submit(final int workerId, final FixJob job)
+    {
+        this.pendingJobs.incrementAndGet();
+        this.deques.get(workerId).offerFirst(job);
+        synchronized(this.idleLock)
+        {
+            this.idleLock.notifyAll();
+        }
+    }
+
+    /**
+     * Runs all workers with the stated handler until every job is done or one failed.
+     *
+     * @param jobHandler Handler to process the jobs
+     * @throws JFixError First error of a worker
+     */
+    public void run(final JobHandler jobHandler) throws JFixError
+    {
+        LoggerFactory.getLogger(FixScheduler.class).debug("Starting {} worker(s)...", this.sessions.size());
+        final Thread[] workers = new Thread[this.sessions.size()];
+        for(int i = 0; i < workers.length; i++)
+        {
+            final int workerId = i;
+            workers[i] = new Thread(new Runnable()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run()
+                {
+                    FixScheduler.this.work(workerId, jobHandler);
+                }
+            }, "JFix-Worker-" + i);
+            workers[i].start();
+        }
+        try
+        {
+            for(final Thread curWorker : workers)
+                curWorker.join();
+        }
+        catch(final InterruptedException e)
+        {
+            this.abort(new JFixError("Fix run interrupted!", e));
+            Thread.currentThread().interrupt();
+        }
+        if(this.error != null)
+            throw this.error;
+    }
+
+    /**
+     * Stops all workers after their current job.
+     *
+     * @param e Error causing the abort
+     */
+    private void abort(final JFixError e)
+    {
+        synchronized(this.idleLock)
+        {
+            if(this.error == null)
+                this.error = e;
+            this.idleLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the next job for the stated worker, stealing from others if needed.
+     *
+     * @param workerId ID of worker
+     * @return Next job or {@code null} if all jobs are done
+     */
+    private FixJob take(final int workerId)
+    {
+        FixJob job;
+        while(this.error == null)
+        {
+            if((job = this.deques.get(workerId).pollFirst()) != null)
+                return job;
+            for(int i = 1; i < this.deques.size(); i++)
+                if((job = this.deques.get((workerId + i) % this.deques.size()).pollLast()) != null)
+                    return job;
+            synchronized(this.idleLock)
+            {
+                if(this.pendingJobs.get() == 0)
+                    return null;
+                try
+                {
+                    this.idleLock.wait(50);
+                }
+                catch(final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Main loop of a worker.
+     *
+     * @param workerId ID of worker
+     * @param jobHandler Handler to process the jobs
+     */
+    private void work(final int workerId, final JobHandler jobHandler)
+    {
+        FixJob job;
+        while((job = this.take(workerId)) != null)
+            try
+            {
+                jobHandler.process(workerId, this.sessions.get(workerId), job);
+            }
+            catch(final JFixError e)
+            {
+                this.abort(e);
+            }
+            catch(final RuntimeException e)
+            {
+                this.abort(new JFixError(e));
+            }
+            finally
+            {
+                if(this.pendingJobs.decrementAndGet() == 0)
+                    synchronized(this.idleLock)
+                    {
+                        this.idleLock.notifyAll();
+                    }
+            }
+        LoggerFactory.getLogger(FixScheduler.class).debug("Worker #{} finished", workerId);
+    }
+}
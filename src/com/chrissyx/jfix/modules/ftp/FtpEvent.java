@@ -0,0 +1,159 @@
+package com.chrissyx.jfix.modules.ftp;
+
+/**
+ * Event of an FTP session, published to the {@link FtpEventBus}.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FtpEvent
+{
+    /**
+     * Types of events.
+     */
+    public enum Type
+    {
+        /**
+         * A command was sent, the message is the command.
+         */
+        COMMAND_SENT,
+
+        /**
+         * A reply was received, the message is the reply.
+         */
+        REPLY_RECEIVED,
+
+        /**
+         * Bytes of a file were transferred, the message is the remote filename and the count the number of bytes.
+         */
+        BYTES_TRANSFERRED,
+
+        /**
+         * A transfer started or completed, the message describes it.
+         */
+        TRANSFER,
+
+        /**
+         * Events were dropped because subscribers fell behind, the count is the number of dropped events.
+         */
+        EVENTS_DROPPED
+    }
+
+    /**
+     * Type of this event.
+     */
+    private final Type type;
+
+    /**
+     * Connection ID of the session or {@code null} if not related to a session.
+     */
+    private final String connId;
+
+    /**
+     * Message of this event.
+     */
+    private final String message;
+
+    /**
+     * Number belonging to this event.
+     */
+    private final long count;
+
+    /**
+     * Time of this event in milliseconds.
+     */
+    private final long timestamp;
+
+    /**
+     * Value of {@link System#nanoTime()} at creation, to measure intervals between events.
+     */
+    private final long nanoTime;
+
+    /**
+     * Creates an event.
+     *
+     * @param type Type of event
+     * @param connId Connection ID of the session or {@code null}
+     * @param message Message of event
+     * @param count Number belonging to event
+     */
+    public FtpEvent(final Type type, final String connId, final String message, final long count)
+    {
+        this.type = type;
+        this.connId = connId;
+        this.message = message;
+        this.count = count;
+        this.timestamp = System.currentTimeMillis();
+        this.nanoTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the type of this event.
+     *
+     * @return Event type
+     */
+    public Type getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * Returns the connection ID of the session.
+     *
+     * @return Connection ID or {@code null} if not related to a session
+     */
+    public String getConnId()
+    {
+        return this.connId;
+    }
+
+    /**
+     * Returns the message of this event.
+     *
+     * @return Command, reply or description
+     */
+    public String getMessage()
+    {
+        return this.message;
+    }
+
+    /**
+     * Returns the number belonging to this event.
+     *
+     * @return Transferred bytes or dropped events
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Returns the time of this event.
+     *
+     * @return Time in milliseconds
+     */
+    public long getTimestamp()
+    {
+        return this.timestamp;
+    }
+
+    /**
+     * Returns the value of {@link System#nanoTime()} at creation of this event, e.g. to pair commands with their
+     * replies.
+     *
+     * @return Time in nanoseconds, only comparable to other values of the same JVM
+     */
+    public long getNanoTime()
+    {
+        return this.nanoTime;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.type + " <" + this.connId + "> " + this.message;
+    }
+}
@@ -0,0 +1,231 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes events of all FTP sessions to their subscribers without blocking the publishing network threads. Events are
+ * put into a lock-free queue and delivered by a single background thread. If the subscribers fall behind and the queue
+ * fills up, new events are dropped or sampled according to the overflow policy; subscribers are told how many events
+ * they missed.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FtpEventBus
+{
+    /**
+     * Receives published events on the delivering thread.
+     */
+    public interface Subscriber
+    {
+        /**
+         * Handles an event. Slow subscribers delay all others, so expensive work should be batched.
+         *
+         * @param event Delivered event
+         */
+        void eventReceived(final FtpEvent event);
+    }
+
+    /**
+     * Policies for a full queue.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * Drop all new events while the queue is full.
+         */
+        DROP,
+
+        /**
+         * Keep only every n-th new event once the queue is half full, drop all while it is full.
+         */
+        SAMPLE
+    }
+
+    /**
+     * Subscribers to deliver to.
+     */
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+
+    /**
+     * Queue of undelivered events.
+     */
+    private final Queue<FtpEvent> queue = new ConcurrentLinkedQueue<FtpEvent>();
+
+    /**
+     * Number of undelivered events.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Number of events dropped since the last notification.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Number of events offered while sampling.
+     */
+    private final AtomicLong sampled = new AtomicLong();
+
+    /**
+     * Thread delivering the events.
+     */
+    private final Thread deliverer;
+
+    /**
+     * State if the delivering thread waits for events.
+     */
+    private volatile boolean delivererParked;
+
+    /**
+     * Maximum number of undelivered events.
+     */
+    private volatile int capacity;
+
+    /**
+     * Policy for a full queue.
+     */
+    private volatile OverflowPolicy overflowPolicy;
+
+    /**
+     * Keep every n-th event while sampling.
+     */
+    private volatile int sampleRate;
+
+    /**
+     * Creates the event bus with a capacity of 10000 events and sampling every 10th event, then starts delivering.
+     */
+    public FtpEventBus()
+    {
+        this.configure(10000, OverflowPolicy.SAMPLE, 10);
+        this.deliverer = new Thread("JFix-Events")
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                FtpEventBus.this.deliver();
+            }
+        };
+        this.deliverer.setDaemon(true);
+        this.deliverer.start();
+    }
+
+    /**
+     * Changes the queue settings.
+     *
+     * @param newCapacity Maximum number of undelivered events
+     * @param newOverflowPolicy Policy for a full queue
+     * @param newSampleRate Keep every n-th event while sampling
+     */
+    public void configure(final int newCapacity, final OverflowPolicy newOverflowPolicy, final int newSampleRate)
+    {
+        this.capacity = Math.max(1, newCapacity);
+        this.overflowPolicy = newOverflowPolicy;
+        this.sampleRate = Math.max(1, newSampleRate);
+    }
+
+    /**
+     * Adds a subscriber for all events.
+     *
+     * @param subscriber Subscriber to add
+     */
+    public void subscribe(final Subscriber subscriber)
+    {
+        this.subscribers.add(subscriber);
+    }
+
+    /**
+     * Removes a subscriber.
+     *
+     * @param subscriber Subscriber to remove
+     */
+    public void unsubscribe(final Subscriber subscriber)
+    {
+        this.subscribers.remove(subscriber);
+    }
+
+    /**
+     * Publishes an event without waiting for its delivery. May be called from any thread.
+     *
+     * @param event Event to publish
+     */
+    public void publish(final FtpEvent event)
+    {
+        final int curQueued = this.queued.get();
+        if(curQueued >= this.capacity || (this.overflowPolicy == OverflowPolicy.SAMPLE && curQueued >= this.capacity / 2
+                && this.sampled.incrementAndGet() % this.sampleRate != 0))
+        {
+            this.dropped.incrementAndGet();
+            return;
+        }
+        this.queued.incrementAndGet();
+        this.queue.offer(event);
+        if(this.delivererParked)
+            LockSupport.unpark(this.deliverer);
+    }
+
+    /**
+     * Returns the number of undelivered events.
+     *
+     * @return Queued events
+     */
+    public int getQueued()
+    {
+        return this.queued.get();
+    }
+
+    /**
+     * Delivers queued events to all subscribers until the JVM exits.
+     */
+    private void deliver()
+    {
+        FtpEvent curEvent;
+        while(true)
+        {
+            final long curDropped = this.dropped.getAndSet(0);
+            if(curDropped > 0)
+                this.deliver(new FtpEvent(FtpEvent.Type.EVENTS_DROPPED, null, null, curDropped));
+            if((curEvent = this.queue.poll()) != null)
+            {
+                this.queued.decrementAndGet();
+                this.deliver(curEvent);
+                continue;
+            }
+            this.delivererParked = true;
+            //Check again, an event may have been queued before the flag was visible
+            if(this.queue.isEmpty())
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            this.delivererParked = false;
+        }
+    }
+
+    /**
+     * Delivers a single event to all subscribers.
+     *
+     * @param event Event to deliver
+     */
+    private void deliver(final FtpEvent event)
+    {
+        for(final Subscriber curSubscriber : this.subscribers)
+            try
+            {
+                curSubscriber.eventReceived(event);
+            }
+            catch(final RuntimeException e)
+            {
+                LoggerFactory.getLogger(FtpEventBus.class).warn("Subscriber failed to handle " + event, e);
+            }
+    }
+}
@@ -0,0 +1,319 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.common.error.JFixFtpAuthError;
+import com.enterprisedt.net.ftp.FTPClient;
+import com.enterprisedt.net.ftp.FTPConnectionClosedException;
+import com.enterprisedt.net.ftp.FTPException;
+import com.enterprisedt.net.ftp.FTPReply;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single authenticated FTP control connection with its own remote working directory.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FtpSession
+{
+    /**
+     * Field of the wrapped client in {@link FileTransferClient}.
+     */
+    private static final Field CLIENT_FIELD;
+
+    static
+    {
+        Field clientField = null;
+        try
+        {
+            //FileTransferClient only returns the last reply of its own commands, not of raw ones
+            clientField = FileTransferClient.class.getDeclaredField("ftpClient");
+            clientField.setAccessible(true);
+        }
+        catch(final Exception e)
+        {
+            LoggerFactory.getLogger(FtpSession.class).warn("Can't access replies of raw commands!", e);
+        }
+        CLIENT_FIELD = clientField;
+    }
+
+    /**
+     * The FTP client of this session.
+     */
+    private final FileTransferClient ftpClient;
+
+    /**
+     * Last known remote working directory or {@code null} if unknown.
+     */
+    private String remoteDir;
+
+    /**
+     * Last remote working directory changed to, restored after reconnecting.
+     */
+    private String lastRemoteDir;
+
+    /**
+     * Creates a session for the stated FTP client.
+     *
+     * @param ftpClient FTP client to work with
+     */
+    public FtpSession(final FileTransferClient ftpClient)
+    {
+        this.ftpClient = ftpClient;
+    }
+
+    /**
+     * Changes the remote working directory of this session, if not already there.
+     *
+     * @param newRemoteDir Absolute directory to change to
+     * @throws JFixError If changing remote folder failed
+     */
+    public void changeDir(final String newRemoteDir) throws JFixError
+    {
+        if(newRemoteDir.equals(this.remoteDir))
+            return;
+        try
+        {
+            this.ftpClient.changeDirectory(newRemoteDir);
+            this.remoteDir = this.lastRemoteDir = newRemoteDir;
+        }
+        catch(final FTPException e)
+        {
+            this.remoteDir = null;
+            throw new JFixError("Can't change remote directory to '" + newRemoteDir + "'!", e);
+        }
+        catch(final IOException e)
+        {
+            this.remoteDir = null;
+            throw new JFixError(e);
+        }
+    }
+
+    /**
+     * Connects and authenticates this session.
+     *
+     * @throws JFixError If connecting failed
+     */
+    public void connect() throws JFixError
+    {
+        try
+        {
+            this.ftpClient.connect();
+            this.remoteDir = null;
+        }
+        catch(final FTPException e)
+        {
+            if(e.getReplyCode() == 530)
+                throw new JFixFtpAuthError("Login rejected from server!", e);
+            else
+                throw new JFixError("Can't connect to FTP host!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+    }
+
+    /**
+     * Reconnects and authenticates this session after its connection was lost and changes back to its last remote
+     * working directory. Each attempt waits the backoff delay of the stated policy first.
+     *
+     * @param retryPolicy Number of attempts and their delays
+     * @param cause Error the connection was lost with
+     * @throws JFixError The stated error if reconnecting is disabled, a rejected login or the error of the last attempt
+     */
+    public void reconnect(final RetryPolicy retryPolicy, final JFixError cause) throws JFixError
+    {
+        JFixError lastError = cause;
+        for(int i = 0; i < retryPolicy.getRetries(); i++)
+        {
+            LoggerFactory.getLogger(FtpSession.class).info("Connection to {} lost, reconnecting ({} of {})...", new Object[]
+                    {
+                        this.ftpClient.getRemoteHost(), i + 1, retryPolicy.getRetries()
+                    });
+            try
+            {
+                retryPolicy.await(i);
+            }
+            catch(final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new JFixError("Fix run interrupted!", e);
+            }
+            try
+            {
+                //Nothing left to close properly on a broken connection
+                this.ftpClient.disconnect(true);
+            }
+            catch(final Exception e)
+            {
+                LoggerFactory.getLogger(FtpSession.class).debug("Closing lost connection failed", e);
+            }
+            try
+            {
+                this.connect();
+                if(this.lastRemoteDir != null)
+                    this.changeDir(this.lastRemoteDir);
+                return;
+            }
+            catch(final JFixFtpAuthError e)
+            {
+                throw e;
+            }
+            catch(final JFixError e)
+            {
+                e.warn(FtpSession.class, false);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Disconnects this session.
+     *
+     * @throws JFixError If disconnecting failed
+     */
+    public void disconnect() throws JFixError
+    {
+        try
+        {
+            this.ftpClient.disconnect();
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't disconnect from FTP host!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+    }
+
+    /**
+     * Executes a raw FTP command and returns the reply of the server.
+     *
+     * @param command FTP command to execute
+     * @return Reply from server
+     * @throws JFixError If command couldn't be sent
+     */
+    public FTPReply executeCommand(final String command) throws JFixError
+    {
+        try
+        {
+            this.ftpClient.executeCommand(command);
+            return FtpSession.getLastReply(this.ftpClient);
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't execute command!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+    }
+
+    /**
+     * Returns the current remote working directory, asking the server only if unknown.
+     *
+     * @return Absolute remote working directory with trailing slash
+     * @throws JFixError If remote directory couldn't be determined
+     */
+    public String getRemoteDir() throws JFixError
+    {
+        if(this.remoteDir == null)
+            try
+            {
+                final String curRemoteDir = this.ftpClient.getRemoteDirectory();
+                this.remoteDir = this.lastRemoteDir = curRemoteDir.endsWith("/") ? curRemoteDir : curRemoteDir.concat("/");
+            }
+            catch(final FTPException e)
+            {
+                throw new JFixError("Can't get remote working directory!", e);
+            }
+            catch(final IOException e)
+            {
+                throw new JFixError(e);
+            }
+        return this.remoteDir;
+    }
+
+    /**
+     * Returns the reply of the last raw command executed with the stated client.
+     *
+     * @param ftpClient FTP client to get reply from
+     * @return Last reply from server
+     */
+    public static FTPReply getLastReply(final FileTransferClient ftpClient)
+    {
+        if(FtpSession.CLIENT_FIELD != null)
+            try
+            {
+                return ((FTPClient) FtpSession.CLIENT_FIELD.get(ftpClient)).getLastValidReply();
+            }
+            catch(final IllegalAccessException e)
+            {
+                LoggerFactory.getLogger(FtpSession.class).debug("Can't access reply of raw command", e);
+            }
+        return ftpClient.getLastReply();
+    }
+
+    /**
+     * Returns if the stated reply reports a successful command.
+     *
+     * @param reply Reply from server
+     * @return Positive completion reply state
+     */
+    public static boolean isPositive(final FTPReply reply)
+    {
+        return reply != null && reply.getReplyCode().startsWith("2");
+    }
+
+    /**
+     * Returns if the stated error was caused by a lost or closed control connection, in contrast to a rejected command.
+     *
+     * @param e Error to check
+     * @return Connection lost state
+     */
+    public static boolean isConnectionLost(final JFixError e)
+    {
+        final Throwable cause = e.getCause();
+        return cause instanceof IOException || cause instanceof FTPConnectionClosedException
+                || cause instanceof FTPException && ((FTPException) cause).getReplyCode() == 421;
+    }
+
+    /**
+     * Returns if this session is currently connected.
+     *
+     * @return Connection state
+     */
+    public boolean isConnected()
+    {
+        return this.ftpClient.isConnected();
+    }
+
+    /**
+     * Returns the FTP client of this session.
+     *
+     * @return Underlying FTP client
+     */
+    public FileTransferClient getClient()
+    {
+        return this.ftpClient;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.ftpClient.getRemoteHost() + ":" + this.remoteDir;
+    }
+}
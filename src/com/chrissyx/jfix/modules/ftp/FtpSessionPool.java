@@ -0,0 +1,123 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.enterprisedt.net.ftp.EventListener;
+import com.enterprisedt.net.ftp.FTPException;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of authenticated FTP sessions to the same host. The first session always wraps the main client, the
+ * additional ones are opened on demand and kept open until the pool is closed.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FtpSessionPool
+{
+    /**
+     * The main FTP client, used as template for additional sessions.
+     */
+    private final FileTransferClient mainClient;
+
+    /**
+     * Listener for commands and replies of all sessions.
+     */
+    private final EventListener eventListener;
+
+    /**
+     * Additional sessions opened so far.
+     */
+    private final List<FtpSession> extraSessions = new ArrayList<FtpSession>();
+
+    /**
+     * Creates a pool for the host of the stated main client.
+     *
+     * @param mainClient Connected main FTP client
+     * @param eventListener Listener to set for additional sessions
+     */
+    public FtpSessionPool(final FileTransferClient mainClient, final EventListener eventListener)
+    {
+        this.mainClient = mainClient;
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Returns up to the stated number of connected sessions, opening additional ones as needed. If the server refuses
+     * further logins, less sessions are returned. The first one is always a fresh session of the main client.
+     *
+     * @param size Number of sessions wanted
+     * @return Connected sessions, at least one
+     */
+    public synchronized List<FtpSession> getSessions(final int size)
+    {
+        //Drop sessions lost since last run
+        for(int i = this.extraSessions.size() - 1; i >= 0; i--)
+            if(!this.extraSessions.get(i).isConnected())
+                this.extraSessions.remove(i);
+        while(this.extraSessions.size() < size - 1)
+            try
+            {
+                LoggerFactory.getLogger(FtpSessionPool.class).debug("Opening additional session #{}...", this.extraSessions.size() + 1);
+                final FtpSession newSession = new FtpSession(this.createClient());
+                newSession.connect();
+                this.extraSessions.add(newSession);
+            }
+            catch(final JFixError e)
+            {
+                e.warn(FtpSessionPool.class, false);
+                LoggerFactory.getLogger(FtpSessionPool.class).info("Continuing with {} session(s)", this.extraSessions.size() + 1);
+                break;
+            }
+        final List<FtpSession> sessions = new ArrayList<FtpSession>(size);
+        sessions.add(new FtpSession(this.mainClient));
+        sessions.addAll(this.extraSessions.subList(0, Math.min(this.extraSessions.size(), size - 1)));
+        return sessions;
+    }
+
+    /**
+     * Disconnects all additional sessions.
+     */
+    public synchronized void close()
+    {
+        for(final FtpSession curSession : this.extraSessions)
+            if(curSession.isConnected())
+                try
+                {
+                    curSession.disconnect();
+                }
+                catch(final JFixError e)
+                {
+                    e.warn(FtpSessionPool.class, false);
+                }
+        this.extraSessions.clear();
+    }
+
+    /**
+     * Creates a new FTP client with the connection settings of the main client.
+     *
+     * @return Unconnected FTP client
+     * @throws JFixError If settings couldn't be applied
+     */
+    private FileTransferClient createClient() throws JFixError
+    {
+        final FileTransferClient ftpClient = new FileTransferClient();
+        try
+        {
+            ftpClient.setRemoteHost(this.mainClient.getRemoteHost());
+            ftpClient.setRemotePort(this.mainClient.getRemotePort());
+            ftpClient.setUserName(this.mainClient.getUserName());
+            ftpClient.setPassword(this.mainClient.getPassword());
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't set up additional session!", e);
+        }
+        ftpClient.setEventListener(this.eventListener);
+        return ftpClient;
+    }
+}
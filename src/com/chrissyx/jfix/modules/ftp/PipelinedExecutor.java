@@ -0,0 +1,311 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.enterprisedt.net.ftp.FTPClient;
+import com.enterprisedt.net.ftp.FTPControlSocket;
+import com.enterprisedt.net.ftp.FTPReply;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends commands over the control connection of a session without waiting for each reply. Up to the stated window of
+ * commands are outstanding at once, their replies are matched in order and passed to a handler together with the item
+ * the command was sent for. While commands are outstanding, the session must not be used otherwise. Each command takes
+ * a slot of the run's {@link ConcurrencyLimiter}; if none is free, own outstanding replies are read first. Items of
+ * commands without reply due to a failed connection are kept to send them again after reconnecting.
+ *
+ * @param <T> Type of item each command is sent for
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class PipelinedExecutor<T>
+{
+    /**
+     * Receives the reply for each item.
+     *
+     * @param <T> Type of item each command is sent for
+     */
+    public interface ReplyHandler<T>
+    {
+        /**
+         * Handles the reply of the command sent for the stated item.
+         *
+         * @param item Item of the command
+         * @param reply Reply from server
+         * @param rtt Nanoseconds from sending the command until its reply was read
+         * @throws JFixError If the run has to be aborted
+         */
+        void replyReceived(final T item, final FTPReply reply, final long rtt) throws JFixError;
+    }
+
+    /**
+     * Field of the wrapped client in {@link FileTransferClient}.
+     */
+    private static final Field CLIENT_FIELD;
+
+    /**
+     * Field of the control socket in {@link FTPClient}.
+     */
+    private static final Field CONTROL_FIELD;
+
+    /**
+     * Method to write a command without reading the reply.
+     */
+    private static final Method WRITE_METHOD;
+
+    /**
+     * Method to read the next reply.
+     */
+    private static final Method READ_METHOD;
+
+    static
+    {
+        Field clientField = null;
+        Field controlField = null;
+        Method writeMethod = null;
+        Method readMethod = null;
+        try
+        {
+            //edtFTPj has no public API for pipelining, so its package private socket methods are used
+            clientField = FileTransferClient.class.getDeclaredField("ftpClient");
+            clientField.setAccessible(true);
+            controlField = FTPClient.class.getDeclaredField("control");
+            controlField.setAccessible(true);
+            writeMethod = FTPControlSocket.class.getDeclaredMethod("writeCommand", String.class);
+            writeMethod.setAccessible(true);
+            readMethod = FTPControlSocket.class.getDeclaredMethod("readReply");
+            readMethod.setAccessible(true);
+        }
+        catch(final Exception e)
+        {
+            LoggerFactory.getLogger(PipelinedExecutor.class).warn("Command pipelining not supported by FTP library!", e);
+            clientField = null;
+        }
+        CLIENT_FIELD = clientField;
+        CONTROL_FIELD = controlField;
+        WRITE_METHOD = writeMethod;
+        READ_METHOD = readMethod;
+    }
+
+    /**
+     * Session to send commands with.
+     */
+    private final FtpSession session;
+
+    /**
+     * Maximum number of outstanding commands.
+     */
+    private final int window;
+
+    /**
+     * Handler for the replies.
+     */
+    private final ReplyHandler<T> replyHandler;
+
+    /**
+     * Limiter of commands in flight over all sessions.
+     */
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Items of outstanding commands in sending order.
+     */
+    private final LinkedList<T> outstanding = new LinkedList<T>();
+
+    /**
+     * Sending times of outstanding commands in nanoseconds.
+     */
+    private final LinkedList<Long> sendTimes = new LinkedList<Long>();
+
+    /**
+     * Items of commands without reply due to a failed connection.
+     */
+    private final List<T> abandoned = new ArrayList<T>();
+
+    /**
+     * Control socket of the session or {@code null} to send commands one by one.
+     */
+    private final FTPControlSocket controlSocket;
+
+    /**
+     * Creates an executor for the stated session.
+     *
+     * @param session Connected session to use
+     * @param window Maximum number of outstanding commands, 1 disables pipelining
+     * @param concurrencyLimiter Limiter of commands in flight over all sessions
+     * @param replyHandler Handler for the replies
+     */
+    public PipelinedExecutor(final FtpSession session, final int window, final ConcurrencyLimiter concurrencyLimiter, final ReplyHandler<T> replyHandler)
+    {
+        this.session = session;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.replyHandler = replyHandler;
+        FTPControlSocket curControlSocket = null;
+        if(window > 1 && PipelinedExecutor.CLIENT_FIELD != null)
+            try
+            {
+                curControlSocket = (FTPControlSocket) PipelinedExecutor.CONTROL_FIELD.get(PipelinedExecutor.CLIENT_FIELD.get(session.getClient()));
+            }
+            catch(final IllegalAccessException e)
+            {
+                LoggerFactory.getLogger(PipelinedExecutor.class).warn("Can't access control connection, sending commands one by one!", e);
+            }
+        this.controlSocket = curControlSocket;
+        this.window = curControlSocket == null ? 1 : window;
+    }
+
+    /**
+     * Sends a command for the stated item. If the window is full or the limiter has no free slot, the oldest reply is
+     * read first.
+     *
+     * @param command FTP command to send
+     * @param item Item the command is sent for
+     * @throws JFixError If sending or reading failed or the handler aborted
+     */
+    public void submit(final String command, final T item) throws JFixError
+    {
+        if(this.outstanding.size() >= this.window)
+            this.readReply();
+        try
+        {
+            while(!this.concurrencyLimiter.tryAcquire())
+                if(this.outstanding.isEmpty())
+                {
+                    this.concurrencyLimiter.acquire();
+                    break;
+                }
+                else
+                    this.readReply();
+            this.concurrencyLimiter.awaitRate();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new JFixError("Fix run interrupted!", e);
+        }
+        if(this.controlSocket == null)
+        {
+            final long sendTime = System.nanoTime();
+            final FTPReply reply;
+            try
+            {
+                reply = this.session.executeCommand(command);
+            }
+            catch(final JFixError e)
+            {
+                this.concurrencyLimiter.releaseFailed(1);
+                this.abandoned.add(item);
+                throw e;
+            }
+            final long rtt = System.nanoTime() - sendTime;
+            this.concurrencyLimiter.release(rtt, reply.getReplyCode());
+            this.replyHandler.replyReceived(item, reply, rtt);
+            return;
+        }
+        this.sendTimes.addLast(System.nanoTime());
+        this.outstanding.addLast(item);
+        this.invoke(PipelinedExecutor.WRITE_METHOD, command);
+    }
+
+    /**
+     * Reads all outstanding replies.
+     *
+     * @throws JFixError If reading failed or the handler aborted
+     */
+    public void flush() throws JFixError
+    {
+        while(!this.outstanding.isEmpty())
+            this.readReply();
+    }
+
+    /**
+     * Returns and forgets the items of commands without reply due to a failed connection. The commands may or may not
+     * have been executed by the server.
+     *
+     * @return Abandoned items in sending order
+     */
+    public List<T> drainAbandoned()
+    {
+        final List<T> items = new ArrayList<T>(this.abandoned);
+        this.abandoned.clear();
+        return items;
+    }
+
+    /**
+     * Returns if commands are pipelined or sent one by one, because of a window of 1 or no access to the control
+     * connection of the FTP library.
+     *
+     * @return Pipelining state
+     */
+    boolean isPipelined()
+    {
+        return this.controlSocket != null;
+    }
+
+    /**
+     * Reads the oldest outstanding reply and passes it to the handler.
+     *
+     * @throws JFixError If reading failed or the handler aborted
+     */
+    private void readReply() throws JFixError
+    {
+        final FTPReply reply = (FTPReply) this.invoke(PipelinedExecutor.READ_METHOD);
+        final long rtt = System.nanoTime() - this.sendTimes.removeFirst();
+        this.concurrencyLimiter.release(rtt, reply.getReplyCode());
+        try
+        {
+            this.replyHandler.replyReceived(this.outstanding.removeFirst(), reply, rtt);
+        }
+        catch(final JFixError e)
+        {
+            //Replies of an aborted run are never read, so their slots have to be freed now
+            this.abandonOutstanding();
+            throw e;
+        }
+    }
+
+    /**
+     * Invokes a method of the control socket.
+     *
+     * @param method Method to invoke
+     * @param args Arguments for method
+     * @return Result of method
+     * @throws JFixError If the control connection failed
+     */
+    private Object invoke(final Method method, final Object... args) throws JFixError
+    {
+        try
+        {
+            return method.invoke(this.controlSocket, args);
+        }
+        catch(final InvocationTargetException e)
+        {
+            this.abandonOutstanding();
+            throw new JFixError("Can't execute pipelined command!", e.getCause());
+        }
+        catch(final IllegalAccessException e)
+        {
+            this.abandonOutstanding();
+            throw new JFixError(e);
+        }
+    }
+
+    /**
+     * Abandons all outstanding commands of a failed connection and frees their slots.
+     */
+    private void abandonOutstanding()
+    {
+        this.concurrencyLimiter.releaseFailed(this.outstanding.size());
+        this.abandoned.addAll(this.outstanding);
+        this.outstanding.clear();
+        this.sendTimes.clear();
+    }
+}
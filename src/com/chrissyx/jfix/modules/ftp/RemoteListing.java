@@ -0,0 +1,369 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.enterprisedt.net.ftp.DirectoryListArgument;
+import com.enterprisedt.net.ftp.DirectoryListCallback;
+import com.enterprisedt.net.ftp.FTPException;
+import com.enterprisedt.net.ftp.FTPFile;
+import com.enterprisedt.net.ftp.FTPFileFactory;
+import com.enterprisedt.net.ftp.FTPReply;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact listing of a remote directory. The listing is streamed from the server and each parsed entry is copied into
+ * parallel arrays right away, so no {@link FTPFile} objects are kept and huge directories need only a few bytes besides
+ * the names.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class RemoteListing
+{
+    /**
+     * Last modification time of entries without one.
+     */
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    /**
+     * Estimated bytes per entry without its name.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * Names of entries.
+     */
+    private String[] names;
+
+    /**
+     * Last modification times of entries in milliseconds or {@link #UNKNOWN_TIME}.
+     */
+    private long[] lastModified;
+
+    /**
+     * Directory states of entries.
+     */
+    private boolean[] directories;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Estimated memory in bytes.
+     */
+    private long weight;
+
+    /**
+     * Size of the raw listing lines in bytes.
+     */
+    private long bytes;
+
+    /**
+     * Open addressing hash table of entry indices plus one by name, built on first lookup.
+     */
+    private int[] index;
+
+    /**
+     * Creates an empty listing.
+     */
+    private RemoteListing()
+    {
+        this.names = new String[16];
+        this.lastModified = new long[16];
+        this.directories = new boolean[16];
+    }
+
+    /**
+     * Streams the listing of the stated remote directory.
+     *
+     * @param ftpClient Connected FTP client to list with
+     * @param remoteDir Remote directory to list, empty string for the current one
+     * @param sort List directories before files, otherwise keep the order of the server
+     * @return Listing of directory
+     * @throws JFixError If remote directory can't be listed
+     */
+    public static RemoteListing read(final FileTransferClient ftpClient, final String remoteDir, final boolean sort) throws JFixError
+    {
+        final RemoteListing listing = new RemoteListing();
+        try
+        {
+            ftpClient.directoryList(remoteDir, new DirectoryListCallback()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void listDirectoryEntry(final DirectoryListArgument argument)
+                {
+                    listing.add(argument.getEntry());
+                }
+            });
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't get remote directory file list" + (remoteDir.isEmpty() ? "" : " of '" + remoteDir + "'") + "!", e);
+        }
+        catch(final ParseException e)
+        {
+            throw new JFixError(e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+        if(sort)
+            listing.sortDirectoriesFirst();
+        return listing;
+    }
+
+    /**
+     * Reads the listing of the stated remote directory from the reply of {@code STAT -l} over the control connection,
+     * so no data connection has to be opened. The whole reply is received before it is parsed.
+     *
+     * @param ftpClient Connected FTP client to list with
+     * @param systemType System type of the server to select the listing parser
+     * @param remoteDir Absolute remote directory to list
+     * @param sort List directories before files, otherwise keep the order of the server
+     * @return Listing of directory or {@code null} if the server rejects {@code STAT} with a permanent error
+     * @throws JFixError If command couldn't be sent or this reply can't be used as listing
+     */
+    public static RemoteListing readStat(final FileTransferClient ftpClient, final String systemType, final String remoteDir, final boolean sort) throws JFixError
+    {
+        final FTPReply reply;
+        final FTPFileFactory parser;
+        try
+        {
+            ftpClient.executeCommand("STAT -l " + remoteDir);
+            reply = FtpSession.getLastReply(ftpClient);
+            parser = new FTPFileFactory(systemType);
+        }
+        catch(final FTPException e)
+        {
+            throw new JFixError("Can't list '" + remoteDir + "' with STAT!", e);
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError(e);
+        }
+        if(reply.getReplyCode().startsWith("5"))
+            return null;
+        if(!reply.getReplyCode().startsWith("21"))
+            throw new JFixError("Can't list '" + remoteDir + "' with STAT: " + reply.getReplyCode() + " " + reply.getReplyText());
+        parser.setLocales(ftpClient.getAdvancedFTPSettings().getParserLocales());
+        final RemoteListing listing = RemoteListing.parseStat(reply.getReplyCode(), reply.getReplyData(), parser, sort);
+        if(listing == null)
+            throw new JFixError("Can't parse STAT listing of '" + remoteDir + "'!");
+        return listing;
+    }
+
+    /**
+     * Parses the lines of a {@code STAT -l} reply. The first and last line are the status text around the listing,
+     * some servers prefix each line with the reply code. Lines which can't be parsed are skipped.
+     *
+     * @param replyCode Code of reply, e.g. {@code 213}
+     * @param replyData All lines of multi-line reply or {@code null} for single-line one
+     * @param parser Parser for the listing format of the server
+     * @param sort List directories before files, otherwise keep the order of the lines
+     * @return Listing of reply or {@code null} if it has listing lines, but none could be parsed
+     */
+    public static RemoteListing parseStat(final String replyCode, final String[] replyData, final FTPFileFactory parser, final boolean sort)
+    {
+        if(replyData == null || replyData.length <= 2)
+            return new RemoteListing();
+        final String[] lines = new String[replyData.length - 2];
+        for(int i = 0; i < lines.length; i++)
+        {
+            lines[i] = replyData[i + 1];
+            if(lines[i].startsWith(replyCode + "-") || lines[i].startsWith(replyCode + " "))
+                lines[i] = lines[i].substring(replyCode.length() + 1);
+            lines[i] = lines[i].trim();
+        }
+        final RemoteListing listing = RemoteListing.parse(lines, parser, sort);
+        for(final String curLine : lines)
+            if(!curLine.isEmpty() && !curLine.startsWith("total "))
+                return listing.size() == 0 ? null : listing;
+        return listing;
+    }
+
+    /**
+     * Parses the lines of a raw directory listing.
+     *
+     * @param lines Listing lines, empty lines and {@code total} lines are skipped
+     * @param parser Parser for the listing format of the server
+     * @param sort List directories before files, otherwise keep the order of the lines
+     * @return Listing of lines, lines which can't be parsed are skipped
+     */
+    public static RemoteListing parse(final String[] lines, final FTPFileFactory parser, final boolean sort)
+    {
+        final RemoteListing listing = new RemoteListing();
+        for(final String curLine : lines)
+        {
+            if(curLine.isEmpty() || curLine.startsWith("total "))
+                continue;
+            try
+            {
+                final FTPFile curEntry = parser.parse(curLine);
+                if(curEntry != null)
+                    listing.add(curEntry);
+                else
+                    LoggerFactory.getLogger(RemoteListing.class).debug("Skipping unparsable listing line '{}'", curLine);
+            }
+            catch(final ParseException e)
+            {
+                LoggerFactory.getLogger(RemoteListing.class).debug("Skipping unparsable listing line '{}'", curLine);
+            }
+        }
+        if(sort)
+            listing.sortDirectoriesFirst();
+        return listing;
+    }
+
+    /**
+     * Appends an entry, growing the arrays if needed.
+     *
+     * @param entry Parsed entry to append
+     */
+    private void add(final FTPFile entry)
+    {
+        if(this.size == this.names.length)
+        {
+            final int capacity = this.size * 2;
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.lastModified = Arrays.copyOf(this.lastModified, capacity);
+            this.directories = Arrays.copyOf(this.directories, capacity);
+        }
+        final Date curLastModified = entry.lastModified();
+        this.names[this.size] = entry.getName();
+        this.lastModified[this.size] = curLastModified == null ? RemoteListing.UNKNOWN_TIME : curLastModified.getTime();
+        this.directories[this.size] = entry.isDir();
+        this.weight += RemoteListing.ENTRY_OVERHEAD + 2 * entry.getName().length();
+        this.bytes += (entry.getRaw() == null ? entry.getName().length() : entry.getRaw().length()) + 2;
+        this.size++;
+    }
+
+    /**
+     * Moves all directories before the files in a single stable pass over the flags.
+     */
+    private void sortDirectoriesFirst()
+    {
+        final String[] sortedNames = new String[this.size];
+        final long[] sortedLastModified = new long[this.size];
+        final boolean[] sortedDirectories = new boolean[this.size];
+        int nextDir = 0;
+        for(int i = 0; i < this.size; i++)
+            if(this.directories[i])
+                nextDir++;
+        int nextFile = nextDir;
+        nextDir = 0;
+        for(int i = 0; i < this.size; i++)
+        {
+            final int j = this.directories[i] ? nextDir++ : nextFile++;
+            sortedNames[j] = this.names[i];
+            sortedLastModified[j] = this.lastModified[i];
+            sortedDirectories[j] = this.directories[i];
+        }
+        this.names = sortedNames;
+        this.lastModified = sortedLastModified;
+        this.directories = sortedDirectories;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return Number of entries
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the name of an entry.
+     *
+     * @param index Index of entry
+     * @return Name of entry
+     */
+    public String getName(final int index)
+    {
+        return this.names[index];
+    }
+
+    /**
+     * Returns the last modification time of an entry.
+     *
+     * @param index Index of entry
+     * @return Last modification time in milliseconds or {@link #UNKNOWN_TIME}
+     */
+    public long getLastModified(final int index)
+    {
+        return this.lastModified[index];
+    }
+
+    /**
+     * Returns if an entry is a directory.
+     *
+     * @param index Index of entry
+     * @return Directory state
+     */
+    public boolean isDirectory(final int index)
+    {
+        return this.directories[index];
+    }
+
+    /**
+     * Returns the estimated memory of this listing.
+     *
+     * @return Estimated bytes
+     */
+    public long getWeight()
+    {
+        return this.weight;
+    }
+
+    /**
+     * Returns the size of the listing as received from the server.
+     *
+     * @return Bytes of raw listing lines including line breaks
+     */
+    public long getBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the index of the entry with stated name. The first lookup builds a hash table of all names.
+     *
+     * @param name Name of entry
+     * @return Index of entry or -1 if not listed
+     */
+    public synchronized int indexOf(final String name)
+    {
+        if(this.index == null)
+        {
+            this.index = new int[Integer.highestOneBit(Math.max(this.size, 1) * 2) * 2];
+            for(int i = 0; i < this.size; i++)
+            {
+                int slot = this.names[i].hashCode() & (this.index.length - 1);
+                while(this.index[slot] != 0)
+                    slot = (slot + 1) & (this.index.length - 1);
+                this.index[slot] = i + 1;
+            }
+        }
+        int slot = name.hashCode() & (this.index.length - 1);
+        while(this.index[slot] != 0)
+        {
+            if(this.names[this.index[slot] - 1].equals(name))
+                return this.index[slot] - 1;
+            slot = (slot + 1) & (this.index.length - 1);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,159 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of remote directory listings by absolute path. Listings expire after a fixed time and the least recently used
+ * ones are evicted once the maximum number of listings or the estimated memory is exceeded.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class RemoteListingCache
+{
+    /**
+     * A cached listing.
+     */
+    private static final class Listing
+    {
+        /**
+         * Entries of the remote directory.
+         */
+        private final RemoteListing files;
+
+        /**
+         * Time of listing.
+         */
+        private final long created;
+
+        /**
+         * Creates a cached listing.
+         *
+         * @param files Entries of the remote directory
+         * @param created Time of listing
+         */
+        private Listing(final RemoteListing files, final long created)
+        {
+            this.files = files;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Listings by absolute path in access order.
+     */
+    private final LinkedHashMap<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true);
+
+    /**
+     * Milliseconds a listing stays valid.
+     */
+    private final long ttl;
+
+    /**
+     * Maximum number of listings.
+     */
+    private final int maxListings;
+
+    /**
+     * Maximum estimated memory in bytes.
+     */
+    private final long maxWeight;
+
+    /**
+     * Estimated memory of all listings in bytes.
+     */
+    private long weight;
+
+    /**
+     * Creates a listing cache.
+     *
+     * @param ttl Milliseconds a listing stays valid, 0 disables the cache
+     * @param maxListings Maximum number of listings
+     * @param maxWeight Maximum estimated memory in bytes
+     */
+    public RemoteListingCache(final long ttl, final int maxListings, final long maxWeight)
+    {
+        this.ttl = ttl;
+        this.maxListings = maxListings;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached listing of the stated directory.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     * @return Entries of directory or {@code null} if not cached or expired
+     */
+    public synchronized RemoteListing get(final String remoteDir)
+    {
+        final Listing listing = this.listings.get(remoteDir);
+        if(listing == null)
+            return null;
+        if(System.currentTimeMillis() - listing.created > this.ttl)
+        {
+            this.remove(remoteDir);
+            return null;
+        }
+        LoggerFactory.getLogger(RemoteListingCache.class).trace("Cache hit for '{}'", remoteDir);
+        return listing.files;
+    }
+
+    /**
+     * Caches the listing of the stated directory and evicts the least recently used listings if needed.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     * @param files Entries of directory
+     */
+    public synchronized void put(final String remoteDir, final RemoteListing files)
+    {
+        if(this.ttl <= 0)
+            return;
+        this.remove(remoteDir);
+        final Listing listing = new Listing(files, System.currentTimeMillis());
+        this.listings.put(remoteDir, listing);
+        this.weight += listing.files.getWeight();
+        final Iterator<Map.Entry<String, Listing>> iterator = this.listings.entrySet().iterator();
+        while(iterator.hasNext() && this.listings.size() > 1 && (this.listings.size() > this.maxListings || this.weight > this.maxWeight))
+        {
+            final Map.Entry<String, Listing> eldest = iterator.next();
+            LoggerFactory.getLogger(RemoteListingCache.class).trace("Evicting '{}'", eldest.getKey());
+            this.weight -= eldest.getValue().files.getWeight();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drops the cached listing of the stated directory.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     */
+    public synchronized void invalidate(final String remoteDir)
+    {
+        this.remove(remoteDir);
+    }
+
+    /**
+     * Drops all cached listings.
+     */
+    public synchronized void clear()
+    {
+        this.listings.clear();
+        this.weight = 0;
+    }
+
+    /**
+     * Removes a listing and its memory estimate.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     */
+    private void remove(final String remoteDir)
+    {
+        final Listing listing = this.listings.remove(remoteDir);
+        if(listing != null)
+            this.weight -= listing.files.getWeight();
+    }
+}
@@ -0,0 +1,85 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number of retries and exponential backoff delays for recovering from lost connections. Each delay doubles the previous
+ * one up to a maximum, half of it is randomized so sessions losing their connections at once don't reconnect in lockstep.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class RetryPolicy
+{
+    /**
+     * Maximum number of retries.
+     */
+    private final int retries;
+
+    /**
+     * Delay before the first retry in milliseconds.
+     */
+    private final long baseDelay;
+
+    /**
+     * Maximum delay before a retry in milliseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * Random generator for the jitter.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Creates a retry policy.
+     *
+     * @param retries Maximum number of retries, 0 disables retrying
+     * @param baseDelay Delay before the first retry in milliseconds
+     * @param maxDelay Maximum delay before a retry in milliseconds
+     */
+    public RetryPolicy(final int retries, final long baseDelay, final long maxDelay)
+    {
+        this.retries = Math.max(0, retries);
+        this.baseDelay = Math.max(1, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    }
+
+    /**
+     * Returns the maximum number of retries.
+     *
+     * @return Retries
+     */
+    public int getRetries()
+    {
+        return this.retries;
+    }
+
+    /**
+     * Returns the delay before the stated retry.
+     *
+     * @param retry Number of retry, starting with 0
+     * @return Delay in milliseconds
+     */
+    public long getDelay(final int retry)
+    {
+        //Shifting the highest bit of the base delay into the sign bit or beyond would overflow
+        final long delay = retry >= Long.numberOfLeadingZeros(this.baseDelay) - 1 ? this.maxDelay : Math.min(this.maxDelay, this.baseDelay << retry);
+        synchronized(this.random)
+        {
+            return delay / 2 + (long) (this.random.nextDouble() * (delay - delay / 2));
+        }
+    }
+
+    /**
+     * Waits before the stated retry.
+     *
+     * @param retry Number of retry, starting with 0
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void await(final int retry) throws InterruptedException
+    {
+        TimeUnit.MILLISECONDS.sleep(this.getDelay(retry));
+    }
+}
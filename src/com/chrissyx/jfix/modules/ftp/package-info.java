@@ -0,0 +1,7 @@
+/**
+ * Contains the FTP session handling and scheduling used by {@link com.chrissyx.jfix.modules.FtpController} for fix runs.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+package com.chrissyx.jfix.modules.ftp;
@@ -0,0 +1,51 @@
+package com.chrissyx.jfix.modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an FTP command from sending it until its reply is received.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@Name("com.chrissyx.jfix.Command")
+@Label("FTP Command")
+@Category(
+{
+    "JFix", "FTP"
+})
+@Description("Round trip of an FTP command on the control connection")
+@StackTrace(false)
+final class CommandEvent extends jdk.jfr.Event
+{
+    /**
+     * Verb of command.
+     */
+    @Label("Verb")
+    String verb;
+
+    /**
+     * Code of reply.
+     */
+    @Label("Reply Code")
+    String replyCode;
+
+    /**
+     * Length of command.
+     */
+    @Label("Command Size")
+    @DataAmount
+    int commandSize;
+
+    /**
+     * Length of reply.
+     */
+    @Label("Reply Size")
+    @DataAmount
+    int replySize;
+}
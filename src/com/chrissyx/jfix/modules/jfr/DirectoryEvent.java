@@ -0,0 +1,37 @@
+package com.chrissyx.jfix.modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of expanding a directory into jobs, including its local scan and remote listing.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@Name("com.chrissyx.jfix.Directory")
+@Label("Directory Walk")
+@Category("JFix")
+@Description("Scanning a local directory and submitting jobs for its files and subdirectories")
+final class DirectoryEvent extends jdk.jfr.Event
+{
+    /**
+     * Absolute remote directory.
+     */
+    @Label("Remote Directory")
+    String remoteDir;
+
+    /**
+     * Number of scanned local entries.
+     */
+    @Label("Entries")
+    int entries;
+
+    /**
+     * Number of files needing a fix command.
+     */
+    @Label("Files To Fix")
+    int filesToFix;
+}
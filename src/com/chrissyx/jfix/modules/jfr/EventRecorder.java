@@ -0,0 +1,102 @@
+package com.chrissyx.jfix.modules.jfr;
+
+/**
+ * Creates and commits the flight recorder events behind {@link FlightRecorder}. Only implemented by
+ * {@link JdkEventRecorder}, which is compiled and loaded if {@code jdk.jfr} is available, so this interface and the
+ * facade never refer to the event classes. The {@code end} methods are only called with handles of their
+ * {@code begin} methods.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+interface EventRecorder
+{
+    /**
+     * Begins the event of a fix run.
+     *
+     * @param localDir Local start directory
+     * @param remoteDir Absolute remote start directory
+     * @return Event handle or {@code null} if not recorded
+     */
+    Object beginRun(final String localDir, final String remoteDir);
+
+    /**
+     * Ends and commits the event of a fix run.
+     *
+     * @param handle Event handle from {@link #beginRun(java.lang.String, java.lang.String)}
+     * @param filesDone Number of fixed or skipped files
+     * @param commands Number of commands with received replies
+     * @param failed Number of commands rejected by the server
+     * @param complete Run completed without being cancelled
+     */
+    void endRun(final Object handle, final long filesDone, final long commands, final long failed, final boolean complete);
+
+    /**
+     * Begins the event of a directory walk.
+     *
+     * @return Event handle or {@code null} if not recorded
+     */
+    Object beginDirectory();
+
+    /**
+     * Ends and commits the event of a directory walk.
+     *
+     * @param handle Event handle from {@link #beginDirectory()}
+     * @param remoteDir Absolute remote directory
+     * @param entries Number of scanned local entries
+     * @param filesToFix Number of files needing a fix command
+     */
+    void endDirectory(final Object handle, final String remoteDir, final int entries, final int filesToFix);
+
+    /**
+     * Begins the event of an FTP command when it is sent.
+     *
+     * @param commandSize Length of command
+     * @return Event handle or {@code null} if not recorded
+     */
+    Object beginCommand(final int commandSize);
+
+    /**
+     * Ends and commits the event of an FTP command when its reply is received.
+     *
+     * @param handle Event handle from {@link #beginCommand(int)}
+     * @param verb Verb of command
+     * @param replyCode Code of reply
+     * @param replySize Length of reply
+     */
+    void endCommand(final Object handle, final String verb, final String replyCode, final int replySize);
+
+    /**
+     * Begins the event of a remote listing.
+     *
+     * @return Event handle or {@code null} if not recorded
+     */
+    Object beginListing();
+
+    /**
+     * Ends and commits the event of a remote listing.
+     *
+     * @param handle Event handle from {@link #beginListing()}
+     * @param remoteDir Absolute remote directory
+     * @param stat Listed over the control connection
+     * @param entries Number of listed entries
+     * @param bytes Size of raw listing lines
+     */
+    void endListing(final Object handle, final String remoteDir, final boolean stat, final int entries, final long bytes);
+
+    /**
+     * Begins the event of a log flush.
+     *
+     * @return Event handle or {@code null} if not recorded
+     */
+    Object beginLogFlush();
+
+    /**
+     * Ends and commits the event of a log flush.
+     *
+     * @param handle Event handle from {@link #beginLogFlush()}
+     * @param lines Number of appended log entries
+     * @param dropped Number of log entries dropped before the flush
+     */
+    void endLogFlush(final Object handle, final int lines, final int dropped);
+}
@@ -0,0 +1,170 @@
+package com.chrissyx.jfix.modules.jfr;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emits the Java Flight Recorder events of JFix. Events are only created if the JVM provides {@code jdk.jfr}, JFix was
+ * built with it and recording of the event type is enabled, otherwise all methods do nothing and no event classes are
+ * loaded. Each {@code begin} method returns a handle to pass to its {@code end} method, {@code null} handles are
+ * ignored.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class FlightRecorder
+{
+    /**
+     * Recorder of the events or {@code null} if not available.
+     */
+    private static final EventRecorder RECORDER;
+
+    static
+    {
+        EventRecorder recorder;
+        try
+        {
+            recorder = (EventRecorder) Class.forName("com.chrissyx.jfix.modules.jfr.JdkEventRecorder").getDeclaredConstructor().newInstance();
+        }
+        catch(final ReflectiveOperationException e)
+        {
+            recorder = null;
+        }
+        catch(final LinkageError e)
+        {
+            recorder = null;
+        }
+        RECORDER = recorder;
+        LoggerFactory.getLogger(FlightRecorder.class).debug("Flight recorder events {}", recorder != null ? "available" : "not available");
+    }
+
+    /**
+     * Hidden constructor to prevent instances of this class.
+     */
+    private FlightRecorder()
+    {
+    }
+
+    /**
+     * Begins the event of a fix run.
+     *
+     * @param localDir Local start directory
+     * @param remoteDir Absolute remote start directory
+     * @return Event handle or {@code null} if not recorded
+     */
+    public static Object beginRun(final String localDir, final String remoteDir)
+    {
+        return FlightRecorder.RECORDER == null ? null : FlightRecorder.RECORDER.beginRun(localDir, remoteDir);
+    }
+
+    /**
+     * Ends and commits the event of a fix run.
+     *
+     * @param handle Event handle from {@link #beginRun(java.lang.String, java.lang.String)}
+     * @param filesDone Number of fixed or skipped files
+     * @param commands Number of commands with received replies
+     * @param failed Number of commands rejected by the server
+     * @param complete Run completed without being cancelled
+     */
+    public static void endRun(final Object handle, final long filesDone, final long commands, final long failed, final boolean complete)
+    {
+        if(handle != null)
+            FlightRecorder.RECORDER.endRun(handle, filesDone, commands, failed, complete);
+    }
+
+    /**
+     * Begins the event of a directory walk.
+     *
+     * @return Event handle or {@code null} if not recorded
+     */
+    public static Object beginDirectory()
+    {
+        return FlightRecorder.RECORDER == null ? null : FlightRecorder.RECORDER.beginDirectory();
+    }
+
+    /**
+     * Ends and commits the event of a directory walk.
+     *
+     * @param handle Event handle from {@link #beginDirectory()}
+     * @param remoteDir Absolute remote directory
+     * @param entries Number of scanned local entries
+     * @param filesToFix Number of files needing a fix command
+     */
+    public static void endDirectory(final Object handle, final String remoteDir, final int entries, final int filesToFix)
+    {
+        if(handle != null)
+            FlightRecorder.RECORDER.endDirectory(handle, remoteDir, entries, filesToFix);
+    }
+
+    /**
+     * Begins the event of an FTP command when it is sent.
+     *
+     * @param commandSize Length of command
+     * @return Event handle or {@code null} if not recorded
+     */
+    public static Object beginCommand(final int commandSize)
+    {
+        return FlightRecorder.RECORDER == null ? null : FlightRecorder.RECORDER.beginCommand(commandSize);
+    }
+
+    /**
+     * Ends and commits the event of an FTP command when its reply is received.
+     *
+     * @param handle Event handle from {@link #beginCommand(int)}
+     * @param verb Verb of command
+     * @param replyCode Code of reply
+     * @param replySize Length of reply
+     */
+    public static void endCommand(final Object handle, final String verb, final String replyCode, final int replySize)
+    {
+        if(handle != null)
+            FlightRecorder.RECORDER.endCommand(handle, verb, replyCode, replySize);
+    }
+
+    /**
+     * Begins the event of a remote listing.
+     *
+     * @return Event handle or {@code null} if not recorded
+     */
+    public static Object beginListing()
+    {
+        return FlightRecorder.RECORDER == null ? null : FlightRecorder.RECORDER.beginListing();
+    }
+
+    /**
+     * Ends and commits the event of a remote listing.
+     *
+     * @param handle Event handle from {@link #beginListing()}
+     * @param remoteDir Absolute remote directory
+     * @param stat Listed over the control connection
+     * @param entries Number of listed entries
+     * @param bytes Size of raw listing lines
+     */
+    public static void endListing(final Object handle, final String remoteDir, final boolean stat, final int entries, final long bytes)
+    {
+        if(handle != null)
+            FlightRecorder.RECORDER.endListing(handle, remoteDir, stat, entries, bytes);
+    }
+
+    /**
+     * Begins the event of a log flush.
+     *
+     * @return Event handle or {@code null} if not recorded
+     */
+    public static Object beginLogFlush()
+    {
+        return FlightRecorder.RECORDER == null ? null : FlightRecorder.RECORDER.beginLogFlush();
+    }
+
+    /**
+     * Ends and commits the event of a log flush.
+     *
+     * @param handle Event handle from {@link #beginLogFlush()}
+     * @param lines Number of appended log entries
+     * @param dropped Number of log entries dropped before the flush
+     */
+    public static void endLogFlush(final Object handle, final int lines, final int dropped)
+    {
+        if(handle != null)
+            FlightRecorder.RECORDER.endLogFlush(handle, lines, dropped);
+    }
+}
@@ -0,0 +1,172 @@
+package com.chrissyx.jfix.modules.jfr;
+
+/**
+ * Records the events of JFix with the Java Flight Recorder of Java 11 and later. Compiled only with {@code jdk.jfr}
+ * available and loaded by name from {@link FlightRecorder}; handles are the events themselves.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+final class JdkEventRecorder implements EventRecorder
+{
+    /**
+     * Creates the recorder, loaded by {@link FlightRecorder}.
+     */
+    JdkEventRecorder()
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginRun(final String localDir, final String remoteDir)
+    {
+        final RunEvent event = new RunEvent();
+        if(!event.isEnabled())
+            return null;
+        event.localDir = localDir;
+        event.remoteDir = remoteDir;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endRun(final Object handle, final long filesDone, final long commands, final long failed, final boolean complete)
+    {
+        final RunEvent event = (RunEvent) handle;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.filesDone = filesDone;
+            event.commands = commands;
+            event.failed = failed;
+            event.complete = complete;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginDirectory()
+    {
+        final DirectoryEvent event = new DirectoryEvent();
+        if(!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endDirectory(final Object handle, final String remoteDir, final int entries, final int filesToFix)
+    {
+        final DirectoryEvent event = (DirectoryEvent) handle;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.remoteDir = remoteDir;
+            event.entries = entries;
+            event.filesToFix = filesToFix;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginCommand(final int commandSize)
+    {
+        final CommandEvent event = new CommandEvent();
+        if(!event.isEnabled())
+            return null;
+        event.commandSize = commandSize;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endCommand(final Object handle, final String verb, final String replyCode, final int replySize)
+    {
+        final CommandEvent event = (CommandEvent) handle;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.verb = verb;
+            event.replyCode = replyCode;
+            event.replySize = replySize;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginListing()
+    {
+        final ListingEvent event = new ListingEvent();
+        if(!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endListing(final Object handle, final String remoteDir, final boolean stat, final int entries, final long bytes)
+    {
+        final ListingEvent event = (ListingEvent) handle;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.remoteDir = remoteDir;
+            event.stat = stat;
+            event.entries = entries;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginLogFlush()
+    {
+        final LogFlushEvent event = new LogFlushEvent();
+        if(!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endLogFlush(final Object handle, final int lines, final int dropped)
+    {
+        final LogFlushEvent event = (LogFlushEvent) handle;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.lines = lines;
+            event.dropped = dropped;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.chrissyx.jfix.modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of listing and parsing a remote directory.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@Name("com.chrissyx.jfix.Listing")
+@Label("Remote Listing")
+@Category(
+{
+    "JFix", "FTP"
+})
+@Description("Receiving and parsing the listing of a remote directory")
+final class ListingEvent extends jdk.jfr.Event
+{
+    /**
+     * Absolute remote directory.
+     */
+    @Label("Remote Directory")
+    String remoteDir;
+
+    /**
+     * State if listed over the control connection.
+     */
+    @Label("Over Control Connection")
+    boolean stat;
+
+    /**
+     * Number of listed entries.
+     */
+    @Label("Entries")
+    int entries;
+
+    /**
+     * Size of raw listing lines.
+     */
+    @Label("Size")
+    @DataAmount
+    long bytes;
+}
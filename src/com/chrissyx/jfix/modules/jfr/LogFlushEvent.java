@@ -0,0 +1,34 @@
+package com.chrissyx.jfix.modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of passing pending log entries to the console on the event dispatch thread.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@Name("com.chrissyx.jfix.LogFlush")
+@Label("Log Flush")
+@Category(
+{
+    "JFix", "GUI"
+})
+@Description("Appending pending log entries to the console and flushing the log file")
+final class LogFlushEvent extends jdk.jfr.Event
+{
+    /**
+     * Number of appended log entries.
+     */
+    @Label("Lines")
+    int lines;
+
+    /**
+     * Number of log entries dropped before the flush.
+     */
+    @Label("Dropped")
+    int dropped;
+}
@@ -0,0 +1,55 @@
+package com.chrissyx.jfix.modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a whole fix run.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+@Name("com.chrissyx.jfix.Run")
+@Label("Fix Run")
+@Category("JFix")
+@Description("Fixing the filetimes of a local directory tree")
+final class RunEvent extends jdk.jfr.Event
+{
+    /**
+     * Local start directory.
+     */
+    @Label("Local Directory")
+    String localDir;
+
+    /**
+     * Absolute remote start directory.
+     */
+    @Label("Remote Directory")
+    String remoteDir;
+
+    /**
+     * Number of fixed or skipped files.
+     */
+    @Label("Files Done")
+    long filesDone;
+
+    /**
+     * Number of commands with received replies.
+     */
+    @Label("Commands")
+    long commands;
+
+    /**
+     * Number of commands rejected by the server.
+     */
+    @Label("Failed")
+    long failed;
+
+    /**
+     * State if the run completed without being cancelled.
+     */
+    @Label("Complete")
+    boolean complete;
+}
@@ -0,0 +1,8 @@
+/**
+ * Contains the Java Flight Recorder events of JFix, emitted through {@link com.chrissyx.jfix.modules.jfr.FlightRecorder}
+ * only if the running JVM supports them.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+package com.chrissyx.jfix.modules.jfr;
@@ -3,14 +3,6 @@ package com.chrissyx.jfix.modules.util;
 import com.chrissyx.jfix.common.error.JFixError;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
 
 /**
  * Utils for file and directory operations.
@@ -20,80 +12,65 @@ import java.util.jar.JarInputStream;
 public class FileUtils
 {
     /**
-     * Comparator to list directories before files.
+     * Hidden constructor to prevent instances of this class.
      */
-    private static final Comparator<File> FILE_COMPARATOR = new Comparator<File>()
+    private FileUtils()
     {
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public int compare(final File file1, final File file2)
-        {
-            return (file1.isDirectory() && file2.isDirectory()) || (!file1.isDirectory() && !file2.isDirectory()) ? 0
-                    : (file1.isDirectory() && !file2.isDirectory() ? -1 : 1);
-        }
-    };
+    }
 
     /**
-     * Hidden constructor to prevent instances of this class.
+     * Returns the parent of stated remote directory.
+     *
+     * @param remoteDir Absolute remote directory with trailing slash
+     * @return Remote directory path down to parent of stated one, the root directory for itself
      */
-    private FileUtils()
+    public static String getRemoteParentDir(final String remoteDir)
     {
+        if(remoteDir.length() == 1)
+            return remoteDir;
+        return remoteDir.substring(0, remoteDir.lastIndexOf('/', remoteDir.length() - 2) + 1);
     }
 
     /**
-     * Returns listing with all found files from stated package and given file ending of this JAR.
+     * Returns a file listing from stated directory. ".." is added to address the super folder.
      *
-     * @param packageName Name of package to look up
-     * @param fileEnding File ending to consider
-     * @param exclude Names of files to exclude from search result
-     * @return Found files from given package with matching file ending
+     * @param directory Directory to list files from
+     * @param sort List directories before files
+     * @return File listing with super folder notation
+     * @see #getFileListing(com.chrissyx.jfix.modules.util.LocalListing)
      */
-    public static String[] getPackageListing(final String packageName, final String fileEnding, final String... exclude)
+    public static String[] getFileListing(final File directory, final boolean sort)
     {
-        final LinkedList<String> classList = new LinkedList<String>();
-        JarEntry curJarEntry;
-        String curName;
+        if(!directory.isDirectory())
+            throw new IllegalArgumentException(directory + " is not a directory to list files from!");
         try
         {
-            final JarInputStream jarInputStream = new JarInputStream(new FileInputStream("JFix.jar"));
-            while((curJarEntry = jarInputStream.getNextJarEntry()) != null)
-                if((curName = curJarEntry.getName()).contains(packageName) && curName.endsWith(fileEnding))
-                    classList.add(curName.substring(curName.lastIndexOf("/") + 1, curName.lastIndexOf(".")));
+            return FileUtils.getFileListing(LocalListing.read(directory, sort));
         }
-        catch(final FileNotFoundException e)
+        catch(final JFixError e)
         {
-            new JFixError("JFix JAR for package listing not found!", e).error(FileUtils.class);
+            e.warn(FileUtils.class, true);
         }
-        catch(final IOException e)
-        {
-            new JFixError(e).error(FileUtils.class);
-        }
-        if(exclude != null)
-            classList.removeAll(Arrays.asList(exclude));
-        return classList.toArray(new String[0]);
+        return directory.getParentFile() != null ? new String[]
+                {
+                    ".."
+                } : new String[0];
     }
 
     /**
-     * Returns a file listing from stated directory. ".." is added to address the super folder.
+     * Returns the file listing of stated local listing. ".." is added to address the super folder.
      *
-     * @param directory Directory to list files from
-     * @param sort List directories before files
+     * @param localListing Listing to get filenames from
      * @return File listing with super folder notation
      */
-    public static String[] getFileListing(final File directory, final boolean sort)
+    public static String[] getFileListing(final LocalListing localListing)
     {
-        if(!directory.isDirectory())
-            throw new IllegalArgumentException(directory + " is not a directory to list files from!");
-        final File[] fileList = directory.listFiles();
-        if(sort)
-            Arrays.sort(fileList, FileUtils.FILE_COMPARATOR);
-        final LinkedList<String> filenameList = new LinkedList<String>();
-        if(directory.getParentFile() != null)
-            filenameList.add("..");
-        for(final File curFile : fileList)
-            filenameList.add(curFile.getName());
-        return filenameList.toArray(new String[0]);
+        final int offset = localListing.getDirectory().getParentFile() != null ? 1 : 0;
+        final String[] filenameList = new String[localListing.size() + offset];
+        if(offset == 1)
+            filenameList[0] = "..";
+        for(int i = 0; i < localListing.size(); i++)
+            filenameList[i + offset] = localListing.getName(i);
+        return filenameList;
     }
 }
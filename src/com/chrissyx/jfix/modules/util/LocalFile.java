@@ -0,0 +1,119 @@
+package com.chrissyx.jfix.modules.util;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Local file with its attributes read once while scanning.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class LocalFile
+{
+    /**
+     * The local file.
+     */
+    private final File file;
+
+    /**
+     * Last modification time in milliseconds.
+     */
+    private final long lastModified;
+
+    /**
+     * Size in bytes.
+     */
+    private final long size;
+
+    /**
+     * Directory state.
+     */
+    private final boolean directory;
+
+    /**
+     * Creates a local file from scanned attributes.
+     *
+     * @param file The local file
+     * @param attributes Attributes of the file
+     */
+    public LocalFile(final File file, final BasicFileAttributes attributes)
+    {
+        this(file, attributes.lastModifiedTime().toMillis(), attributes.size(), attributes.isDirectory());
+    }
+
+    /**
+     * Creates a local file with stated attributes.
+     *
+     * @param file The local file
+     * @param lastModified Last modification time in milliseconds
+     * @param size Size in bytes
+     * @param directory Directory state
+     */
+    public LocalFile(final File file, final long lastModified, final long size, final boolean directory)
+    {
+        this.file = file;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the local file.
+     *
+     * @return Local file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Returns the name of the file.
+     *
+     * @return Filename
+     */
+    public String getName()
+    {
+        return this.file.getName();
+    }
+
+    /**
+     * Returns the last modification time.
+     *
+     * @return Last modification time in milliseconds
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * Returns the size.
+     *
+     * @return Size in bytes
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns if this is a directory.
+     *
+     * @return Directory state
+     */
+    public boolean isDirectory()
+    {
+        return this.directory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.file.toString();
+    }
+}
@@ -0,0 +1,213 @@
+package com.chrissyx.jfix.modules.util;
+
+import com.chrissyx.jfix.common.error.JFixError;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Compact listing of a local directory. The attributes of each entry are read once while scanning and kept in
+ * parallel arrays, so sorting and later fixing never have to stat the entries again.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class LocalListing
+{
+    /**
+     * Listed directory.
+     */
+    private final File directory;
+
+    /**
+     * Names of entries.
+     */
+    private String[] names;
+
+    /**
+     * Last modification times of entries in milliseconds.
+     */
+    private long[] lastModified;
+
+    /**
+     * Sizes of entries in bytes.
+     */
+    private long[] sizes;
+
+    /**
+     * Directory states of entries.
+     */
+    private boolean[] directories;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Creates an empty listing for the stated directory.
+     *
+     * @param directory Listed directory
+     */
+    private LocalListing(final File directory)
+    {
+        this.directory = directory;
+        this.names = new String[16];
+        this.lastModified = new long[16];
+        this.sizes = new long[16];
+        this.directories = new boolean[16];
+    }
+
+    /**
+     * Reads the listing of the stated directory, skipping entries whose attributes can't be read.
+     *
+     * @param directory Directory to list
+     * @param sort List directories before files, otherwise keep the order of the file system
+     * @return Listing of directory
+     * @throws JFixError If directory can't be read
+     */
+    public static LocalListing read(final File directory, final boolean sort) throws JFixError
+    {
+        final LocalListing listing = new LocalListing(directory);
+        LocalTreeScanner.scanDirectory(directory, new LocalTreeScanner.EntryHandler()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void handleEntry(final LocalFile entry)
+            {
+                listing.add(entry);
+            }
+        });
+        if(sort)
+            listing.sortDirectoriesFirst();
+        return listing;
+    }
+
+    /**
+     * Appends an entry, growing the arrays if needed.
+     *
+     * @param entry Entry to append
+     */
+    private void add(final LocalFile entry)
+    {
+        if(this.size == this.names.length)
+        {
+            final int capacity = this.size * 2;
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.lastModified = Arrays.copyOf(this.lastModified, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+            this.directories = Arrays.copyOf(this.directories, capacity);
+        }
+        this.names[this.size] = entry.getName();
+        this.lastModified[this.size] = entry.getLastModified();
+        this.sizes[this.size] = entry.getSize();
+        this.directories[this.size] = entry.isDirectory();
+        this.size++;
+    }
+
+    /**
+     * Moves all directories before the files in a single stable pass over the cached flags.
+     */
+    private void sortDirectoriesFirst()
+    {
+        final String[] sortedNames = new String[this.size];
+        final long[] sortedLastModified = new long[this.size];
+        final long[] sortedSizes = new long[this.size];
+        final boolean[] sortedDirectories = new boolean[this.size];
+        int nextDir = 0;
+        for(int i = 0; i < this.size; i++)
+            if(this.directories[i])
+                nextDir++;
+        int nextFile = nextDir;
+        nextDir = 0;
+        for(int i = 0; i < this.size; i++)
+        {
+            final int j = this.directories[i] ? nextDir++ : nextFile++;
+            sortedNames[j] = this.names[i];
+            sortedLastModified[j] = this.lastModified[i];
+            sortedSizes[j] = this.sizes[i];
+            sortedDirectories[j] = this.directories[i];
+        }
+        this.names = sortedNames;
+        this.lastModified = sortedLastModified;
+        this.sizes = sortedSizes;
+        this.directories = sortedDirectories;
+    }
+
+    /**
+     * Returns the listed directory.
+     *
+     * @return Listed directory
+     */
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return Number of entries
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the name of an entry.
+     *
+     * @param index Index of entry
+     * @return Name of entry
+     */
+    public String getName(final int index)
+    {
+        return this.names[index];
+    }
+
+    /**
+     * Returns the last modification time of an entry.
+     *
+     * @param index Index of entry
+     * @return Last modification time in milliseconds
+     */
+    public long getLastModified(final int index)
+    {
+        return this.lastModified[index];
+    }
+
+    /**
+     * Returns the size of an entry.
+     *
+     * @param index Index of entry
+     * @return Size in bytes
+     */
+    public long getSize(final int index)
+    {
+        return this.sizes[index];
+    }
+
+    /**
+     * Returns if an entry is a directory.
+     *
+     * @param index Index of entry
+     * @return Directory state
+     */
+    public boolean isDirectory(final int index)
+    {
+        return this.directories[index];
+    }
+
+    /**
+     * Returns an entry with its cached attributes.
+     *
+     * @param index Index of entry
+     * @return Local file of entry
+     */
+    public LocalFile getLocalFile(final int index)
+    {
+        return new LocalFile(new File(this.directory, this.names[index]), this.lastModified[index], this.sizes[index], this.directories[index]);
+    }
+}
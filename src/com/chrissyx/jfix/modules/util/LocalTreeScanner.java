@@ -0,0 +1,235 @@
+package com.chrissyx.jfix.modules.util;
+
+import com.chrissyx.jfix.common.error.JFixError;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans local directories with a {@link DirectoryStream}, so even huge directories are never listed into memory at
+ * once. Single directories are streamed to a handler; whole trees are scanned in parallel by fork-join tasks over the
+ * subtrees, streaming their entries into a bounded queue.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class LocalTreeScanner
+{
+    /**
+     * Receives scanned entries of a single directory.
+     */
+    public interface EntryHandler
+    {
+        /**
+         * Handles a scanned entry.
+         *
+         * @param entry Local file with its attributes
+         */
+        void handleEntry(final LocalFile entry);
+    }
+
+    /**
+     * Marker for the end of a tree scan.
+     */
+    public static final LocalFile END_OF_SCAN = new LocalFile(new File(""), 0, 0, false);
+
+    /**
+     * Pool for the scan tasks.
+     */
+    private final ForkJoinPool forkJoinPool;
+
+    /**
+     * Capacity of the queue for tree scans.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Creates a scanner for tree scans.
+     *
+     * @param parallelism Number of directories to scan at once
+     * @param queueCapacity Maximum number of scanned entries not yet taken from the queue
+     */
+    public LocalTreeScanner(final int parallelism, final int queueCapacity)
+    {
+        this.forkJoinPool = new ForkJoinPool(parallelism);
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Streams all entries of the stated directory to the handler, reading the attributes of each entry once. Entries
+     * whose attributes can't be read, like dangling symbolic links, are logged and skipped.
+     *
+     * @param directory Directory to scan
+     * @param entryHandler Handler for each entry
+     * @throws JFixError If directory can't be read
+     */
+    public static void scanDirectory(final File directory, final EntryHandler entryHandler) throws JFixError
+    {
+        try
+        {
+            final DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory.toPath());
+            try
+            {
+                for(final Path curPath : directoryStream)
+                {
+                    final BasicFileAttributes attributes;
+                    try
+                    {
+                        attributes = Files.readAttributes(curPath, BasicFileAttributes.class);
+                    }
+                    catch(final IOException e)
+                    {
+                        LoggerFactory.getLogger(LocalTreeScanner.class).warn("Skipping unreadable local entry '{}': {}", curPath, e.toString());
+                        continue;
+                    }
+                    entryHandler.handleEntry(new LocalFile(curPath.toFile(), attributes));
+                }
+            }
+            finally
+            {
+                directoryStream.close();
+            }
+        }
+        catch(final DirectoryIteratorException e)
+        {
+            throw new JFixError("Can't list local directory '" + directory + "'!", e.getCause());
+        }
+        catch(final IOException e)
+        {
+            throw new JFixError("Can't list local directory '" + directory + "'!", e);
+        }
+    }
+
+    /**
+     * Starts scanning the stated directory tree. All entries are put into the returned queue, followed by
+     * {@link #END_OF_SCAN}. Scanning blocks while the queue is full.
+     *
+     * @param root Directory to start with
+     * @param recursive Scan subdirectories, too
+     * @return Queue with scanned entries
+     */
+    public BlockingQueue<LocalFile> scan(final File root, final boolean recursive)
+    {
+        final BlockingQueue<LocalFile> queue = new ArrayBlockingQueue<LocalFile>(this.queueCapacity);
+        final AtomicInteger pendingTasks = new AtomicInteger(1);
+        this.forkJoinPool.execute(new ScanTask(root, recursive, queue, pendingTasks));
+        return queue;
+    }
+
+    /**
+     * Stops all scans and releases the threads.
+     */
+    public void shutdown()
+    {
+        this.forkJoinPool.shutdownNow();
+    }
+
+    /**
+     * Task scanning a single directory and forking tasks for its subdirectories. Forked tasks are never joined, so the
+     * depth of the tree doesn't matter for the stack; the last finished task ends the scan.
+     */
+    private static final class ScanTask extends RecursiveAction
+    {
+        /**
+         * Directory to scan.
+         */
+        private final File directory;
+
+        /**
+         * Scan subdirectories, too.
+         */
+        private final boolean recursive;
+
+        /**
+         * Queue for scanned entries.
+         */
+        private final BlockingQueue<LocalFile> queue;
+
+        /**
+         * Number of unfinished tasks of this scan.
+         */
+        private final AtomicInteger pendingTasks;
+
+        /**
+         * Creates a task for the stated directory.
+         *
+         * @param directory Directory to scan
+         * @param recursive Scan subdirectories, too
+         * @param queue Queue for scanned entries
+         * @param pendingTasks Number of unfinished tasks of this scan
+         */
+        private ScanTask(final File directory, final boolean recursive, final BlockingQueue<LocalFile> queue, final AtomicInteger pendingTasks)
+        {
+            this.directory = directory;
+            this.recursive = recursive;
+            this.queue = queue;
+            this.pendingTasks = pendingTasks;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                LocalTreeScanner.scanDirectory(this.directory, new EntryHandler()
+                {
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void handleEntry(final LocalFile entry)
+                    {
+                        if(ScanTask.this.recursive && entry.isDirectory())
+                        {
+                            ScanTask.this.pendingTasks.incrementAndGet();
+                            new ScanTask(entry.getFile(), true, ScanTask.this.queue, ScanTask.this.pendingTasks).fork();
+                        }
+                        ScanTask.this.put(entry);
+                    }
+                });
+            }
+            catch(final JFixError e)
+            {
+                e.warn(LocalTreeScanner.class, false);
+            }
+            finally
+            {
+                if(this.pendingTasks.decrementAndGet() == 0)
+                    this.put(LocalTreeScanner.END_OF_SCAN);
+            }
+        }
+
+        /**
+         * Puts an entry into the queue, waiting for free space.
+         *
+         * @param entry Entry to put
+         */
+        private void put(final LocalFile entry)
+        {
+            try
+            {
+                this.queue.put(entry);
+            }
+            catch(final InterruptedException e)
+            {
+                LoggerFactory.getLogger(LocalTreeScanner.class).debug("Scan of '{}' interrupted", this.directory);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.chrissyx.jfix.modules.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity ring buffer of log lines. Once full, each added line overwrites the oldest one, so the memory used
+ * never grows with the length of a run.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class LogRingBuffer
+{
+    /**
+     * Slots for the lines.
+     */
+    private final String[] lines;
+
+    /**
+     * Slot of the oldest line.
+     */
+    private int start;
+
+    /**
+     * Number of buffered lines.
+     */
+    private int size;
+
+    /**
+     * Number of lines overwritten since the last drain.
+     */
+    private int dropped;
+
+    /**
+     * Creates an empty ring buffer.
+     *
+     * @param capacity Maximum number of lines
+     */
+    public LogRingBuffer(final int capacity)
+    {
+        this.lines = new String[Math.max(1, capacity)];
+    }
+
+    /**
+     * Appends a line, overwriting the oldest one if the buffer is full.
+     *
+     * @param line Line to append
+     */
+    public synchronized void add(final String line)
+    {
+        if(this.size == this.lines.length)
+        {
+            this.lines[this.start] = line;
+            this.start = (this.start + 1) % this.lines.length;
+            this.dropped++;
+        }
+        else
+            this.lines[(this.start + this.size++) % this.lines.length] = line;
+    }
+
+    /**
+     * Appends several lines, overwriting the oldest ones if the buffer is full.
+     *
+     * @param newLines Lines to append
+     */
+    public synchronized void addAll(final String[] newLines)
+    {
+        for(final String curLine : newLines)
+            this.add(curLine);
+    }
+
+    /**
+     * Returns a buffered line.
+     *
+     * @param index Index of line, 0 is the oldest one
+     * @return Line at index
+     */
+    public synchronized String get(final int index)
+    {
+        if(index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index " + index + " of " + this.size + " lines");
+        return this.lines[(this.start + index) % this.lines.length];
+    }
+
+    /**
+     * Returns the number of buffered lines.
+     *
+     * @return Number of lines
+     */
+    public synchronized int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the maximum number of lines.
+     *
+     * @return Capacity
+     */
+    public int getCapacity()
+    {
+        return this.lines.length;
+    }
+
+    /**
+     * Removes and returns all buffered lines. The number of dropped lines is kept.
+     *
+     * @return Lines from oldest to newest
+     */
+    public synchronized String[] drain()
+    {
+        final String[] drained = new String[this.size];
+        for(int i = 0; i < this.size; i++)
+            drained[i] = this.lines[(this.start + i) % this.lines.length];
+        Arrays.fill(this.lines, null);
+        this.start = 0;
+        this.size = 0;
+        return drained;
+    }
+
+    /**
+     * Returns and resets the number of lines overwritten since the last call.
+     *
+     * @return Number of dropped lines
+     */
+    public synchronized int takeDropped()
+    {
+        final int curDropped = this.dropped;
+        this.dropped = 0;
+        return curDropped;
+    }
+
+    /**
+     * Removes all lines and resets the number of dropped lines.
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(this.lines, null);
+        this.start = 0;
+        this.size = 0;
+        this.dropped = 0;
+    }
+}
@@ -0,0 +1,142 @@
+package com.chrissyx.jfix.modules.util;
+
+import com.chrissyx.jfix.plugins.FiletimeFixer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of available plug-ins and locales, discovered once and cached. Plug-ins are found with {@link ServiceLoader},
+ * so plug-ins of external JARs on the class path are registered by listing them in their
+ * {@code META-INF/services/com.chrissyx.jfix.plugins.FiletimeFixer} file. Locales are read from the index generated
+ * by the build.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public final class ServiceRegistry
+{
+    /**
+     * Plug-in instances by class name, loaded on first access.
+     */
+    private static Map<String, FiletimeFixer> plugIns;
+
+    /**
+     * Supported locales, loaded on first access.
+     */
+    private static List<String> locales;
+
+    /**
+     * Hidden constructor to prevent instances of this class.
+     */
+    private ServiceRegistry()
+    {
+    }
+
+    /**
+     * Returns the class names of all registered plug-ins.
+     *
+     * @return Plug-in names, e.g. "SiteUtime"
+     */
+    public static synchronized String[] getPlugInNames()
+    {
+        return ServiceRegistry.getPlugIns().keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Returns the shared instance of a registered plug-in.
+     *
+     * @param name Class name of plug-in, e.g. "SiteUtime"
+     * @return Plug-in instance or {@code null} if not registered
+     */
+    public static synchronized FiletimeFixer getPlugIn(final String name)
+    {
+        return ServiceRegistry.getPlugIns().get(name);
+    }
+
+    /**
+     * Returns the supported locales.
+     *
+     * @return Locales with a localization file, e.g. "en_US"
+     */
+    public static synchronized String[] getLocales()
+    {
+        if(ServiceRegistry.locales == null)
+        {
+            final List<String> localeList = new LinkedList<String>();
+            final InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(ResourceUtils.getPath("jfix-lang.index"));
+            if(in == null)
+                LoggerFactory.getLogger(ServiceRegistry.class).warn("Locale index not found, JFix was not built properly!");
+            else
+                try
+                {
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+                    try
+                    {
+                        String curLocale;
+                        while((curLocale = reader.readLine()) != null)
+                            if(!curLocale.trim().isEmpty())
+                                localeList.add(curLocale.trim());
+                    }
+                    finally
+                    {
+                        reader.close();
+                    }
+                }
+                catch(final IOException e)
+                {
+                    LoggerFactory.getLogger(ServiceRegistry.class).warn("Cannot read locale index!", e);
+                }
+            ServiceRegistry.locales = Collections.unmodifiableList(localeList);
+            LoggerFactory.getLogger(ServiceRegistry.class).debug("Registered locales {}", ServiceRegistry.locales);
+        }
+        return ServiceRegistry.locales.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the registered plug-ins, instantiating them on first access.
+     *
+     * @return Plug-in instances by class name
+     */
+    private static Map<String, FiletimeFixer> getPlugIns()
+    {
+        if(ServiceRegistry.plugIns == null)
+        {
+            final Map<String, FiletimeFixer> plugInMap = new LinkedHashMap<String, FiletimeFixer>();
+            try
+            {
+                //Skip single broken plug-ins instead of losing all following ones
+                final Iterator<FiletimeFixer> plugInIterator = ServiceLoader.load(FiletimeFixer.class).iterator();
+                while(plugInIterator.hasNext())
+                    try
+                    {
+                        final FiletimeFixer curPlugIn = plugInIterator.next();
+                        plugInMap.put(curPlugIn.getClass().getSimpleName(), curPlugIn);
+                    }
+                    catch(final ServiceConfigurationError e)
+                    {
+                        LoggerFactory.getLogger(ServiceRegistry.class).warn("Cannot load plug-in!", e);
+                    }
+            }
+            catch(final ServiceConfigurationError e)
+            {
+                LoggerFactory.getLogger(ServiceRegistry.class).warn("Cannot load all plug-ins!", e);
+            }
+            ServiceRegistry.plugIns = Collections.unmodifiableMap(plugInMap);
+            LoggerFactory.getLogger(ServiceRegistry.class).debug("Registered plug-ins {}", plugInMap.keySet());
+        }
+        return ServiceRegistry.plugIns;
+    }
+}
@@ -0,0 +1,51 @@
+package com.chrissyx.jfix.plugins;
+
+/**
+ * Filetime fixing plug-in delegating to the cheapest command supported by the connected server. The plug-in to use is
+ * selected by {@link com.chrissyx.jfix.modules.FtpController} after connecting, {@link SiteUtime} is used until then.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class Auto extends FiletimeFixer
+{
+    /**
+     * Selected plug-in or {@code null} if none selected yet.
+     */
+    private volatile FiletimeFixer selected;
+
+    /**
+     * Fallback plug-in before selection.
+     */
+    private final FiletimeFixer fallback = new SiteUtime();
+
+    /**
+     * Sets the plug-in to delegate to.
+     *
+     * @param plugIn Plug-in supported by the server
+     */
+    public void select(final FiletimeFixer plugIn)
+    {
+        this.selected = plugIn;
+    }
+
+    /**
+     * Returns the plug-in delegated to.
+     *
+     * @return Selected plug-in or {@code null} if none selected yet
+     */
+    public FiletimeFixer getSelected()
+    {
+        return this.selected;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeCommand(final StringBuilder buffer, final String path, final String filename, final long timestamp)
+    {
+        final FiletimeFixer curPlugIn = this.selected;
+        (curPlugIn == null ? this.fallback : curPlugIn).encodeCommand(buffer, path, filename, timestamp);
+    }
+}
@@ -1,36 +1,189 @@
 package com.chrissyx.jfix.plugins;
 
 import java.text.SimpleDateFormat;
+import java.util.TimeZone;
 
 /**
- * General template for implementing plug-ins to specify individual FTP command patterns.
+ * General template for implementing plug-ins to specify individual FTP command patterns. Plug-ins encode commands into
+ * buffers supplied by the caller and must not keep mutable state, so a single instance is shared by all worker threads.
+ * Plug-ins written for earlier versions, overriding {@link #getCommand(java.lang.String, long)} with the
+ * {@link #dateFormatter} instead, keep working.
  *
  * @author Chrissyx
  * @since 0.9
  */
 public abstract class FiletimeFixer
 {
+    /**
+     * Digit pairs from 00 to 99, tens digits.
+     */
+    private static final char[] DIGIT_TENS = new char[100];
+
+    /**
+     * Digit pairs from 00 to 99, ones digits.
+     */
+    private static final char[] DIGIT_ONES = new char[100];
+
+    /**
+     * Milliseconds of a day.
+     */
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    static
+    {
+        for(int i = 0; i < 100; i++)
+        {
+            FiletimeFixer.DIGIT_TENS[i] = (char) ('0' + i / 10);
+            FiletimeFixer.DIGIT_ONES[i] = (char) ('0' + i % 10);
+        }
+    }
+
     /**
      * Date formatter to prepare the filetimes.
+     *
+     * @deprecated Not thread-safe, plug-ins should implement
+     * {@link #encodeCommand(java.lang.StringBuilder, java.lang.String, java.lang.String, long)} with
+     * {@link #appendDateTime(java.lang.StringBuilder, long)} instead
      */
+    @Deprecated
     protected final SimpleDateFormat dateFormatter = new SimpleDateFormat();
 
+    /**
+     * Time zone to format filetimes in.
+     */
+    private final TimeZone timeZone;
+
+    /**
+     * Formats filetimes in the default time zone.
+     */
+    protected FiletimeFixer()
+    {
+        this(TimeZone.getDefault());
+    }
+
+    /**
+     * Formats filetimes in stated time zone.
+     *
+     * @param timeZone Time zone expected by the FTP command
+     * @throws AbstractMethodError If the plug-in overrides neither
+     * {@link #encodeCommand(java.lang.StringBuilder, java.lang.String, java.lang.String, long)} nor
+     * {@link #getCommand(java.lang.String, long)}, as their defaults call each other
+     */
+    protected FiletimeFixer(final TimeZone timeZone)
+    {
+        if(!this.isOverridden("encodeCommand", StringBuilder.class, String.class, String.class, long.class) && !this.isOverridden("getCommand", String.class, long.class))
+            throw new AbstractMethodError("Plug-in " + this.getClass().getName() + " must override encodeCommand(StringBuilder, String, String, long) or getCommand(String, long)!");
+        this.timeZone = timeZone;
+    }
+
     /**
      * Applies date pattern to the provided internal date formatter.
      *
      * @param datePattern Pattern to format FTP command specific date
+     * @deprecated Use {@link #FiletimeFixer(java.util.TimeZone)} and
+     * {@link #appendDateTime(java.lang.StringBuilder, long)} instead
      */
+    @Deprecated
     protected FiletimeFixer(final String datePattern)
     {
+        this(TimeZone.getDefault());
         this.dateFormatter.applyPattern(datePattern);
     }
 
     /**
-     * Returns ready-to-use FTP command to fix remote filetime of stated local file with given timestamp.
+     * Appends ready-to-use FTP command to fix remote filetime of stated local file with given timestamp. Must be
+     * thread-safe. Plug-ins should override this method; by default the command of
+     * {@link #getCommand(java.lang.String, long)} is appended, serialized on the {@link #dateFormatter}.
      *
+     * @param buffer Buffer to append command to
+     * @param path Absolute remote path to prefix filename with or empty string
      * @param filename Name of local and remote file to fix its filetime
      * @param timestamp Timestamp to apply
+     */
+    public void encodeCommand(final StringBuilder buffer, final String path, final String filename, final long timestamp)
+    {
+        synchronized(this.dateFormatter)
+        {
+            buffer.append(this.getCommand(path + filename, timestamp));
+        }
+    }
+
+    /**
+     * Returns ready-to-use FTP command to fix remote filetime of stated local file with given timestamp. Plug-ins must
+     * override either this method or {@link #encodeCommand(java.lang.StringBuilder, java.lang.String, java.lang.String, long)}.
+     *
+     * @param filename Name of local and remote file to fix its filetime, may be prefixed with its absolute remote path
+     * @param timestamp Timestamp to apply
      * @return FTP command for execution
+     * @see #encodeCommand(java.lang.StringBuilder, java.lang.String, java.lang.String, long)
      */
-    public abstract String getCommand(final String filename, final long timestamp);
+    public String getCommand(final String filename, final long timestamp)
+    {
+        final StringBuilder buffer = new StringBuilder(filename.length() + 64);
+        this.encodeCommand(buffer, "", filename, timestamp);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends stated timestamp in the time zone of this plug-in with pattern {@code yyyyMMddHHmmss}, using digit tables instead
+     * of a date formatter.
+     *
+     * @param buffer Buffer to append timestamp to
+     * @param timestamp Timestamp to append
+     */
+    protected final void appendDateTime(final StringBuilder buffer, final long timestamp)
+    {
+        final long localTime = timestamp + this.timeZone.getOffset(timestamp);
+        long days = localTime / FiletimeFixer.MILLIS_PER_DAY;
+        if(localTime % FiletimeFixer.MILLIS_PER_DAY < 0)
+            days--;
+        final int secondOfDay = (int) ((localTime - days * FiletimeFixer.MILLIS_PER_DAY) / 1000L);
+        //Civil date from days since epoch, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        days += 719468;
+        final long era = (days >= 0 ? days : days - 146096) / 146097;
+        final int dayOfEra = (int) (days - era * 146097);
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+        this.appendDigits(buffer, year / 100);
+        this.appendDigits(buffer, year % 100);
+        this.appendDigits(buffer, month);
+        this.appendDigits(buffer, day);
+        this.appendDigits(buffer, secondOfDay / 3600);
+        this.appendDigits(buffer, secondOfDay / 60 % 60);
+        this.appendDigits(buffer, secondOfDay % 60);
+    }
+
+    /**
+     * Returns if the class of this plug-in overrides the stated public method.
+     *
+     * @param name Name of method
+     * @param parameterTypes Parameter types of method
+     * @return Overridden state
+     */
+    private boolean isOverridden(final String name, final Class<?>... parameterTypes)
+    {
+        try
+        {
+            return this.getClass().getMethod(name, parameterTypes).getDeclaringClass() != FiletimeFixer.class;
+        }
+        catch(final NoSuchMethodException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Appends a two-digit number.
+     *
+     * @param buffer Buffer to append number to
+     * @param number Number from 0 to 99
+     */
+    private void appendDigits(final StringBuilder buffer, final int number)
+    {
+        buffer.append(FiletimeFixer.DIGIT_TENS[number]).append(FiletimeFixer.DIGIT_ONES[number]);
+    }
 }
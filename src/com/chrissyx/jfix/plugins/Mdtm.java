@@ -0,0 +1,32 @@
+package com.chrissyx.jfix.plugins;
+
+import java.util.TimeZone;
+
+/**
+ * Filetime fixing plug-in for the two-argument {@code MDTM} command, setting the modification time in UTC. Only some
+ * servers accept this form, e.g. vsftpd with {@code mdtm_write}.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class Mdtm extends FiletimeFixer
+{
+    /**
+     * Sets time zone to UTC.
+     */
+    public Mdtm()
+    {
+        super(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeCommand(final StringBuilder buffer, final String path, final String filename, final long timestamp)
+    {
+        buffer.append("MDTM ");
+        this.appendDateTime(buffer, timestamp);
+        buffer.append(' ').append(path).append(filename);
+    }
+}
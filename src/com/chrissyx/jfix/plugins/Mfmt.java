@@ -0,0 +1,31 @@
+package com.chrissyx.jfix.plugins;
+
+import java.util.TimeZone;
+
+/**
+ * Filetime fixing plug-in for {@code MFMT} command, setting the modification time in UTC.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class Mfmt extends FiletimeFixer
+{
+    /**
+     * Sets time zone to UTC.
+     */
+    public Mfmt()
+    {
+        super(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeCommand(final StringBuilder buffer, final String path, final String filename, final long timestamp)
+    {
+        buffer.append("MFMT ");
+        this.appendDateTime(buffer, timestamp);
+        buffer.append(' ').append(path).append(filename);
+    }
+}
@@ -1,7 +1,5 @@
 package com.chrissyx.jfix.plugins;
 
-import java.util.Date;
-
 /**
  * Filetime fixing plug-in for {@code SITE UTIME} command.
  *
@@ -10,21 +8,17 @@ import java.util.Date;
  */
 public class SiteUtime extends FiletimeFixer
 {
-    /**
-     * Sets date pattern.
-     */
-    public SiteUtime()
-    {
-        super("yyyyMMddHHmmss");
-    }
-
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getCommand(final String filename, final long timestamp)
+    public void encodeCommand(final StringBuilder buffer, final String path, final String filename, final long timestamp)
     {
-        final String curTime = this.dateFormatter.format(new Date(timestamp));
-        return "SITE UTIME " + filename + " " + curTime + " " + curTime + " " + curTime + " UTC";
+        buffer.append("SITE UTIME ").append(path).append(filename).append(' ');
+        //Format once, then copy for access, modification and creation time
+        final int start = buffer.length();
+        this.appendDateTime(buffer, timestamp);
+        final int end = buffer.length();
+        buffer.append(' ').append(buffer, start, end).append(' ').append(buffer, start, end).append(" UTC");
     }
 }
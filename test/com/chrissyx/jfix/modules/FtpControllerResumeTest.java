@@ -0,0 +1,153 @@
+package com.chrissyx.jfix.modules;
+
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests resuming an interrupted fix run from its checkpoint.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FtpControllerResumeTest
+{
+    /**
+     * Number of files per directory.
+     */
+    private static final int FILES = 40;
+
+    /**
+     * Tree with ten subdirectories.
+     */
+    private StubServerFixture fixture;
+
+    /**
+     * Generates the tree and starts the server.
+     *
+     * @throws Exception If generating failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.fixture = new StubServerFixture(10, FtpControllerResumeTest.FILES, 1, 4);
+    }
+
+    /**
+     * Stops the server and deletes the tree.
+     */
+    @After
+    public void tearDown()
+    {
+        this.fixture.close();
+    }
+
+    /**
+     * Interrupts a run and resumes it, finished directories must be skipped and no file left out. Only the files of the
+     * directory interrupted within are fixed again.
+     *
+     * @throws Exception If a run failed
+     */
+    @Test
+    public void testResume() throws Exception
+    {
+        final int interrupted = this.interrupt();
+        final FixProgress fixProgress = new FixProgress();
+        this.fixture.run(true, fixProgress);
+        Assert.assertFalse(this.isResumable());
+        Assert.assertEquals(this.fixture.getFiles(), this.fixture.getServer().getFixed());
+        Assert.assertTrue("Refixed " + this.fixture.getServer().getRefixed() + " files", this.fixture.getServer().getRefixed() < FtpControllerResumeTest.FILES);
+        Assert.assertTrue("Finished directories not skipped", fixProgress.getCommands() < this.fixture.getFiles() - interrupted + FtpControllerResumeTest.FILES);
+    }
+
+    /**
+     * Interrupts a run with journal and resumes it, no file may be fixed twice or left out.
+     *
+     * @throws Exception If a run failed
+     */
+    @Test
+    public void testResumeWithJournal() throws Exception
+    {
+        this.fixture.setCfgVal("journal", "true");
+        try
+        {
+            final int interrupted = this.interrupt();
+            final FixProgress fixProgress = new FixProgress();
+            this.fixture.run(true, fixProgress);
+            Assert.assertEquals(this.fixture.getFiles(), this.fixture.getServer().getFixed());
+            Assert.assertEquals(0, this.fixture.getServer().getRefixed());
+            Assert.assertEquals(this.fixture.getFiles() - interrupted, fixProgress.getCommands());
+        }
+        finally
+        {
+            this.fixture.setCfgVal("journal", "false");
+        }
+    }
+
+    /**
+     * Cancels a run after about half of the files, as the user or a shutdown of the command line does.
+     *
+     * @return Number of files fixed before the interruption
+     * @throws Exception If the run failed
+     */
+    private int interrupt() throws Exception
+    {
+        final FixProgress fixProgress = new FixProgress();
+        final Thread canceller = new Thread("JFix-Test-Cancel")
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                while(fixProgress.getFilesDone() < FtpControllerResumeTest.this.fixture.getFiles() / 2)
+                    try
+                    {
+                        Thread.sleep(1);
+                    }
+                    catch(final InterruptedException e)
+                    {
+                        return;
+                    }
+                fixProgress.cancel();
+            }
+        };
+        canceller.start();
+        try
+        {
+            this.fixture.run(false, fixProgress);
+        }
+        finally
+        {
+            canceller.interrupt();
+        }
+        final int fixed = this.fixture.getServer().getFixed();
+        Assert.assertTrue("Run not interrupted", fixProgress.isCancelled() && fixed < this.fixture.getFiles());
+        Assert.assertTrue(this.isResumable());
+        return fixed;
+    }
+
+    /**
+     * Returns if the run over the tree of the fixture can be resumed.
+     *
+     * @return Resumable state
+     * @throws Exception If checking failed
+     */
+    private boolean isResumable() throws Exception
+    {
+        FtpController.getInstance().connect();
+        try
+        {
+            FtpController.getInstance().changeDir("/");
+            return FtpController.getInstance().isResumable(this.fixture.getTree());
+        }
+        finally
+        {
+            FtpController.getInstance().disconnect();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.chrissyx.jfix.modules;
+
+import com.chrissyx.jfix.modules.ftp.FixMetrics;
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests recovering lost connections and retrying failed files in the final pass of a fix run.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FtpControllerRetryTest
+{
+    /**
+     * Tree with four subdirectories.
+     */
+    private StubServerFixture fixture;
+
+    /**
+     * Generates the tree and starts the server.
+     *
+     * @throws Exception If generating failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.fixture = new StubServerFixture(4, 20, 1, 4);
+        this.fixture.setCfgVal("retryAttempts", "3");
+        this.fixture.setCfgVal("retryDelay", "10");
+        this.fixture.setCfgVal("retryMaxDelay", "100");
+    }
+
+    /**
+     * Stops the server and deletes the tree.
+     */
+    @After
+    public void tearDown()
+    {
+        this.fixture.close();
+    }
+
+    /**
+     * Drops the connection every few commands, the run must reconnect and complete without failed files.
+     *
+     * @throws Exception If the run failed
+     */
+    @Test
+    public void testReconnect() throws Exception
+    {
+        this.fixture.getServer().setDropInterval(20);
+        //Metrics are kept over all runs
+        final long reconnects = FtpController.getInstance().getFixMetrics().getReconnects();
+        final FixProgress fixProgress = new FixProgress();
+        this.fixture.run(false, fixProgress);
+        Assert.assertTrue(this.fixture.getServer().getDropped() > 0);
+        Assert.assertTrue(FtpController.getInstance().getFixMetrics().getReconnects() > reconnects);
+        Assert.assertEquals(0, fixProgress.getFailed());
+        Assert.assertEquals(this.fixture.getFiles(), this.fixture.getServer().getFixed());
+        Assert.assertEquals(this.fixture.getFiles(), fixProgress.getFilesDone());
+    }
+
+    /**
+     * Drops the connection every few commands while pipelining, the run must send outstanding commands again after
+     * reconnecting and fix each file.
+     *
+     * @throws Exception If the run failed
+     */
+    @Test
+    public void testReconnectPipelined() throws Exception
+    {
+        this.fixture.setCfgVal("pipelineWindow", "4");
+        try
+        {
+            this.fixture.getServer().setDropInterval(20);
+            final FixProgress fixProgress = new FixProgress();
+            this.fixture.run(false, fixProgress);
+            Assert.assertTrue(this.fixture.getServer().getDropped() > 0);
+            Assert.assertEquals(0, fixProgress.getFailed());
+            Assert.assertEquals(this.fixture.getFiles(), this.fixture.getServer().getFixed());
+            Assert.assertEquals(this.fixture.getFiles(), fixProgress.getFilesDone());
+        }
+        finally
+        {
+            this.fixture.setCfgVal("pipelineWindow", "1");
+        }
+    }
+
+    /**
+     * Throttles the server until some files are queued, the final pass must fix them.
+     *
+     * @throws Exception If the run failed
+     */
+    @Test
+    public void testFinalPass() throws Exception
+    {
+        //The final pass waits for the throttling to end
+        this.fixture.setCfgVal("retryDelay", "500");
+        this.fixture.getServer().setThrottleRate(1);
+        final FixMetrics fixMetrics = FtpController.getInstance().getFixMetrics();
+        final long retried = fixMetrics.getFilesRetried();
+        final Thread unthrottler = new Thread("JFix-Test-Unthrottle")
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run()
+            {
+                while(fixMetrics.getFilesRetried() - retried < 5)
+                    try
+                    {
+                        Thread.sleep(1);
+                    }
+                    catch(final InterruptedException e)
+                    {
+                        return;
+                    }
+                FtpControllerRetryTest.this.fixture.getServer().setThrottleRate(0);
+            }
+        };
+        unthrottler.start();
+        final FixProgress fixProgress = new FixProgress();
+        try
+        {
+            this.fixture.run(false, fixProgress);
+        }
+        finally
+        {
+            unthrottler.interrupt();
+        }
+        Assert.assertTrue(fixMetrics.getFilesRetried() - retried >= 5);
+        Assert.assertEquals(0, fixProgress.getFailed());
+        Assert.assertEquals(this.fixture.getFiles(), this.fixture.getServer().getFixed());
+        Assert.assertEquals(0, this.fixture.getServer().getRefixed());
+        Assert.assertEquals(this.fixture.getFiles(), fixProgress.getFilesDone());
+    }
+
+    /**
+     * Keeps the server throttled, files still failing in the final pass must be counted as failed and the run complete.
+     *
+     * @throws Exception If the run failed
+     */
+    @Test
+    public void testFinalPassFails() throws Exception
+    {
+        this.fixture.getServer().setThrottleRate(1);
+        final long retried = FtpController.getInstance().getFixMetrics().getFilesRetried();
+        final FixProgress fixProgress = new FixProgress();
+        this.fixture.run(false, fixProgress);
+        Assert.assertTrue(FtpController.getInstance().getFixMetrics().getFilesRetried() > retried);
+        Assert.assertTrue(fixProgress.getFailed() > 0);
+        Assert.assertEquals(this.fixture.getFiles(), this.fixture.getServer().getFixed() + fixProgress.getFailed());
+        Assert.assertEquals(this.fixture.getFiles(), fixProgress.getFilesDone());
+    }
+}
@@ -0,0 +1,201 @@
+package com.chrissyx.jfix.modules;
+
+import com.chrissyx.jfix.bench.StubFtpServer;
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.modules.ftp.FixProgress;
+import com.chrissyx.jfix.modules.util.CryptUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Local tree served by the stub FTP server of the load test, to perform fix runs with the {@link FtpController}. The
+ * settings of JFix are kept in a temporary directory for the whole test JVM, as the controllers are singletons.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+final class StubServerFixture
+{
+    /**
+     * Directory of config file and data files of the test JVM.
+     */
+    private static final File CONFIG_DIR;
+
+    static
+    {
+        try
+        {
+            CONFIG_DIR = Files.createTempDirectory("jfix-config").toFile();
+            StubServerFixture.CONFIG_DIR.deleteOnExit();
+            new File(StubServerFixture.CONFIG_DIR, "jfix-config.xml").deleteOnExit();
+            final FileOutputStream configOut = new FileOutputStream(new File(StubServerFixture.CONFIG_DIR, "jfix-config.xml"));
+            try
+            {
+                new Properties().storeToXML(configOut, null);
+            }
+            finally
+            {
+                configOut.close();
+            }
+        }
+        catch(final IOException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+        //Must be set before the first controller is created
+        System.setProperty("jfix.config", new File(StubServerFixture.CONFIG_DIR, "jfix-config.xml").getPath());
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    /**
+     * Local root directory, also served by the server.
+     */
+    private final File tree;
+
+    /**
+     * Number of generated files.
+     */
+    private final int files;
+
+    /**
+     * Server of the tree.
+     */
+    private final StubFtpServer server;
+
+    /**
+     * Generates a tree with the stated number of files in its root and each subdirectory, starts the server and
+     * configures JFix to fix it with one session.
+     *
+     * @param dirs Number of subdirectories
+     * @param files Number of files per directory
+     * @param latency Delay of each reply in milliseconds
+     * @param maxConnections Connection limit of the server
+     * @throws IOException If generating failed
+     * @throws JFixError If saving the settings failed
+     */
+    StubServerFixture(final int dirs, final int files, final long latency, final int maxConnections) throws IOException, JFixError
+    {
+        this.tree = Files.createTempDirectory("jfix-tree").toFile();
+        for(int i = 0; i <= dirs; i++)
+        {
+            final File curDir = i == 0 ? this.tree : new File(this.tree, "dir" + i);
+            if(!curDir.isDirectory() && !curDir.mkdir())
+                throw new IOException("Can't create " + curDir);
+            for(int j = 0; j < files; j++)
+            {
+                final File curFile = new File(curDir, "file" + j + ".txt");
+                new FileOutputStream(curFile).close();
+                if(!curFile.setLastModified(1000000000000L + (i * files + j) * 1000L))
+                    throw new IOException("Can't set filetime of " + curFile);
+            }
+        }
+        this.files = (dirs + 1) * files;
+        this.server = new StubFtpServer(this.tree, latency, 0, 0, maxConnections);
+        ConfigController.getInstance().setCfgVal("host", "127.0.0.1");
+        ConfigController.getInstance().setCfgVal("port", String.valueOf(this.server.getPort()));
+        ConfigController.getInstance().setCfgVal("user", "jfix");
+        ConfigController.getInstance().setCfgVal("pass", CryptUtils.encode("jfix"));
+        ConfigController.getInstance().setCfgVal("plugIn", "Mfmt");
+        ConfigController.getInstance().setCfgVal("recursive", "true");
+        ConfigController.getInstance().setCfgVal("poolSize", "1");
+        ConfigController.getInstance().setCfgVal("pipelineWindow", "1");
+        ConfigController.getInstance().setCfgVal("journal", "false");
+        ConfigController.getInstance().setCfgVal("retryDelay", "10");
+        ConfigController.getInstance().setCfgVal("eventOverflow", "drop");
+        ConfigController.getInstance().save();
+    }
+
+    /**
+     * Changes a setting of JFix.
+     *
+     * @param key Identifier of config value
+     * @param value New config value
+     * @throws JFixError If saving failed
+     */
+    void setCfgVal(final String key, final String value) throws JFixError
+    {
+        ConfigController.getInstance().setCfgVal(key, value);
+        ConfigController.getInstance().save();
+    }
+
+    /**
+     * Fixes the whole tree in a new connection.
+     *
+     * @param resume Resume an interrupted run
+     * @param fixProgress Progress of the run, may be cancelled
+     * @throws JFixError If the run failed
+     */
+    void run(final boolean resume, final FixProgress fixProgress) throws JFixError
+    {
+        FtpController.getInstance().connect();
+        try
+        {
+            FtpController.getInstance().changeDir("/");
+            FtpController.getInstance().fixFiletimes(this.tree, resume, fixProgress);
+        }
+        finally
+        {
+            FtpController.getInstance().disconnect();
+        }
+    }
+
+    /**
+     * Returns the server of the tree.
+     *
+     * @return Stub FTP server
+     */
+    StubFtpServer getServer()
+    {
+        return this.server;
+    }
+
+    /**
+     * Returns the local root directory.
+     *
+     * @return Generated tree
+     */
+    File getTree()
+    {
+        return this.tree;
+    }
+
+    /**
+     * Returns the number of generated files.
+     *
+     * @return Number of files
+     */
+    int getFiles()
+    {
+        return this.files;
+    }
+
+    /**
+     * Stops the server and deletes the tree and the data files of its runs.
+     */
+    void close()
+    {
+        this.server.close();
+        StubServerFixture.delete(this.tree);
+        for(final File curFile : StubServerFixture.CONFIG_DIR.listFiles())
+            if(!curFile.getName().equals("jfix-config.xml"))
+                curFile.delete();
+    }
+
+    /**
+     * Deletes a file or directory with its content.
+     *
+     * @param file File to delete
+     */
+    private static void delete(final File file)
+    {
+        final File[] children = file.listFiles();
+        if(children != null)
+            for(final File curChild : children)
+                StubServerFixture.delete(curChild);
+        file.delete();
+    }
+}
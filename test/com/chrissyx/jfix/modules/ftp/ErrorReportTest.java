@@ -0,0 +1,74 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests writing the error report of a run.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class ErrorReportTest
+{
+    /**
+     * Runs without problems must not leave a report file, not even one of an earlier run.
+     *
+     * @throws Exception If the report couldn't be checked
+     */
+    @Test
+    public void testNoFileWithoutProblems() throws Exception
+    {
+        final File reportFile = File.createTempFile("jfix-errors", ".txt");
+        try
+        {
+            final ErrorReport errorReport = new ErrorReport(reportFile, 10);
+            errorReport.start();
+            Assert.assertFalse(reportFile.exists());
+            errorReport.close();
+            Assert.assertFalse(reportFile.exists());
+            Assert.assertEquals(0, errorReport.getTotal());
+        }
+        finally
+        {
+            reportFile.delete();
+        }
+    }
+
+    /**
+     * Problems beyond the maximum are only counted and noted at the end of the file.
+     *
+     * @throws Exception If the report couldn't be read
+     */
+    @Test
+    public void testBoundedEntries() throws Exception
+    {
+        final File reportFile = File.createTempFile("jfix-errors", ".txt");
+        try
+        {
+            final ErrorReport errorReport = new ErrorReport(reportFile, 2);
+            errorReport.start();
+            errorReport.add("/a.txt", "550", "No such file");
+            errorReport.add("/b.txt", "450", "Too many\tcommands");
+            errorReport.add("/c.txt", "550", "No such file");
+            errorReport.close();
+            final List<String> lines = Files.readAllLines(reportFile.toPath(), StandardCharsets.UTF_8);
+            Assert.assertEquals(3, lines.size());
+            Assert.assertEquals("550\t/a.txt\tNo such file", lines.get(0));
+            Assert.assertEquals("450\t/b.txt\tToo many commands", lines.get(1));
+            Assert.assertEquals("# 1 more not listed", lines.get(2));
+            Assert.assertEquals(3, errorReport.getTotal());
+            Assert.assertEquals(Integer.valueOf(2), errorReport.getCounts().get("550"));
+            Assert.assertEquals(2, errorReport.getEntries().size());
+        }
+        finally
+        {
+            reportFile.delete();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.modules.util.LocalFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests queueing files for the final retry pass.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FailureQueueTest
+{
+    /**
+     * Queues files of two jobs, they must be drained grouped by job in the order of their first failure.
+     */
+    @Test
+    public void testDrain()
+    {
+        final FailureQueue failureQueue = new FailureQueue();
+        final FixJob firstJob = new FixJob(new File("first"), "/first/", null);
+        final FixJob secondJob = new FixJob(new File("second"), "/second/", null);
+        final List<LocalFile> firstFiles = this.createFiles("first", 3);
+        final List<LocalFile> secondFiles = this.createFiles("second", 2);
+        Assert.assertFalse(failureQueue.contains(firstJob));
+        failureQueue.addAll(secondJob, secondFiles.subList(0, 1));
+        failureQueue.addAll(firstJob, firstFiles);
+        failureQueue.add(secondJob, secondFiles.get(1));
+        Assert.assertEquals(5, failureQueue.size());
+        Assert.assertTrue(failureQueue.contains(firstJob));
+        Assert.assertTrue(failureQueue.contains(secondJob));
+        final Map<FixJob, List<LocalFile>> drained = failureQueue.drain();
+        final Iterator<Map.Entry<FixJob, List<LocalFile>>> entries = drained.entrySet().iterator();
+        Map.Entry<FixJob, List<LocalFile>> curEntry = entries.next();
+        Assert.assertSame(secondJob, curEntry.getKey());
+        Assert.assertEquals(secondFiles, curEntry.getValue());
+        curEntry = entries.next();
+        Assert.assertSame(firstJob, curEntry.getKey());
+        Assert.assertEquals(firstFiles, curEntry.getValue());
+        Assert.assertFalse(entries.hasNext());
+        //Drained queue is empty and takes new failures of the final pass
+        Assert.assertEquals(0, failureQueue.size());
+        Assert.assertFalse(failureQueue.contains(firstJob));
+        failureQueue.add(firstJob, firstFiles.get(0));
+        Assert.assertEquals(1, failureQueue.size());
+        Assert.assertEquals(2, drained.size());
+        Assert.assertEquals(Arrays.asList(firstFiles.get(0)), failureQueue.drain().get(firstJob));
+    }
+
+    /**
+     * Creates local files with increasing filetimes.
+     *
+     * @param dir Name of directory
+     * @param count Number of files
+     * @return Created files
+     */
+    private List<LocalFile> createFiles(final String dir, final int count)
+    {
+        final List<LocalFile> files = new ArrayList<LocalFile>(count);
+        for(int i = 0; i < count; i++)
+            files.add(new LocalFile(new File(dir, "file" + i + ".txt"), 1000000000000L + i * 1000L, 0, false));
+        return files;
+    }
+}
@@ -0,0 +1,100 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.modules.util.LocalFile;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests counting the pending batches and children of directory jobs, which decides when checkpoints are set.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FixJobTest
+{
+    /**
+     * Finishes a directory with a file batch and a subdirectory, its files must be done after the directory job and the
+     * batch and its subtree after the subdirectory, too.
+     */
+    @Test
+    public void testCompletionCounting()
+    {
+        final FixJob rootJob = new FixJob(new File("root"), "/", null);
+        final FixJob batchJob = new FixJob(rootJob, new LocalFile[0]);
+        final FixJob subDirJob = new FixJob(new File("root", "sub"), "/sub/", rootJob);
+        Assert.assertTrue(rootJob.isDirectory());
+        Assert.assertFalse(batchJob.isDirectory());
+        Assert.assertSame(rootJob, batchJob.getParent());
+        Assert.assertEquals("/", batchJob.getRemoteDir());
+        //Directory job itself
+        Assert.assertFalse(rootJob.finishBatch());
+        Assert.assertFalse(rootJob.finishChild());
+        //File batch
+        Assert.assertTrue(rootJob.finishBatch());
+        Assert.assertFalse(rootJob.finishChild());
+        //Subdirectory without files and subdirectories
+        Assert.assertTrue(subDirJob.finishBatch());
+        Assert.assertTrue(subDirJob.finishChild());
+        Assert.assertTrue(rootJob.finishChild());
+    }
+
+    /**
+     * Finishes many batches of a directory concurrently, exactly one of them must complete its files.
+     *
+     * @throws Exception If waiting failed
+     */
+    @Test
+    public void testConcurrentBatches() throws Exception
+    {
+        final FixJob dirJob = new FixJob(new File("root"), "/", null);
+        final int batches = 1000;
+        for(int i = 0; i < batches; i++)
+            new FixJob(dirJob, new LocalFile[0]);
+        final AtomicInteger filesDone = new AtomicInteger();
+        final AtomicInteger subtreesDone = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch(final InterruptedException e)
+                    {
+                        return;
+                    }
+                    for(int j = 0; j < batches / threads.length; j++)
+                    {
+                        if(dirJob.finishBatch())
+                            filesDone.incrementAndGet();
+                        if(dirJob.finishChild())
+                            subtreesDone.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for(final Thread curThread : threads)
+            curThread.join();
+        Assert.assertEquals(0, filesDone.get());
+        Assert.assertEquals(0, subtreesDone.get());
+        //The directory job itself finishes last
+        Assert.assertTrue(dirJob.finishBatch());
+        Assert.assertTrue(dirJob.finishChild());
+    }
+}
@@ -0,0 +1,77 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.modules.util.LocalFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the journal of fixed files.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FixJournalTest
+{
+    /**
+     * Opens a journal with an incomplete last record, which must be compacted by replacing the file while keeping all
+     * complete records.
+     *
+     * @throws Exception If journal access failed
+     */
+    @Test
+    public void testCompactIncompleteRecord() throws Exception
+    {
+        final File journalFile = File.createTempFile("jfix-journal", ".dat");
+        final LocalFile first = new LocalFile(new File("a.txt"), 1000L, 10L, false);
+        final LocalFile second = new LocalFile(new File("b.txt"), 2000L, 20L, false);
+        try
+        {
+            FixJournal fixJournal = new FixJournal(journalFile);
+            fixJournal.open();
+            fixJournal.record("/a.txt", 1000L, first);
+            fixJournal.record("/b.txt", 2000L, second);
+            fixJournal.close();
+            final long length = journalFile.length();
+            this.append(journalFile, new byte[]{0, 6, '/', 'c'});
+            fixJournal = new FixJournal(journalFile);
+            fixJournal.open();
+            fixJournal.close();
+            Assert.assertEquals(length, journalFile.length());
+            Assert.assertFalse(new File(journalFile.getPath() + ".tmp").exists());
+            fixJournal.open();
+            Assert.assertTrue(fixJournal.isUnchanged("/a.txt", first));
+            Assert.assertTrue(fixJournal.isUnchanged("/b.txt", second));
+            Assert.assertFalse(fixJournal.isUnchanged("/c.txt", first));
+            fixJournal.close();
+        }
+        finally
+        {
+            journalFile.delete();
+        }
+    }
+
+    /**
+     * Appends raw bytes to a file.
+     *
+     * @param file File to append to
+     * @param bytes Bytes to append
+     * @throws IOException If writing failed
+     */
+    private void append(final File file, final byte[] bytes) throws IOException
+    {
+        final FileOutputStream outputStream = new FileOutputStream(file, true);
+        try
+        {
+            outputStream.write(bytes);
+        }
+        finally
+        {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.modules.util.LocalFile;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the work-stealing scheduler with unconnected sessions, as the jobs only simulate FTP work.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FixSchedulerTest
+{
+    /**
+     * Number of workers.
+     */
+    private static final int WORKERS = 4;
+
+    /**
+     * Runs a tree of directory and batch jobs submitted while processing, each of them must be processed exactly once.
+     *
+     * @throws Exception If the run failed
+     */
+    @Test
+    public void testEveryJobOnce() throws Exception
+    {
+        final FixScheduler fixScheduler = new FixScheduler(this.createSessions());
+        final ConcurrentMap<FixJob, AtomicInteger> processed = new ConcurrentHashMap<FixJob, AtomicInteger>();
+        final Map<Integer, Boolean> workers = new ConcurrentHashMap<Integer, Boolean>();
+        final FixJob rootJob = new FixJob(new File("root"), "/", null);
+        fixScheduler.submit(0, rootJob);
+        fixScheduler.run(new FixScheduler.JobHandler()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void process(final int workerId, final FtpSession session, final FixJob job) throws JFixError
+            {
+                processed.putIfAbsent(job, new AtomicInteger());
+                processed.get(job).incrementAndGet();
+                workers.put(workerId, Boolean.TRUE);
+                if(job.isDirectory() && job.getRemoteDir().length() < 8)
+                {
+                    for(int i = 0; i < 3; i++)
+                        fixScheduler.submit(workerId, new FixJob(new File(job.getLocalDir(), "d" + i), job.getRemoteDir() + "d" + i + "/", job));
+                    for(int i = 0; i < 2; i++)
+                        fixScheduler.submit(workerId, new FixJob(job, new LocalFile[0]));
+                }
+                try
+                {
+                    Thread.sleep(1);
+                }
+                catch(final InterruptedException e)
+                {
+                    throw new JFixError(e);
+                }
+            }
+        });
+        //Directories of 1 + 3 + 9 + 27 with 2 batches each for the first three levels
+        Assert.assertEquals(40 + 2 * 13, processed.size());
+        for(final Map.Entry<FixJob, AtomicInteger> curEntry : processed.entrySet())
+            Assert.assertEquals(curEntry.getKey().toString(), 1, curEntry.getValue().get());
+        Assert.assertTrue("Jobs weren't spread over workers", workers.size() > 1);
+    }
+
+    /**
+     * Fails jobs on two workers one after another, the run must end with the first error and stop taking new jobs.
+     *
+     * @throws Exception If waiting failed
+     */
+    @Test
+    public void testAbortKeepsFirstError() throws Exception
+    {
+        final FixScheduler fixScheduler = new FixScheduler(this.createSessions());
+        final JFixError firstError = new JFixError("First");
+        final CountDownLatch firstFailing = new CountDownLatch(1);
+        final AtomicInteger processed = new AtomicInteger();
+        for(int i = 0; i < 100; i++)
+            fixScheduler.submit(i % FixSchedulerTest.WORKERS, new FixJob(new File("d" + i), "/d" + i + "/", null));
+        try
+        {
+            fixScheduler.run(new FixScheduler.JobHandler()
+            {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void process(final int workerId, final FtpSession session, final FixJob job) throws JFixError
+                {
+                    processed.incrementAndGet();
+                    try
+                    {
+                        if(workerId == 0)
+                        {
+                            firstFailing.countDown();
+                            throw firstError;
+                        }
+                        //Other workers fail right after the first one
+                        firstFailing.await();
+                        Thread.sleep(50);
+                    }
+                    catch(final InterruptedException e)
+                    {
+                        throw new JFixError(e);
+                    }
+                    throw new IllegalStateException("Second");
+                }
+            });
+            Assert.fail("Run not aborted");
+        }
+        catch(final JFixError e)
+        {
+            Assert.assertSame(firstError, e);
+        }
+        Assert.assertTrue("Jobs taken after abort", processed.get() <= FixSchedulerTest.WORKERS);
+    }
+
+    /**
+     * Creates one unconnected session per worker.
+     *
+     * @return Sessions
+     */
+    private List<FtpSession> createSessions()
+    {
+        final List<FtpSession> sessions = new ArrayList<FtpSession>(FixSchedulerTest.WORKERS);
+        for(int i = 0; i < FixSchedulerTest.WORKERS; i++)
+            sessions.add(new FtpSession(new FileTransferClient()));
+        return sessions;
+    }
+}
@@ -0,0 +1,94 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.bench.StubFtpServer;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests opening additional sessions against the stub FTP server of the load test.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FtpSessionPoolTest
+{
+    /**
+     * Empty root directory of the server.
+     */
+    private File root;
+
+    /**
+     * Server accepting two connections.
+     */
+    private StubFtpServer server;
+
+    /**
+     * Connected main client.
+     */
+    private FileTransferClient mainClient;
+
+    /**
+     * Starts the server and connects the main client.
+     *
+     * @throws Exception If connecting failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = Files.createTempDirectory("jfix").toFile();
+        this.server = new StubFtpServer(this.root, 0, 0, 0, 2);
+        this.mainClient = new FileTransferClient();
+        this.mainClient.setRemoteHost("127.0.0.1");
+        this.mainClient.setRemotePort(this.server.getPort());
+        this.mainClient.setUserName("jfix");
+        this.mainClient.setPassword("jfix");
+        this.mainClient.connect();
+    }
+
+    /**
+     * Disconnects and stops the server.
+     *
+     * @throws Exception If disconnecting failed
+     */
+    @After
+    public void tearDown() throws Exception
+    {
+        this.mainClient.disconnect(true);
+        this.server.close();
+        this.root.delete();
+    }
+
+    /**
+     * Requests more sessions than the server accepts, the pool must continue with the accepted ones and reuse them.
+     *
+     * @throws Exception If a session failed
+     */
+    @Test
+    public void testRefusedLogins() throws Exception
+    {
+        final FtpSessionPool sessionPool = new FtpSessionPool(this.mainClient, null);
+        try
+        {
+            final List<FtpSession> sessions = sessionPool.getSessions(4);
+            Assert.assertEquals(2, sessions.size());
+            Assert.assertSame(this.mainClient, sessions.get(0).getClient());
+            Assert.assertTrue(sessions.get(1).isConnected());
+            Assert.assertEquals("/", sessions.get(1).getRemoteDir());
+            final List<FtpSession> reused = sessionPool.getSessions(2);
+            Assert.assertSame(sessions.get(1), reused.get(1));
+            Assert.assertEquals(1, sessionPool.getSessions(1).size());
+        }
+        finally
+        {
+            sessionPool.close();
+        }
+    }
+}
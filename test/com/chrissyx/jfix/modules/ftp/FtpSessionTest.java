@@ -0,0 +1,177 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.bench.StubFtpServer;
+import com.chrissyx.jfix.common.error.JFixError;
+import com.chrissyx.jfix.common.error.JFixFtpAuthError;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests recovering lost connections of a session against the stub FTP server of the load test.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FtpSessionTest
+{
+    /**
+     * Root directory of the server with one subdirectory.
+     */
+    private File root;
+
+    /**
+     * Server of the root directory.
+     */
+    private StubFtpServer server;
+
+    /**
+     * Connected session in the subdirectory.
+     */
+    private FtpSession session;
+
+    /**
+     * Starts the server and connects the session.
+     *
+     * @throws Exception If connecting failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = Files.createTempDirectory("jfix").toFile();
+        if(!new File(this.root, "sub").mkdir())
+            throw new IllegalStateException("Can't create subdirectory");
+        this.server = new StubFtpServer(this.root, 0, 0, 0, 4);
+        final FileTransferClient ftpClient = new FileTransferClient();
+        ftpClient.setRemoteHost("127.0.0.1");
+        ftpClient.setRemotePort(this.server.getPort());
+        ftpClient.setUserName("jfix");
+        ftpClient.setPassword("jfix");
+        this.session = new FtpSession(ftpClient);
+        this.session.connect();
+        this.session.changeDir("/sub/");
+    }
+
+    /**
+     * Disconnects and stops the server.
+     */
+    @After
+    public void tearDown()
+    {
+        try
+        {
+            this.session.getClient().disconnect(true);
+        }
+        catch(final Exception e)
+        {
+            //Already lost
+        }
+        this.server.close();
+        new File(this.root, "sub").delete();
+        this.root.delete();
+    }
+
+    /**
+     * Drops the connection and reconnects, the session must be back in its last remote directory.
+     *
+     * @throws Exception If reconnecting failed
+     */
+    @Test
+    public void testReconnectRestoresDir() throws Exception
+    {
+        final JFixError lost = this.dropConnection();
+        this.session.reconnect(new RetryPolicy(3, 10, 100), lost);
+        Assert.assertTrue(this.session.isConnected());
+        Assert.assertEquals("/sub/", this.session.getRemoteDir());
+        Assert.assertTrue(this.session.executeCommand("PWD").getReplyText().contains("/sub/"));
+    }
+
+    /**
+     * Drops the connection and rejects the login, reconnecting must give up at once with the authentication error.
+     *
+     * @throws Exception If dropping failed
+     */
+    @Test
+    public void testAuthErrorRethrown() throws Exception
+    {
+        final JFixError lost = this.dropConnection();
+        this.server.setRejectLogins(true);
+        try
+        {
+            this.session.reconnect(new RetryPolicy(3, 10, 100), lost);
+            Assert.fail("Rejected login not reported");
+        }
+        catch(final JFixFtpAuthError e)
+        {
+            Assert.assertEquals(1, this.server.getLoginsRejected());
+        }
+    }
+
+    /**
+     * Drops the connection of a stopped server, reconnecting must fail after all retries with the last connection
+     * error or at once with the cause without retries.
+     *
+     * @throws Exception If dropping failed
+     */
+    @Test
+    public void testReconnectGivesUp() throws Exception
+    {
+        final JFixError lost = this.dropConnection();
+        this.server.close();
+        try
+        {
+            this.session.reconnect(new RetryPolicy(0, 10, 100), lost);
+            Assert.fail("Reconnected without retries");
+        }
+        catch(final JFixError e)
+        {
+            Assert.assertSame(lost, e);
+        }
+        final long start = System.currentTimeMillis();
+        try
+        {
+            this.session.reconnect(new RetryPolicy(2, 40, 100), lost);
+            Assert.fail("Reconnected to stopped server");
+        }
+        catch(final JFixError e)
+        {
+            Assert.assertNotSame(lost, e);
+            Assert.assertFalse(e instanceof JFixFtpAuthError);
+            Assert.assertTrue(FtpSession.isConnectionLost(e));
+        }
+        //Half of 40 and 80 milliseconds at least
+        Assert.assertTrue("No backoff between retries", System.currentTimeMillis() - start >= 60);
+    }
+
+    /**
+     * Lets the server drop the connection.
+     *
+     * @return Error of the lost connection
+     */
+    private JFixError dropConnection()
+    {
+        //Commands are counted from now on, so the second one is dropped
+        this.server.setDropInterval(1);
+        try
+        {
+            for(int i = 0; i < 2; i++)
+                this.session.executeCommand("NOOP");
+            throw new IllegalStateException("Connection not dropped");
+        }
+        catch(final JFixError e)
+        {
+            Assert.assertTrue(FtpSession.isConnectionLost(e));
+            return e;
+        }
+        finally
+        {
+            this.server.setDropInterval(0);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.chrissyx.jfix.bench.StubFtpServer;
+import com.chrissyx.jfix.common.error.JFixError;
+import com.enterprisedt.net.ftp.FTPReply;
+import com.enterprisedt.net.ftp.FileTransferClient;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests pipelining commands with the control connection of the bundled FTP library against the stub FTP server of the
+ * load test.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class PipelinedExecutorTest
+{
+    /**
+     * Number of files in the root directory.
+     */
+    private static final int FILES = 10;
+
+    /**
+     * Root directory of the server.
+     */
+    private File root;
+
+    /**
+     * Server of the root directory.
+     */
+    private StubFtpServer server;
+
+    /**
+     * Connected session in the root directory.
+     */
+    private FtpSession session;
+
+    /**
+     * Items with received replies in order of their replies.
+     */
+    private final List<String> replied = new ArrayList<String>();
+
+    /**
+     * Codes of received replies.
+     */
+    private final List<String> replyCodes = new ArrayList<String>();
+
+    /**
+     * Handler recording the replies.
+     */
+    private final PipelinedExecutor.ReplyHandler<String> replyHandler = new PipelinedExecutor.ReplyHandler<String>()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void replyReceived(final String item, final FTPReply reply, final long rtt)
+        {
+            PipelinedExecutorTest.this.replied.add(item);
+            PipelinedExecutorTest.this.replyCodes.add(reply.getReplyCode());
+        }
+    };
+
+    /**
+     * Starts the server and connects the session.
+     *
+     * @throws Exception If connecting failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = Files.createTempDirectory("jfix").toFile();
+        for(int i = 0; i < PipelinedExecutorTest.FILES; i++)
+            new FileOutputStream(new File(this.root, "file" + i + ".txt")).close();
+        this.server = new StubFtpServer(this.root, 1, 0, 0, 4);
+        final FileTransferClient ftpClient = new FileTransferClient();
+        ftpClient.setRemoteHost("127.0.0.1");
+        ftpClient.setRemotePort(this.server.getPort());
+        ftpClient.setUserName("jfix");
+        ftpClient.setPassword("jfix");
+        this.session = new FtpSession(ftpClient);
+        this.session.connect();
+        this.session.changeDir("/");
+    }
+
+    /**
+     * Disconnects and stops the server.
+     */
+    @After
+    public void tearDown()
+    {
+        try
+        {
+            this.session.getClient().disconnect(true);
+        }
+        catch(final Exception e)
+        {
+            //Already lost
+        }
+        this.server.close();
+        for(final File curFile : this.root.listFiles())
+            curFile.delete();
+        this.root.delete();
+    }
+
+    /**
+     * Sends commands for existing and missing files without waiting, the control connection of the bundled library
+     * must be accessible and the replies matched to the items in sending order.
+     *
+     * @throws Exception If sending failed
+     */
+    @Test
+    public void testPipelining() throws Exception
+    {
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(4, 4, false, 0);
+        final PipelinedExecutor<String> pipelinedExecutor = new PipelinedExecutor<String>(this.session, 4, concurrencyLimiter, this.replyHandler);
+        Assert.assertTrue("Reflection into the FTP library failed", pipelinedExecutor.isPipelined());
+        final String[] items =
+        {
+            "file0.txt", "file1.txt", "missing.txt", "file3.txt"
+        };
+        for(final String curItem : items)
+            pipelinedExecutor.submit(this.getCommand(curItem), curItem);
+        Assert.assertTrue("Replies read before the window was full", this.replied.isEmpty());
+        Assert.assertFalse(concurrencyLimiter.tryAcquire());
+        pipelinedExecutor.flush();
+        Assert.assertEquals(Arrays.asList(items), this.replied);
+        Assert.assertEquals(Arrays.asList("213", "213", "550", "213"), this.replyCodes);
+        Assert.assertTrue(pipelinedExecutor.drainAbandoned().isEmpty());
+        //Session is usable again
+        Assert.assertTrue(FtpSession.isPositive(this.session.executeCommand("NOOP")));
+        Assert.assertEquals(3, this.server.getFixed());
+    }
+
+    /**
+     * Sends commands with a window of 1 or a limiter without free slots, each reply must be read before the next
+     * command is sent.
+     *
+     * @throws Exception If sending failed
+     */
+    @Test
+    public void testOneByOne() throws Exception
+    {
+        final PipelinedExecutor<String> pipelinedExecutor = new PipelinedExecutor<String>(this.session, 1, new ConcurrencyLimiter(4, 4, false, 0), this.replyHandler);
+        Assert.assertFalse(pipelinedExecutor.isPipelined());
+        for(int i = 0; i < 3; i++)
+        {
+            pipelinedExecutor.submit(this.getCommand("file" + i + ".txt"), "file" + i + ".txt");
+            Assert.assertEquals(i + 1, this.replied.size());
+        }
+        //Own replies are read first while another session holds the slots
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(2, 2, false, 0);
+        Assert.assertTrue(concurrencyLimiter.tryAcquire());
+        final PipelinedExecutor<String> limitedExecutor = new PipelinedExecutor<String>(this.session, 4, concurrencyLimiter, this.replyHandler);
+        Assert.assertTrue(limitedExecutor.isPipelined());
+        limitedExecutor.submit(this.getCommand("file3.txt"), "file3.txt");
+        Assert.assertEquals(3, this.replied.size());
+        limitedExecutor.submit(this.getCommand("file4.txt"), "file4.txt");
+        Assert.assertEquals(4, this.replied.size());
+        limitedExecutor.flush();
+        Assert.assertEquals(5, this.replied.size());
+        Assert.assertEquals(5, this.server.getFixed());
+    }
+
+    /**
+     * Drops the connection while commands are outstanding, their items must be abandoned with their slots freed and
+     * each file fixed after sending them again in a new connection.
+     *
+     * @throws Exception If reconnecting failed
+     */
+    @Test
+    public void testResendAbandoned() throws Exception
+    {
+        final List<String> items = new ArrayList<String>(PipelinedExecutorTest.FILES);
+        for(int i = 0; i < PipelinedExecutorTest.FILES; i++)
+            items.add("file" + i + ".txt");
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(4, 4, false, 0);
+        PipelinedExecutor<String> pipelinedExecutor = new PipelinedExecutor<String>(this.session, 4, concurrencyLimiter, this.replyHandler);
+        //Commands are counted from now on, so the sixth one is dropped
+        this.server.setDropInterval(5);
+        List<String> remaining = null;
+        int i = 0;
+        try
+        {
+            for(; i < items.size(); i++)
+                pipelinedExecutor.submit(this.getCommand(items.get(i)), items.get(i));
+            pipelinedExecutor.flush();
+            Assert.fail("Connection not dropped");
+        }
+        catch(final JFixError e)
+        {
+            Assert.assertTrue(FtpSession.isConnectionLost(e));
+            remaining = pipelinedExecutor.drainAbandoned();
+            Assert.assertFalse("No outstanding command abandoned", remaining.isEmpty());
+            Assert.assertTrue(pipelinedExecutor.drainAbandoned().isEmpty());
+            //Replies already received may be abandoned if sending failed first
+            Assert.assertTrue(this.replied.size() >= 3 && this.replied.size() <= 5);
+            for(; i < items.size(); i++)
+                if(!remaining.contains(items.get(i)))
+                    remaining.add(items.get(i));
+            this.server.setDropInterval(0);
+            this.session.reconnect(new RetryPolicy(3, 10, 100), e);
+        }
+        Assert.assertEquals(items.subList(this.replied.size(), items.size()), remaining);
+        for(int j = 0; j < 4; j++)
+            Assert.assertTrue("Slots of abandoned commands not freed", concurrencyLimiter.tryAcquire());
+        concurrencyLimiter.releaseFailed(4);
+        pipelinedExecutor = new PipelinedExecutor<String>(this.session, 4, concurrencyLimiter, this.replyHandler);
+        for(final String curItem : remaining)
+            pipelinedExecutor.submit(this.getCommand(curItem), curItem);
+        pipelinedExecutor.flush();
+        Assert.assertEquals(items, this.replied);
+        Assert.assertEquals(PipelinedExecutorTest.FILES, this.server.getFixed());
+    }
+
+    /**
+     * Returns the command to set the filetime of a file in the current directory.
+     *
+     * @param filename Name of file
+     * @return MFMT command
+     */
+    private String getCommand(final String filename)
+    {
+        return "MFMT 20090213233130 " + filename;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import com.enterprisedt.net.ftp.FTPFileFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests parsing {@code STAT -l} replies into remote listings.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class RemoteListingTest
+{
+    /**
+     * Parses a multi-line {@code 213} reply as sent by vsftpd, with status text around the listing.
+     *
+     * @throws Exception If parsing failed
+     */
+    @Test
+    public void testParseStatWithStatusLines() throws Exception
+    {
+        final RemoteListing listing = RemoteListing.parseStat("213", new String[]
+                {
+                    "Status of -l /htdocs:",
+                    "total 12",
+                    "drwxr-xr-x    2 jfix     jfix         4096 Oct 17 23:18 images",
+                    "-rw-r--r--    1 jfix     jfix         2311 Oct 17 23:18 index.html",
+                    "-rw-r--r--    1 jfix     jfix          118 Jan 03  2025 robots.txt",
+                    "End of status"
+                }, new FTPFileFactory("UNIX"), true);
+        Assert.assertNotNull(listing);
+        Assert.assertEquals(3, listing.size());
+        Assert.assertEquals("images", listing.getName(0));
+        Assert.assertTrue(listing.isDirectory(0));
+        Assert.assertEquals(-1, listing.indexOf("End of status"));
+        Assert.assertTrue(listing.indexOf("robots.txt") >= 0);
+    }
+
+    /**
+     * Parses a multi-line {@code 211} reply with the reply code prefixed to each line, skipping unparsable ones.
+     *
+     * @throws Exception If parsing failed
+     */
+    @Test
+    public void testParseStatWithCodePrefixes() throws Exception
+    {
+        final RemoteListing listing = RemoteListing.parseStat("211", new String[]
+                {
+                    "211-Status of /htdocs:",
+                    "211-drwxr-xr-x   2 jfix  jfix   4096 Oct 17 23:18 images",
+                    "211-this line is no listing entry",
+                    "211--rw-r--r--   1 jfix  jfix   2311 Oct 17 23:18 index.html",
+                    "211 End of status"
+                }, new FTPFileFactory("UNIX"), false);
+        Assert.assertNotNull(listing);
+        Assert.assertEquals(2, listing.size());
+        Assert.assertEquals("images", listing.getName(0));
+        Assert.assertEquals("index.html", listing.getName(1));
+    }
+
+    /**
+     * Parses replies of empty directories and ones without any usable line.
+     *
+     * @throws Exception If parsing failed
+     */
+    @Test
+    public void testParseStatWithoutEntries() throws Exception
+    {
+        Assert.assertEquals(0, RemoteListing.parseStat("213", new String[]
+                {
+                    "Status of -l /empty:", "total 0", "End of status"
+                }, new FTPFileFactory("UNIX"), true).size());
+        Assert.assertEquals(0, RemoteListing.parseStat("213", null, new FTPFileFactory("UNIX"), true).size());
+        Assert.assertNull(RemoteListing.parseStat("213", new String[]
+                {
+                    "Status of -l /htdocs:", "no listing here", "End of status"
+                }, new FTPFileFactory("UNIX"), true));
+    }
+}
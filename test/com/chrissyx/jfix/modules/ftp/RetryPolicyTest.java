@@ -0,0 +1,84 @@
+package com.chrissyx.jfix.modules.ftp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the exponential backoff with jitter between retries.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class RetryPolicyTest
+{
+    /**
+     * Samples the delays of several retries, each must be between half and full of its doubled base delay, but never
+     * exceed the maximum delay.
+     */
+    @Test
+    public void testBackoff()
+    {
+        final RetryPolicy retryPolicy = new RetryPolicy(3, 100, 1000);
+        Assert.assertEquals(3, retryPolicy.getRetries());
+        final long[] expected =
+        {
+            100, 200, 400, 800, 1000, 1000
+        };
+        for(int i = 0; i < expected.length; i++)
+            this.assertDelay(retryPolicy, i, expected[i]);
+    }
+
+    /**
+     * Uses the default delays of the settings, later retries must not wait the maximum delay before the doubled delay
+     * reaches it.
+     */
+    @Test
+    public void testNoEarlyMaximum()
+    {
+        final RetryPolicy retryPolicy = new RetryPolicy(10, 10, 30000);
+        for(int i = 0; i < 12; i++)
+            this.assertDelay(retryPolicy, i, Math.min(30000, 10L << i));
+    }
+
+    /**
+     * Requests delays of retries far beyond the range of a shifted base delay, they must not overflow.
+     */
+    @Test
+    public void testOverflow()
+    {
+        final RetryPolicy retryPolicy = new RetryPolicy(3, Long.MAX_VALUE / 4, Long.MAX_VALUE);
+        this.assertDelay(retryPolicy, 1, Long.MAX_VALUE / 4 * 2);
+        this.assertDelay(retryPolicy, 2, Long.MAX_VALUE);
+        this.assertDelay(retryPolicy, 63, Long.MAX_VALUE);
+        this.assertDelay(retryPolicy, Integer.MAX_VALUE, Long.MAX_VALUE);
+        this.assertDelay(new RetryPolicy(3, 1000, 30000), 100, 30000);
+    }
+
+    /**
+     * Creates a policy with invalid settings, they must be corrected.
+     */
+    @Test
+    public void testInvalidSettings()
+    {
+        final RetryPolicy retryPolicy = new RetryPolicy(-1, 0, -1);
+        Assert.assertEquals(0, retryPolicy.getRetries());
+        this.assertDelay(retryPolicy, 0, 1);
+        this.assertDelay(retryPolicy, 5, 1);
+    }
+
+    /**
+     * Samples the delay of a retry.
+     *
+     * @param retryPolicy Policy to sample
+     * @param retry Number of retry
+     * @param expected Delay without jitter
+     */
+    private void assertDelay(final RetryPolicy retryPolicy, final int retry, final long expected)
+    {
+        for(int i = 0; i < 1000; i++)
+        {
+            final long delay = retryPolicy.getDelay(retry);
+            Assert.assertTrue("Delay " + delay + " of retry " + retry + " out of range", delay >= expected / 2 && delay <= expected);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.chrissyx.jfix.modules.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests reading local listings.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class LocalListingTest
+{
+    /**
+     * Reads a directory with a dangling symbolic link, which must be skipped without losing the other entries.
+     *
+     * @throws Exception If reading failed
+     */
+    @Test
+    public void testReadWithDanglingLink() throws Exception
+    {
+        final Path directory = Files.createTempDirectory("jfix");
+        final Path file = Files.createFile(directory.resolve("a.txt"));
+        final Path subDir = Files.createDirectory(directory.resolve("b"));
+        final Path link = directory.resolve("c.lnk");
+        try
+        {
+            try
+            {
+                Files.createSymbolicLink(link, directory.resolve("missing"));
+            }
+            catch(final IOException e)
+            {
+                Assume.assumeNoException(e);
+            }
+            final LocalListing listing = LocalListing.read(directory.toFile(), true);
+            Assert.assertEquals(2, listing.size());
+            Assert.assertEquals("b", listing.getName(0));
+            Assert.assertTrue(listing.isDirectory(0));
+            Assert.assertEquals("a.txt", listing.getName(1));
+            Assert.assertEquals(new File(directory.toFile(), "a.txt"), listing.getLocalFile(1).getFile());
+        }
+        finally
+        {
+            Files.deleteIfExists(link);
+            Files.deleteIfExists(subDir);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.chrissyx.jfix.plugins;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the plug-in template with its formatting of filetimes.
+ *
+ * @author Chrissyx
+ * @since 1.1
+ */
+public class FiletimeFixerTest
+{
+    /**
+     * Time zones with different offsets, half-hour DST and historic changes.
+     */
+    private static final String[] TIME_ZONES = {"UTC", "Europe/Berlin", "America/New_York", "Australia/Lord_Howe", "Asia/Kathmandu", "Europe/Amsterdam"};
+
+    /**
+     * First timestamp formatted equally by the Gregorian calendar of {@link SimpleDateFormat}, at 1600-01-01 UTC.
+     */
+    private static final long MIN_TIMESTAMP = -11676096000000L;
+
+    /**
+     * Last timestamp with a four-digit year, at 9999-12-30 UTC.
+     */
+    private static final long MAX_TIMESTAMP = 253402128000000L;
+
+    /**
+     * Plug-in written for earlier versions, overriding only the command with the date formatter.
+     */
+    @SuppressWarnings("deprecation")
+    private static final class LegacyPlugIn extends FiletimeFixer
+    {
+        /**
+         * Sets date pattern.
+         */
+        private LegacyPlugIn()
+        {
+            super("yyyyMMddHHmmss");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getCommand(final String filename, final long timestamp)
+        {
+            return "SITE UTIME " + this.dateFormatter.format(timestamp) + " " + filename;
+        }
+    }
+
+    /**
+     * Plug-in overriding neither command method.
+     */
+    private static final class IncompletePlugIn extends FiletimeFixer
+    {
+    }
+
+    /**
+     * Plug-in appending only the formatted filetime.
+     */
+    private static final class DateTimePlugIn extends FiletimeFixer
+    {
+        /**
+         * Formats filetimes in stated time zone.
+         *
+         * @param timeZone Time zone to use
+         */
+        private DateTimePlugIn(final TimeZone timeZone)
+        {
+            super(timeZone);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void encodeCommand(final StringBuilder buffer, final String path, final String filename, final long timestamp)
+        {
+            this.appendDateTime(buffer, timestamp);
+        }
+    }
+
+    /**
+     * Encodes commands with a legacy plug-in, which must get the remote path prefixed to the filename.
+     */
+    @Test
+    public void testLegacyGetCommand()
+    {
+        final FiletimeFixer plugIn = new LegacyPlugIn();
+        final long timestamp = 1234567890000L;
+        final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMddHHmmss");
+        final StringBuilder buffer = new StringBuilder("prefix ");
+        plugIn.encodeCommand(buffer, "/remote/dir/", "file.txt", timestamp);
+        Assert.assertEquals("prefix SITE UTIME " + dateFormatter.format(timestamp) + " /remote/dir/file.txt", buffer.toString());
+        Assert.assertEquals("SITE UTIME " + dateFormatter.format(timestamp) + " file.txt", plugIn.getCommand("file.txt", timestamp));
+    }
+
+    /**
+     * Encodes commands with a current plug-in through the legacy method.
+     */
+    @Test
+    public void testGetCommandOfEncodingPlugIn()
+    {
+        Assert.assertEquals("MFMT 20090213233130 /dir/file.txt", new Mfmt().getCommand("/dir/file.txt", 1234567890000L));
+    }
+
+    /**
+     * Creates a plug-in without any command method, which must fail right away instead of overflowing the stack later.
+     */
+    @Test(expected = AbstractMethodError.class)
+    public void testMissingCommand()
+    {
+        new IncompletePlugIn();
+    }
+
+    /**
+     * Compares formatted filetimes against {@link SimpleDateFormat} for every hour and around each DST change of a
+     * year, with random timestamps before and after the epoch and at the edges of the epoch.
+     */
+    @Test
+    public void testAppendDateTime()
+    {
+        final Random random = new Random(42L);
+        for(final String curZoneId : FiletimeFixerTest.TIME_ZONES)
+        {
+            final TimeZone timeZone = TimeZone.getTimeZone(curZoneId);
+            final FiletimeFixer plugIn = new DateTimePlugIn(timeZone);
+            final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMddHHmmss");
+            dateFormatter.setTimeZone(timeZone);
+            //Every hour of 2021 and every second around its DST changes
+            for(long curTime = 1609459200000L; curTime < 1640995200000L; curTime += 3600000L)
+            {
+                this.assertDateTime(plugIn, dateFormatter, curTime);
+                if(timeZone.getOffset(curTime) != timeZone.getOffset(curTime + 3600000L))
+                    for(long curSecond = curTime - 60000L; curSecond < curTime + 3660000L; curSecond += 1000L)
+                        this.assertDateTime(plugIn, dateFormatter, curSecond);
+            }
+            for(final long curTime : new long[]{0L, -1L, -999L, -1000L, -1001L, -86400000L, -86400001L, FiletimeFixerTest.MIN_TIMESTAMP, FiletimeFixerTest.MAX_TIMESTAMP})
+                this.assertDateTime(plugIn, dateFormatter, curTime);
+            for(int i = 0; i < 10000; i++)
+                this.assertDateTime(plugIn, dateFormatter, FiletimeFixerTest.MIN_TIMESTAMP + (long) (random.nextDouble() * (FiletimeFixerTest.MAX_TIMESTAMP - FiletimeFixerTest.MIN_TIMESTAMP)));
+        }
+    }
+
+    /**
+     * Asserts a filetime is formatted like the date formatter does.
+     *
+     * @param plugIn Plug-in to format with
+     * @param dateFormatter Expected formatting
+     * @param timestamp Timestamp to format
+     */
+    private void assertDateTime(final FiletimeFixer plugIn, final SimpleDateFormat dateFormatter, final long timestamp)
+    {
+        final StringBuilder buffer = new StringBuilder();
+        plugIn.encodeCommand(buffer, "", "", timestamp);
+        Assert.assertEquals(dateFormatter.getTimeZone().getID() + " at " + timestamp, dateFormatter.format(timestamp), buffer.toString());
+    }
+}